@@ -0,0 +1,101 @@
+package minesweeper.server;
+
+import static minesweeper.server.Square.SquareStatus.DUG;
+import static minesweeper.server.Square.SquareStatus.FLAGGED;
+import static minesweeper.server.Square.SquareStatus.UNTOUCHED;
+
+import java.util.Random;
+
+/**
+ * Builds reproducible boards for the benchmarks.
+ */
+
+final class BenchmarkBoards {
+
+  private BenchmarkBoards() {
+  }
+
+  /**
+   * Creates a square board with a seeded random bomb layout.
+   *
+   * @param size width and length of the board
+   * @param bombDensity fraction of squares with a bomb, requires 0 <= bombDensity < 1
+   * @param seed seed of the random layout
+   * @return a board with every square untouched
+   */
+  static Board create(int size, double bombDensity, long seed) {
+    Board board = new Board(size, size);
+    Random random = new Random(seed);
+    for (Square[] row : board.getSquaresArray()) {
+      for (Square square : row) {
+        if (random.nextDouble() < bombDensity) {
+          square.placeBomb();
+        } else {
+          square.removeBomb();
+        }
+      }
+    }
+    return board;
+  }
+
+  /**
+   * Sets the status of every square without a bomb at random: dug with probability dugFraction,
+   * flagged with probability flaggedFraction and untouched otherwise.
+   *
+   * @param board board to change
+   * @param dugFraction fraction of dug squares
+   * @param flaggedFraction fraction of flagged squares
+   * @param seed seed of the random statuses
+   */
+  static void scatterStatuses(Board board, double dugFraction, double flaggedFraction, long seed) {
+    Random random = new Random(seed);
+    for (Square[] row : board.getSquaresArray()) {
+      for (Square square : row) {
+        double r = random.nextDouble();
+        if (r < dugFraction && !square.hasBomb()) {
+          square.setSquareStatus(DUG);
+        } else if (r < dugFraction + flaggedFraction) {
+          square.setSquareStatus(FLAGGED);
+        } else {
+          square.setSquareStatus(UNTOUCHED);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets every square of board to untouched and lets the board rebuild its derived state, so a
+   * benchmark invocation that follows does not pay for the rebuild.
+   *
+   * @param board board to change
+   */
+  static void untouchAll(Board board) {
+    for (Square[] row : board.getSquaresArray()) {
+      for (Square square : row) {
+        square.setSquareStatus(UNTOUCHED);
+      }
+    }
+    board.getVersion();
+  }
+
+  /**
+   * Finds the square without a bomb that is closest to the center of the board.
+   *
+   * @param board a board with at least one square without a bomb
+   * @return {x, y} of the square
+   */
+  static int[] safeSquareNearCenter(Board board) {
+    Square[][] squares = board.getSquaresArray();
+    int center = squares.length / 2;
+    for (int distance = 0; distance <= center + 1; distance++) {
+      for (int y = Math.max(0, center - distance); y <= Math.min(squares.length - 1, center + distance); y++) {
+        for (int x = Math.max(0, center - distance); x <= Math.min(squares[y].length - 1, center + distance); x++) {
+          if (!squares[y][x].hasBomb()) {
+            return new int[]{x, y};
+          }
+        }
+      }
+    }
+    throw new IllegalArgumentException("board has no square without a bomb");
+  }
+}
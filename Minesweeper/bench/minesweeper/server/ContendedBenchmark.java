@@ -0,0 +1,64 @@
+package minesweeper.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures a shared board under a concurrent mix of commands: four threads look, two flag and
+ * deflag and two dig random squares. The board is rebuilt before every iteration so digs keep
+ * finding untouched squares.
+ */
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Xss64m"})
+public class ContendedBenchmark {
+
+  @Param({"10", "100", "400"})
+  int size;
+
+  private Board board;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    board = BenchmarkBoards.create(size, 0.25, 42);
+  }
+
+  @Benchmark
+  @Group("mix")
+  @GroupThreads(4)
+  public String look() {
+    return board.look();
+  }
+
+  @Benchmark
+  @Group("mix")
+  @GroupThreads(2)
+  public String flagAndDeflag() {
+    int x = ThreadLocalRandom.current().nextInt(size);
+    int y = ThreadLocalRandom.current().nextInt(size);
+    board.flag(x, y);
+    return board.deflag(x, y);
+  }
+
+  @Benchmark
+  @Group("mix")
+  @GroupThreads(2)
+  public String dig() {
+    return board.dig(ThreadLocalRandom.current().nextInt(size),
+        ThreadLocalRandom.current().nextInt(size));
+  }
+}
@@ -0,0 +1,59 @@
+package minesweeper.server;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single Board.dig() that starts a flood fill, including the rendering of the reply.
+ * Every invocation digs the same square of a board whose squares were all reset to untouched.
+ *
+ * The flood fill is recursive, so the forked JVM runs with a large thread stack.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 50)
+@Measurement(iterations = 200)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Xss512m"})
+public class DigBenchmark {
+
+  @Param({"10", "100", "1000"})
+  int size;
+
+  @Param({"0.0", "0.25", "0.6"})
+  double bombDensity;
+
+  private Board board;
+  private int x;
+  private int y;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    board = BenchmarkBoards.create(size, bombDensity, 42);
+    int[] square = BenchmarkBoards.safeSquareNearCenter(board);
+    x = square[0];
+    y = square[1];
+  }
+
+  @Setup(Level.Invocation)
+  public void untouch() {
+    BenchmarkBoards.untouchAll(board);
+  }
+
+  @Benchmark
+  public String dig() {
+    return board.dig(x, y);
+  }
+}
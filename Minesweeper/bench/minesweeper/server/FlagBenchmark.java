@@ -0,0 +1,45 @@
+package minesweeper.server;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of flag followed by deflag of the same square.
+ * Both operations render the whole board, so throughput drops with the board size.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class FlagBenchmark {
+
+  @Param({"10", "100", "1000"})
+  int size;
+
+  private Board board;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    board = BenchmarkBoards.create(size, 0.25, 42);
+  }
+
+  @Benchmark
+  public String flagAndDeflag() {
+    int x = next % size;
+    int y = (next / size) % size;
+    next++;
+    board.flag(x, y);
+    return board.deflag(x, y);
+  }
+}
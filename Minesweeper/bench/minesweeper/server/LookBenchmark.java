@@ -0,0 +1,56 @@
+package minesweeper.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures Board.look() and Board.lookBuffer() on boards with a mix of untouched, flagged and dug squares.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class LookBenchmark {
+
+  @Param({"10", "100", "1000", "4000"})
+  int size;
+
+  @Param({"0.1", "0.25"})
+  double bombDensity;
+
+  @Param({"0.0", "0.9"})
+  double dugFraction;
+
+  private Board board;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    board = BenchmarkBoards.create(size, bombDensity, 42);
+    BenchmarkBoards.scatterStatuses(board, dugFraction, (1 - dugFraction) / 4, 43);
+    board.look();
+  }
+
+  @Benchmark
+  public String look() {
+    return board.look();
+  }
+
+  /**
+   * The encoded board of an unchanged version, as written to every looking client.
+   */
+  @Benchmark
+  public ByteBuffer lookBuffer() {
+    return board.lookBuffer();
+  }
+}
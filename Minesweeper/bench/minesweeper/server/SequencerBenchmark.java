@@ -0,0 +1,77 @@
+package minesweeper.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures the throughput of four threads flagging and deflagging squares of a shared board,
+ * either through a CommandSequencer or by taking the board's lock themselves. Every thread
+ * renders its replies into its own buffer.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SequencerBenchmark {
+
+  @Param({"10", "100"})
+  int size;
+
+  @Param({"true", "false"})
+  boolean sequenced;
+
+  private Board board;
+  private CommandSequencer sequencer;
+
+  @State(Scope.Thread)
+  public static class Client {
+
+    private final CommandSequencer.Request request = new CommandSequencer.Request();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+    private int next;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    board = BenchmarkBoards.create(size, 0.25, 42);
+    if (sequenced) {
+      sequencer = new CommandSequencer(board, 1024);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (sequencer != null) {
+      sequencer.close();
+    }
+  }
+
+  @Benchmark
+  public ByteBuffer flagAndDeflag(Client client) {
+    int x = client.next % size;
+    int y = (client.next / size) % size;
+    client.next++;
+    if (sequenced) {
+      client.buffer = sequencer.execute(client.request, 1, Command.FLAG, x, y, client.buffer);
+      client.buffer = sequencer.execute(client.request, 1, Command.DEFLAG, x, y, client.buffer);
+    } else {
+      client.buffer = board.flag(x, y, client.buffer);
+      client.buffer = board.deflag(x, y, client.buffer);
+    }
+    return client.buffer;
+  }
+}
@@ -0,0 +1,234 @@
+package minesweeper.server;
+
+/**
+ * A mutable set of squares of a board, stored as one bit per square in row bitsets of longs, so
+ * that whole-board operations work on 64 squares at a time.
+ *
+ * Not threadsafe; every bitboard is used by a single thread.
+ */
+
+class Bitboard {
+
+  private final int sizeX;
+  private final int sizeY;
+  private final int wordsPerRow;
+  private final long lastWordMask;
+  private final long[] bits;
+
+  // Representation invariant
+  //    sizeX > 0, sizeY > 0
+  //    wordsPerRow == ceil(sizeX / 64), bits.length == sizeY * wordsPerRow
+  //    bits beyond sizeX in the last word of a row are 0
+
+  // Abstraction function
+  //    Represents the set of squares (x, y) for which bit x % 64 of
+  //    bits[y * wordsPerRow + x / 64] is set.
+
+  // Safety from representation exposure
+  //    All fields are private; bits is never returned.
+
+  // Thread safety argument
+  //    Not threadsafe: confined to the thread that created it.
+
+  private void checkRep() {
+    assert sizeX > 0 && sizeY > 0 : "size should be positive";
+    assert bits.length == sizeY * wordsPerRow : "bits should hold every row";
+  }
+
+  /**
+   * Constructor; the set starts empty.
+   *
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   */
+  Bitboard(int sizeX, int sizeY) {
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    this.wordsPerRow = (sizeX + 63) >>> 6;
+    this.lastWordMask = sizeX % 64 == 0 ? -1L : (1L << (sizeX % 64)) - 1;
+    this.bits = new long[sizeY * wordsPerRow];
+    checkRep();
+  }
+
+  /**
+   * @param x x-coordinate of square, requires 0 <= x < sizeX
+   * @param y y-coordinate of square, requires 0 <= y < sizeY
+   */
+  void set(int x, int y) {
+    bits[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+  }
+
+  /**
+   * @param x x-coordinate of square, requires 0 <= x < sizeX
+   * @param y y-coordinate of square, requires 0 <= y < sizeY
+   */
+  void clear(int x, int y) {
+    bits[y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+  }
+
+  /**
+   * @param x x-coordinate of the first of eight squares, requires x % 8 == 0 and x < sizeX
+   * @param y y-coordinate of the squares, requires 0 <= y < sizeY
+   * @return bit i set if the square (x + i, y) is in the set
+   */
+  int byteAt(int x, int y) {
+    return (int) (bits[y * wordsPerRow + (x >>> 6)] >>> (x & 63)) & 0xFF;
+  }
+
+  /**
+   * @param x x-coordinate of square, requires 0 <= x < sizeX
+   * @param y y-coordinate of square, requires 0 <= y < sizeY
+   * @return true if the square is in the set
+   */
+  boolean get(int x, int y) {
+    return (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+  }
+
+  /**
+   * @return the squares of the board that are not in this set
+   */
+  Bitboard not() {
+    Bitboard result = new Bitboard(sizeX, sizeY);
+    for (int i = 0; i < bits.length; i++) {
+      result.bits[i] = ~bits[i] & mask(i % wordsPerRow);
+    }
+    return result;
+  }
+
+  /**
+   * @param other a set of squares of a board of the same size
+   * @return the squares in both sets
+   */
+  Bitboard and(Bitboard other) {
+    Bitboard result = new Bitboard(sizeX, sizeY);
+    for (int i = 0; i < bits.length; i++) {
+      result.bits[i] = bits[i] & other.bits[i];
+    }
+    return result;
+  }
+
+  /**
+   * @return the squares that are in this set or have a neighbor in it
+   */
+  Bitboard dilate() {
+    Bitboard result = new Bitboard(sizeX, sizeY);
+    long[] horizontal = new long[bits.length];
+    for (int y = 0; y < sizeY; y++) {
+      int row = y * wordsPerRow;
+      for (int j = 0; j < wordsPerRow; j++) {
+        horizontal[row + j] = bits[row + j] | west(row, j) | east(row, j);
+      }
+    }
+    for (int y = 0; y < sizeY; y++) {
+      int row = y * wordsPerRow;
+      for (int j = 0; j < wordsPerRow; j++) {
+        long word = horizontal[row + j];
+        if (y > 0) {
+          word |= horizontal[row - wordsPerRow + j];
+        }
+        if (y + 1 < sizeY) {
+          word |= horizontal[row + wordsPerRow + j];
+        }
+        result.bits[row + j] = word;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Counts, for every square, its neighbors that are in this set. The eight neighbor layers of a
+   * word are added with a bit-sliced adder into four bit planes, 64 squares at a time, and only
+   * squares with a nonzero count are written out.
+   *
+   * @return the counts, indexed by y * sizeX + x, each between 0 and 8
+   */
+  byte[] neighborCounts() {
+    byte[] counts = new byte[sizeX * sizeY];
+    for (int y = 0; y < sizeY; y++) {
+      int row = y * wordsPerRow;
+      for (int j = 0; j < wordsPerRow; j++) {
+        long b0 = 0;
+        long b1 = 0;
+        long b2 = 0;
+        long b3 = 0;
+        for (int layer = 0; layer < 8; layer++) {
+          long carry = layer(row, j, y, layer);
+          long t = b0 & carry;
+          b0 ^= carry;
+          carry = t;
+          t = b1 & carry;
+          b1 ^= carry;
+          carry = t;
+          t = b2 & carry;
+          b2 ^= carry;
+          b3 |= t;
+        }
+        long nonzero = (b0 | b1 | b2 | b3) & mask(j);
+        int base = y * sizeX + (j << 6);
+        while (nonzero != 0) {
+          int bit = Long.numberOfTrailingZeros(nonzero);
+          nonzero &= nonzero - 1;
+          counts[base + bit] = (byte) ((b0 >>> bit & 1) | (b1 >>> bit & 1) << 1
+              | (b2 >>> bit & 1) << 2 | (b3 >>> bit & 1) << 3);
+        }
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * @return word j of one of the eight neighbor layers of the row starting at bits[row]: 0-2 the
+   * row above shifted west, unshifted and east, 3-4 the row itself shifted west and east, 5-7 the
+   * row below
+   */
+  private long layer(int row, int j, int y, int layer) {
+    if (layer < 3) {
+      if (y == 0) {
+        return 0;
+      }
+      row -= wordsPerRow;
+    } else if (layer >= 5) {
+      if (y + 1 == sizeY) {
+        return 0;
+      }
+      row += wordsPerRow;
+    }
+    switch (layer) {
+      case 0:
+      case 3:
+      case 5:
+        return west(row, j);
+      case 1:
+      case 6:
+        return bits[row + j];
+      default:
+        return east(row, j);
+    }
+  }
+
+  /**
+   * @return word j of the row starting at bits[row], with bit x holding the square at x - 1
+   */
+  private long west(int row, int j) {
+    long word = bits[row + j] << 1;
+    if (j > 0) {
+      word |= bits[row + j - 1] >>> 63;
+    }
+    return word & mask(j);
+  }
+
+  /**
+   * @return word j of the row starting at bits[row], with bit x holding the square at x + 1
+   */
+  private long east(int row, int j) {
+    long word = bits[row + j] >>> 1;
+    if (j + 1 < wordsPerRow) {
+      word |= bits[row + j + 1] << 63;
+    }
+    return word;
+  }
+
+  private long mask(int j) {
+    return j + 1 == wordsPerRow ? lastWordMask : -1L;
+  }
+}
@@ -11,8 +11,21 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import minesweeper.server.Square.SquareStatus;
 
 /**
@@ -21,37 +34,101 @@ import minesweeper.server.Square.SquareStatus;
 
 public class Board {
 
-  final private Square[][] squaresArray;
+  /**
+   * Fraction of the squares of a random board that have a bomb.
+   */
+  static final double BOMB_DENSITY = 0.25;
+
+  /**
+   * Measured memory use of a board whose squares are on the heap, with its derived state, per
+   * square.
+   */
+  static final long HEAP_BYTES_PER_SQUARE = 40;
+
+  /**
+   * Measured heap use of a board whose squares are in a mapped file, per square: the derived
+   * state and the cached look reply; the mapped file itself is not counted.
+   */
+  static final long MAPPED_BYTES_PER_SQUARE = 10;
+
+  private CellStore cells;
+  private Path evictedTo;
+  private long lastAccessNanos = System.nanoTime();
   final private int sizeY;
   final private int sizeX;
   final private int[][] neighbors = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0},
       {1, 1}};
+  private int safeSquaresLeft;
+  private int flagsPlaced;
+  private int bombsLeft;
+  private boolean clearedAnnounced;
+  private boolean derivedStateStale;
+  private final Set<Integer> frontier = new LinkedHashSet<>();
+  private long version;
+  private ByteBuffer lookBytes;
+  private long lookBytesVersion = -1;
+  private Components components;
+  private byte[] bombCounts;
+  private boolean bombCountsShared;
+  private Bitboard flagged;
+  private final ProbabilityEngine probabilityEngine =
+      new ProbabilityEngine(ForkJoinPool.commonPool(), ServerConfig.PROBABILITY_CACHE_SIZE);
 
   // Representation invariant
-  //    squaresArray is not null.
+  //    cells is null if and only if evictedTo is not null; otherwise it holds sizeX * sizeY
+  //    squares.
+  //    if evictedTo is not null, derivedStateStale and the file evictedTo holds the squares.
   //    sizeY > 0.
   //    sizeX > 0.
+  //    unless derivedStateStale:
+  //      safeSquaresLeft == number of squares without a bomb that are not dug
+  //      flagsPlaced == number of flagged squares
+  //      bombsLeft == number of squares with a bomb
+  //      frontier == the squares y * sizeX + x that are dug and have a neighbor that is not dug
+  //      components labels the squares of cells; a square is dug if and only if its
+  //      component is revealed, whatever its status in cells says
+  //      bombCounts[y * sizeX + x] == number of neighbors of the square that have a bomb
+  //      if bombCountsShared, bombCounts belongs to a BombLayout and is never written
+  //      flagged contains the squares that are not dug and flagged, and possibly dug squares
+  //    clearedAnnounced implies safeSquaresLeft == 0.
+  //    version >= 0 and changes whenever the state of a square may have changed.
+  //    if lookBytesVersion == version, lookBytes holds the ASCII encoding of render().
 
   // Abstraction function
   //    Represents a Minesweeper board.
+  //    The board is cleared when every square without a bomb is dug.
 
   // Safety from representation exposure
   //    sizeY and sizeX fields are final private and immutable.
-  //    squaresArray is final private but the Squares objects it contains are mutable but they are only accessed by
-  //    Board methods.
-  //    The getSquaresArray method returns a reference to squaresArray but the reference is only used by Board methods and
-  //    within unit tests and never returned to other classes.
-  //
+  //    cells is final private and mutable but it is only accessed by Board methods.
+  //    For a board stored on the heap, the getSquaresArray method returns a reference to the stored squares but the
+  //    reference is only used by Board methods and within unit tests and never returned to other classes.
+  //    Squares changed through that reference bypass the counters and components, so getSquaresArray first writes
+  //    the dug components back into the squares, then sets derivedStateStale, and the derived state is rebuilt by
+  //    the next Board operation.
+  //    lookBytes is read-only; lookBuffer() returns duplicates that share its content but have
+  //    their own position, so callers cannot change what other callers see.
 
   // Thread safety argument
-  //    All accesses to squaresArray happen within Board methods, which are guarded by Board's lock.
+  //    All accesses to cells happen within Board methods, which are guarded by Board's lock.
+  //    The time a thread waits for Board's lock is recorded in the threadsafe MinesweeperServer.stats.
   //    sizeX and sizeY are final private immutable types and therefore threadsafe.
   //    neighbors is never mutated and is only referenced from Board methods for read access.
+  //    The counters, flags, frontier and components are only accessed within Board methods that
+  //    hold Board's lock. hint() and probabilities() copy the constraints of the frontier under the lock and
+  //    solve them after releasing it. probabilityEngine is threadsafe.
+  //    Labelling the components of a large board may run fill tasks on the common pool while the
+  //    lock is held; they only touch arrays private to the labelling and are joined before it
+  //    returns.
 
   private void checkRep() {
     assert sizeY > 0 : "Board sizeY should be greater than 0.";
     assert sizeX > 0 : "Board sizeX should be greater than 0.";
-    assert squaresArray != null : "squaresArray should be not be null.";
+    assert cells != null || evictedTo != null : "cells should be not be null.";
+    assert derivedStateStale || safeSquaresLeft >= 0 : "safeSquaresLeft should not be negative.";
+    assert derivedStateStale || flagsPlaced >= 0 : "flagsPlaced should not be negative.";
+    assert derivedStateStale || bombsLeft >= 0 : "bombsLeft should not be negative.";
+    assert frontier != null : "frontier should not be null.";
   }
 
   /**
@@ -61,33 +138,64 @@ public class Board {
    * @param sizeY length of the board.
    */
   Board(final int sizeX, final int sizeY) {
-    assert sizeY > 0 : "Board sizeY should be greater than 0.";
-    assert sizeX > 0 : "Board sizeX should be greater than 0.";
-    this.sizeY = sizeY;
-    this.sizeX = sizeX;
-    squaresArray = new Square[sizeY][sizeX];
-    for (int y = 0; y < sizeY; y++) {
-      for (int x = 0; x < sizeX; x++) {
-        squaresArray[y][x] = new Square();
-      }
+    this(new HeapCellStore(sizeX, sizeY), BOMB_DENSITY);
+  }
+
+  /**
+   * Constructor for a board whose squares are kept in a given store.
+   *
+   * @param cells the squares of the board
+   * @param density fraction of the squares to place bombs on randomly first, requires
+   * 0 <= density <= 1; 0 keeps the bombs of the store
+   */
+  private Board(final CellStore cells, final double density) {
+    assert cells.getSizeY() > 0 : "Board sizeY should be greater than 0.";
+    assert cells.getSizeX() > 0 : "Board sizeX should be greater than 0.";
+    this.sizeY = cells.getSizeY();
+    this.sizeX = cells.getSizeX();
+    this.cells = cells;
+    if (density > 0) {
+      placeBombsRandomly(density);
     }
-    placeBombsRandomly();
+    rebuildDerivedState();
+    checkRep();
+  }
+
+  /**
+   * Constructor for a new game on a shared layout; every square is untouched.
+   *
+   * @param layout the bombs of the board
+   */
+  private Board(final BombLayout layout) {
+    this.sizeY = layout.getSizeY();
+    this.sizeX = layout.getSizeX();
+    this.cells = layout.newCells();
+    // an untouched board has no flags and no frontier, so only the bombs are counted
+    this.bombCounts = layout.getBombCounts();
+    this.bombCountsShared = true;
+    this.components = layout.newComponents();
+    this.flagged = new Bitboard(sizeX, sizeY);
+    this.bombsLeft = layout.getBombCount();
+    this.safeSquaresLeft = sizeX * sizeY - bombsLeft;
     checkRep();
   }
 
   /**
    * Constructor helper method.
-   * Place bombs randomly on 25% of the squares of the board.
+   * Place bombs randomly on a fraction of the squares of the board.
+   *
+   * @param bombsPercentage fraction of the squares that get a bomb, requires
+   * 0 < bombsPercentage <= 1
    */
-  private void placeBombsRandomly() {
-    final double bombsPercentage = 0.25;
+  private void placeBombsRandomly(final double bombsPercentage) {
     final int numberOfSquares = sizeY * sizeX;
     final int maxNumberOfBombs = (int) (numberOfSquares * bombsPercentage);
+    final Random random = new Random();
     for (int placedBombs = 0; placedBombs < maxNumberOfBombs; ) {
-      int randomXcoordinate = new Random().nextInt(sizeX);
-      int randomYcoordinate = new Random().nextInt(sizeY);
-      if (!squaresArray[randomYcoordinate][randomXcoordinate].hasBomb()) {
-        squaresArray[randomYcoordinate][randomXcoordinate].placeBomb();
+      int randomXcoordinate = random.nextInt(sizeX);
+      int randomYcoordinate = random.nextInt(sizeY);
+      if (!cells.hasBomb(randomXcoordinate, randomYcoordinate)) {
+        cells.setBomb(randomXcoordinate, randomYcoordinate, true);
         placedBombs++;
       }
     }
@@ -121,6 +229,123 @@ public class Board {
     throw new RuntimeException("createBoard() should never get down here.");
   }
 
+  /**
+   * Create a Minesweeper board with a given bomb layout and every square untouched.
+   *
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   * @param bombs the squares with a bomb, indexed by y * sizeX + x
+   * @return a Minesweeper board
+   */
+  static Board createBoard(int sizeX, int sizeY, BitSet bombs) {
+    HeapCellStore cells = new HeapCellStore(sizeX, sizeY);
+    for (int i = bombs.nextSetBit(0); i >= 0 && i < sizeX * sizeY; i = bombs.nextSetBit(i + 1)) {
+      cells.setBomb(i % sizeX, i / sizeX, true);
+    }
+    return new Board(cells, 0);
+  }
+
+  /**
+   * Create a new game on a bomb layout shared with other games, with every square untouched.
+   * The board only allocates the statuses of its squares; see BombLayout. Not used by
+   * MinesweeperServer, which hosts a single board.
+   *
+   * @param layout the bombs of the board
+   * @return a Minesweeper board
+   */
+  static Board createBoard(BombLayout layout) {
+    return new Board(layout);
+  }
+
+  /**
+   * Create a Minesweeper board whose squares live off the heap in a new memory-mapped file, with
+   * bombs placed randomly on BOMB_DENSITY of the squares.
+   *
+   * @param path file to create, requires that it does not exist
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   * @return a Minesweeper board
+   * @throws IOException if the file exists or cannot be created
+   */
+  static Board createMappedBoard(Path path, int sizeX, int sizeY) throws IOException {
+    return new Board(MappedCellStore.create(path, sizeX, sizeY), BOMB_DENSITY);
+  }
+
+  /**
+   * Create a Minesweeper board whose squares live off the heap in a new memory-mapped file,
+   * starting as a copy of another board.
+   *
+   * @param path file to create, requires that it does not exist
+   * @param board the board to copy
+   * @return a Minesweeper board
+   * @throws IOException if the file exists or cannot be created
+   */
+  static Board createMappedBoard(Path path, Board board) throws IOException {
+    MappedCellStore cells = MappedCellStore.create(path, board.sizeX, board.sizeY);
+    board.copyCellsTo(cells);
+    return new Board(cells, 0);
+  }
+
+  /**
+   * Create a Minesweeper board with bombs placed randomly on a fraction of the squares.
+   *
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   * @param density fraction of the squares with a bomb, requires 0 <= density <= 1
+   * @return a Minesweeper board
+   */
+  static Board createRandomBoard(int sizeX, int sizeY, double density) {
+    return new Board(new HeapCellStore(sizeX, sizeY), density);
+  }
+
+  /**
+   * Copies the bombs and statuses of this board's squares into another store.
+   *
+   * @param target store of the same size, every square untouched
+   */
+  private synchronized void copyCellsTo(CellStore target) {
+    refreshIfStale();
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        if (cells.hasBomb(x, y)) {
+          target.setBomb(x, y, true);
+        }
+        SquareStatus status = isDug(x, y) ? DUG : cells.getStatus(x, y);
+        if (status != UNTOUCHED) {
+          target.setStatus(x, y, status);
+        }
+      }
+    }
+  }
+
+  /**
+   * Open a Minesweeper board from a file written by a board created with createMappedBoard. The
+   * squares stay in the file, mapped into memory.
+   *
+   * @param path the file
+   * @return the board, as of its last checkpoint
+   * @throws IOException if the file cannot be read or is not a board file
+   */
+  static Board openMappedBoard(Path path) throws IOException {
+    return new Board(MappedCellStore.open(path), 0);
+  }
+
+  /**
+   * @return the squares with a bomb, indexed by y * sizeX + x
+   */
+  synchronized BitSet getBombLayout() {
+    refreshIfStale();
+    BitSet bombs = new BitSet(sizeX * sizeY);
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        if (cells.hasBomb(x, y)) {
+          bombs.set(y * sizeX + x);
+        }
+      }
+    }
+    return bombs;
+  }
+
   /**
    * Create a Minesweeper board using a board configuration file.
    *
@@ -161,6 +386,179 @@ public class Board {
     }
   }
 
+  /**
+   * Records the time the current thread waited for the board's lock.
+   * Requires the caller to hold the board's lock.
+   *
+   * @param lockRequested System.nanoTime() before the lock was requested
+   * @param lockWaitEvent event begun before the lock was requested
+   */
+  private void lockAcquired(long lockRequested, JfrEvents.BoardLockWaitEvent lockWaitEvent) {
+    MinesweeperServer.stats.recordLockWait(System.nanoTime() - lockRequested);
+    lockWaitEvent.commit();
+    refreshIfStale();
+  }
+
+  /**
+   * Records an access, reloads the squares if the board was evicted and recomputes the state
+   * derived from the squares if they may have been changed through getSquaresArray() or were
+   * reloaded. Requires the caller to hold the board's lock.
+   */
+  private void refreshIfStale() {
+    lastAccessNanos = System.nanoTime();
+    if (evictedTo != null) {
+      restore();
+    }
+    if (derivedStateStale) {
+      rebuildDerivedState();
+      derivedStateStale = false;
+      version++;
+    }
+  }
+
+  /**
+   * Labels the components of the squares, counts the bombs around every square, then recomputes
+   * the counters and the frontier.
+   * Requires the caller to hold the board's lock or to be the constructor.
+   */
+  private void rebuildDerivedState() {
+    Bitboard bombs = new Bitboard(sizeX, sizeY);
+    flagged = new Bitboard(sizeX, sizeY);
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        if (cells.hasBomb(x, y)) {
+          bombs.set(x, y);
+        }
+      }
+      // statuses are read a run at a time, which stores that compress runs answer quickly
+      for (int x = 0; x < sizeX; ) {
+        final int end = x + cells.statusRun(x, y);
+        if (cells.getStatus(x, y) == FLAGGED) {
+          for (; x < end; x++) {
+            flagged.set(x, y);
+          }
+        }
+        x = end;
+      }
+    }
+    bombCounts = bombs.neighborCounts();
+    bombCountsShared = false;
+    components = Components.build(cells, ForkJoinPool.commonPool(),
+        ServerConfig.PARALLEL_FILL_THRESHOLD);
+    recomputeCounters();
+    recomputeFrontier();
+  }
+
+  /**
+   * Rebuilds the frontier from scratch.
+   * Requires the caller to hold the board's lock or to be the constructor.
+   */
+  private void recomputeFrontier() {
+    frontier.clear();
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        if (isDug(x, y) && hasNeighborNotDug(x, y)) {
+          frontier.add(y * sizeX + x);
+        }
+      }
+    }
+  }
+
+  /**
+   * Updates the frontier after a square changed to dug, looking only at the square and its
+   * neighbors. Requires the caller to hold the board's lock.
+   *
+   * @param x x-coordinate of the square that was dug
+   * @param y y-coordinate of the square that was dug
+   */
+  private void updateFrontier(int x, int y) {
+    if (hasNeighborNotDug(x, y)) {
+      frontier.add(y * sizeX + x);
+    }
+    for (int i = 0; i < 8; i++) {
+      int xNeighbor = x + neighbors[i][0];
+      int yNeighbor = y + neighbors[i][1];
+      if (validateCoordinates(xNeighbor, yNeighbor) && !hasNeighborNotDug(xNeighbor, yNeighbor)) {
+        frontier.remove(yNeighbor * sizeX + xNeighbor);
+      }
+    }
+  }
+
+  /**
+   * Updates the frontier after a component was revealed. Only the component's border squares and
+   * their neighbors can change, so this takes time proportional to the border, not the area.
+   * Requires the caller to hold the board's lock.
+   *
+   * @param component the component that was revealed
+   */
+  private void updateFrontier(int component) {
+    for (int i = components.borderStart(component); i < components.borderEnd(component); i++) {
+      int cell = components.border(i);
+      int x = cell % sizeX;
+      int y = cell / sizeX;
+      if (hasNeighborNotDug(x, y)) {
+        frontier.add(cell);
+      }
+      for (int j = 0; j < 8; j++) {
+        int xNeighbor = x + neighbors[j][0];
+        int yNeighbor = y + neighbors[j][1];
+        if (validateCoordinates(xNeighbor, yNeighbor)
+            && components.componentOf(yNeighbor * sizeX + xNeighbor) != component
+            && isDug(xNeighbor, yNeighbor) && !hasNeighborNotDug(xNeighbor, yNeighbor)) {
+          frontier.remove(yNeighbor * sizeX + xNeighbor);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param x x-coordinate of square
+   * @param y y-coordinate of square
+   * @return true if the square is dug
+   */
+  private boolean isDug(int x, int y) {
+    return components.isDug(y * sizeX + x);
+  }
+
+  /**
+   * @param x x-coordinate of square
+   * @param y y-coordinate of square
+   * @return true if a neighbor of the square is not dug
+   */
+  private boolean hasNeighborNotDug(int x, int y) {
+    for (int i = 0; i < 8; i++) {
+      int xNeighbor = x + neighbors[i][0];
+      int yNeighbor = y + neighbors[i][1];
+      if (validateCoordinates(xNeighbor, yNeighbor) && !isDug(xNeighbor, yNeighbor)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Counts the squares without a bomb that are not dug, the flagged squares and the bombs.
+   * Requires the caller to hold the board's lock or to be the constructor.
+   */
+  private void recomputeCounters() {
+    safeSquaresLeft = 0;
+    flagsPlaced = 0;
+    bombsLeft = 0;
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        boolean dug = isDug(x, y);
+        if (cells.hasBomb(x, y)) {
+          bombsLeft++;
+        } else if (!dug) {
+          safeSquaresLeft++;
+        }
+        if (!dug && flagged.get(x, y)) {
+          flagsPlaced++;
+        }
+      }
+    }
+  }
+
   /**
    * Flags a square if it's state is untouched
    *
@@ -168,16 +566,37 @@ public class Board {
    * @param y y-coordinate of square
    * @return a string representation of the board.
    */
-  synchronized String flag(int x, int y) {
-    if (!validateCoordinates(x, y)) {
-      return look();
-    }
-    Square square = squaresArray[y][x];
-    if (square.getSquareStatus() == UNTOUCHED) {
-      square.setSquareStatus(FLAGGED);
+  String flag(int x, int y) {
+    return toAscii(flag(x, y, null));
+  }
+
+  /**
+   * Flags a square if it's state is untouched, rendering the board into a reusable buffer.
+   *
+   * @param x x-coordinate of square
+   * @param y y-coordinate of square
+   * @param reply buffer to render into as in renderInto()
+   * @return the buffer holding the encoded board as in renderInto()
+   */
+  ByteBuffer flag(int x, int y, ByteBuffer reply) {
+    final long lockRequested = System.nanoTime();
+    final JfrEvents.BoardLockWaitEvent lockWaitEvent = new JfrEvents.BoardLockWaitEvent();
+    lockWaitEvent.begin();
+    synchronized (this) {
+      lockAcquired(lockRequested, lockWaitEvent);
+      if (!validateCoordinates(x, y)) {
+        return renderInto(reply);
+      }
+      if (!isDug(x, y) && cells.getStatus(x, y) == UNTOUCHED) {
+        cells.setStatus(x, y, FLAGGED);
+        flagged.set(x, y);
+        components.flagChanged(y * sizeX + x, 1);
+        flagsPlaced++;
+        version++;
+      }
+      checkRep();
+      return renderInto(reply);
     }
-    checkRep();
-    return look();
   }
 
   /**
@@ -187,16 +606,37 @@ public class Board {
    * @param y y-coordinate of square
    * @return a string representation of the board.
    */
-  synchronized String deflag(int x, int y) {
-    if (!validateCoordinates(x, y)) {
-      return look();
-    }
-    Square square = squaresArray[y][x];
-    if (square.getSquareStatus() == FLAGGED) {
-      square.setSquareStatus(UNTOUCHED);
+  String deflag(int x, int y) {
+    return toAscii(deflag(x, y, null));
+  }
+
+  /**
+   * Deflags a square if it's state is flagged, rendering the board into a reusable buffer.
+   *
+   * @param x x-coordinate of square
+   * @param y y-coordinate of square
+   * @param reply buffer to render into as in renderInto()
+   * @return the buffer holding the encoded board as in renderInto()
+   */
+  ByteBuffer deflag(int x, int y, ByteBuffer reply) {
+    final long lockRequested = System.nanoTime();
+    final JfrEvents.BoardLockWaitEvent lockWaitEvent = new JfrEvents.BoardLockWaitEvent();
+    lockWaitEvent.begin();
+    synchronized (this) {
+      lockAcquired(lockRequested, lockWaitEvent);
+      if (!validateCoordinates(x, y)) {
+        return renderInto(reply);
+      }
+      if (!isDug(x, y) && cells.getStatus(x, y) == FLAGGED) {
+        cells.setStatus(x, y, UNTOUCHED);
+        flagged.clear(x, y);
+        components.flagChanged(y * sizeX + x, -1);
+        flagsPlaced--;
+        version++;
+      }
+      checkRep();
+      return renderInto(reply);
     }
-    checkRep();
-    return look();
   }
 
   /**
@@ -207,42 +647,71 @@ public class Board {
    * @return a string representation of the board if the dug square does not contain a bomb,
    * otherwise returns "BOOM"
    */
-  synchronized String dig(int x, int y) {
-    if (!validateCoordinates(x, y)) {
-      return look();
-    }
-    Square square = squaresArray[y][x];
-    Square.SquareStatus squareStatus = square.getSquareStatus();
-    if (square.hasBomb()) {
-      square.removeBomb();
-      square.setSquareStatus(DUG);
-      checkRep();
-      return "BOOM";
-    } else if (squareStatus == UNTOUCHED || squareStatus == FLAGGED) {
-      square.setSquareStatus(DUG);
-      digNeighborsWithoutBombs(x, y);
-    }
-    checkRep();
-    return look();
+  String dig(int x, int y) {
+    ByteBuffer reply = dig(x, y, null);
+    return reply == null ? "BOOM" : toAscii(reply);
   }
 
   /**
-   * Digs the neighbors (max. 8) of a square recursively if the don't have a bomb.
+   * Digs a square, rendering the board into a reusable buffer.
    *
    * @param x x-coordinate of square
    * @param y y-coordinate of square
+   * @param reply buffer to render into as in renderInto()
+   * @return the buffer holding the encoded board as in renderInto() if the dug square does not
+   * contain a bomb, otherwise null
    */
-  private void digNeighborsWithoutBombs(int x, int y) {
-    for (int i = 0; i < 8; i++) {
-      int xNeighbor = x + neighbors[i][0];
-      int yNeighbor = y + neighbors[i][1];
-      if (validateCoordinates(xNeighbor, yNeighbor)) {
-        Square square = squaresArray[yNeighbor][xNeighbor];
-        if (!square.hasBomb() && square.getSquareStatus() != DUG) {
-          square.setSquareStatus(DUG);
-          digNeighborsWithoutBombs(xNeighbor, yNeighbor);
+  ByteBuffer dig(int x, int y, ByteBuffer reply) {
+    final long lockRequested = System.nanoTime();
+    final JfrEvents.BoardLockWaitEvent lockWaitEvent = new JfrEvents.BoardLockWaitEvent();
+    lockWaitEvent.begin();
+    synchronized (this) {
+      lockAcquired(lockRequested, lockWaitEvent);
+      if (!validateCoordinates(x, y) || isDug(x, y)) {
+        return renderInto(reply);
+      }
+      if (cells.hasBomb(x, y)) {
+        if (cells.getStatus(x, y) == FLAGGED) {
+          flagsPlaced--;
+        }
+        cells.setBomb(x, y, false);
+        cells.setStatus(x, y, DUG);
+        bombsLeft--;
+        if (bombCountsShared) {
+          bombCounts = bombCounts.clone();
+          bombCountsShared = false;
+        }
+        for (int i = 0; i < 8; i++) {
+          int xNeighbor = x + neighbors[i][0];
+          int yNeighbor = y + neighbors[i][1];
+          if (validateCoordinates(xNeighbor, yNeighbor)) {
+            bombCounts[yNeighbor * sizeX + xNeighbor]--;
+          }
         }
+        components.explode(y * sizeX + x);
+        updateFrontier(x, y);
+        version++;
+        checkRep();
+        return null;
       }
+      JfrEvents.FloodFillEvent floodFillEvent = new JfrEvents.FloodFillEvent();
+      floodFillEvent.begin();
+      int component = components.componentOf(y * sizeX + x);
+      int dugSquares = components.size(component);
+      safeSquaresLeft -= dugSquares;
+      flagsPlaced -= components.flags(component);
+      components.reveal(component);
+      updateFrontier(component);
+      version++;
+      MinesweeperServer.stats.recordFloodFill(dugSquares);
+      if (floodFillEvent.shouldCommit()) {
+        floodFillEvent.x = x;
+        floodFillEvent.y = y;
+        floodFillEvent.squares = dugSquares;
+        floodFillEvent.commit();
+      }
+      checkRep();
+      return renderInto(reply);
     }
   }
 
@@ -251,50 +720,279 @@ public class Board {
    *
    * @return a string representation of the board state.
    */
-  synchronized String look() {
-    StringBuilder sb = new StringBuilder(sizeY * sizeX + sizeX);
-    for (int y = 0; y < sizeY; y++) {
-      for (int x = 0; x < sizeX; x++) {
-        SquareStatus squareStatus = squaresArray[y][x].getSquareStatus();
-        if (squareStatus.equals(UNTOUCHED)) {
-          sb.append("-");
-        } else if (squareStatus.equals(FLAGGED)) {
-          sb.append("F");
-        } else {
-          sb.append(countBombs(x, y));
-        }
-        if (x == sizeX - 1) {
-          sb.append("\r\n");
-        }
+  String look() {
+    final long lockRequested = System.nanoTime();
+    final JfrEvents.BoardLockWaitEvent lockWaitEvent = new JfrEvents.BoardLockWaitEvent();
+    lockWaitEvent.begin();
+    synchronized (this) {
+      lockAcquired(lockRequested, lockWaitEvent);
+      return render();
+    }
+  }
+
+  /**
+   * Returns the board state encoded as in look(), as a read-only direct buffer that is shared by
+   * all callers until the board changes. The board is rendered and encoded at most once per
+   * version, however many clients look at it.
+   *
+   * @return a read-only view of the encoded board, positioned at its start
+   */
+  ByteBuffer lookBuffer() {
+    final long lockRequested = System.nanoTime();
+    final JfrEvents.BoardLockWaitEvent lockWaitEvent = new JfrEvents.BoardLockWaitEvent();
+    lockWaitEvent.begin();
+    synchronized (this) {
+      lockAcquired(lockRequested, lockWaitEvent);
+      if (lookBytesVersion != version) {
+        ByteBuffer buffer =
+            renderInto(ByteBuffer.allocateDirect(BoardRenderer.length(sizeX, sizeY)));
+        lookBytes = buffer.asReadOnlyBuffer();
+        lookBytesVersion = version;
       }
+      return lookBytes.duplicate();
+    }
+  }
+
+  /**
+   * @return a number that changes whenever the state of a square may have changed
+   */
+  synchronized long getVersion() {
+    refreshIfStale();
+    return version;
+  }
+
+  /**
+   * Converts board state to a string. Requires the caller to hold the board's lock.
+   *
+   * @return a string representation of the board state.
+   */
+  private String render() {
+    return toAscii(renderInto(null));
+  }
+
+  /**
+   * Encodes the board state as the ASCII bytes of render(). Requires the caller to hold the
+   * board's lock.
+   *
+   * @param reply buffer to render into, reused if its capacity is large enough; null for a new
+   * heap buffer of exactly the needed size
+   * @return reply, or a new buffer if reply is null or too small (a direct buffer unless reply is
+   * null), holding the encoded board state between position 0 and its limit
+   */
+  private ByteBuffer renderInto(ByteBuffer reply) {
+    JfrEvents.RenderEvent renderEvent = new JfrEvents.RenderEvent();
+    renderEvent.begin();
+    final int length = BoardRenderer.length(sizeX, sizeY);
+    if (reply == null) {
+      reply = ByteBuffer.allocate(length);
+    } else if (reply.capacity() < length) {
+      reply = ByteBuffer.allocateDirect(length);
     }
+    reply.clear();
+    BoardRenderer.render(sizeX, sizeY, bombCounts, flagged, components, reply);
+    reply.limit(length);
     checkRep();
-    return sb.toString();
+    if (renderEvent.shouldCommit()) {
+      renderEvent.bytes = length;
+      renderEvent.commit();
+    }
+    return reply;
+  }
+
+  /**
+   * @param encoded a heap buffer returned by renderInto(null)
+   * @return the ASCII string held by the buffer
+   */
+  private static String toAscii(ByteBuffer encoded) {
+    return new String(encoded.array(), 0, encoded.limit(), StandardCharsets.US_ASCII);
   }
 
   /**
-   * Counts number of bombs that surround a dug square.
-   * If the dug square has no neighbors with bombs then the
-   * square is left empty.
+   * Describes the progress of the game. Takes O(1) time.
    *
-   * @param x x-coordinate of dug square
-   * @param y y-coordinate of dug square
-   * @return the number of bombs that surround a dug square but if the dug square has no neighbors
-   * with bombs then the square is left empty.
+   * @return "safe=S flags=F bombs=B cleared=C" where S is the number of squares without a bomb
+   * that are not dug yet, F the number of flagged squares, B the number of bombs on the board and
+   * C is true if and only if the board is cleared
    */
-  private String countBombs(int x, int y) {
-    int bombCount = 0;
-    for (int i = 0; i < 8; i++) {
-      int xNeighbor = x + neighbors[i][0];
-      int yNeighbor = y + neighbors[i][1];
-      if (validateCoordinates(xNeighbor, yNeighbor)) {
-        if (squaresArray[yNeighbor][xNeighbor].hasBomb()) {
-          bombCount++;
+  synchronized String status() {
+    refreshIfStale();
+    return "safe=" + safeSquaresLeft + " flags=" + flagsPlaced + " bombs=" + bombsLeft
+        + " cleared=" + (safeSquaresLeft == 0);
+  }
+
+  /**
+   * @return true if every square without a bomb is dug
+   */
+  synchronized boolean isCleared() {
+    refreshIfStale();
+    return safeSquaresLeft == 0;
+  }
+
+  /**
+   * @return true if no square is dug or flagged
+   */
+  synchronized boolean isFresh() {
+    refreshIfStale();
+    return flagsPlaced == 0 && (long) safeSquaresLeft + bombsLeft == (long) sizeX * sizeY;
+  }
+
+  /**
+   * Claims the right to announce that the board is cleared, so exactly one caller announces it.
+   *
+   * @return true if the board is cleared and no earlier call returned true
+   */
+  synchronized boolean claimClearedAnnouncement() {
+    refreshIfStale();
+    if (safeSquaresLeft != 0 || clearedAnnounced) {
+      return false;
+    }
+    clearedAnnounced = true;
+    return true;
+  }
+
+  /**
+   * Finds squares that are provably safe or provably mined, judging only from the numbers of the
+   * dug squares. The constraints of the frontier are copied under the board's lock and solved
+   * after releasing it, so a large frontier does not hold up other players.
+   *
+   * @return "safe=X,Y;X,Y mines=X,Y;X,Y" as of the moment the frontier was copied
+   */
+  String hint() {
+    final long lockRequested = System.nanoTime();
+    final JfrEvents.BoardLockWaitEvent lockWaitEvent = new JfrEvents.BoardLockWaitEvent();
+    lockWaitEvent.begin();
+    List<HintSolver.Constraint> constraints;
+    synchronized (this) {
+      lockAcquired(lockRequested, lockWaitEvent);
+      constraints = snapshotFrontier();
+    }
+    return HintSolver.solve(constraints, sizeX).toString();
+  }
+
+  /**
+   * Copies the frontier as constraints on the squares that are not dug.
+   * Requires the caller to hold the board's lock.
+   *
+   * @return one constraint per frontier square
+   */
+  private List<HintSolver.Constraint> snapshotFrontier() {
+    List<HintSolver.Constraint> constraints = new ArrayList<>(frontier.size());
+    int[] cells = new int[8];
+    for (int index : frontier) {
+      int x = index % sizeX;
+      int y = index / sizeX;
+      int notDug = 0;
+      for (int i = 0; i < 8; i++) {
+        int xNeighbor = x + neighbors[i][0];
+        int yNeighbor = y + neighbors[i][1];
+        if (validateCoordinates(xNeighbor, yNeighbor) && !isDug(xNeighbor, yNeighbor)) {
+          cells[notDug++] = yNeighbor * sizeX + xNeighbor;
         }
       }
+      constraints.add(new HintSolver.Constraint(bombsAround(x, y), Arrays.copyOf(cells, notDug)));
     }
-    checkRep();
-    return bombCount > 0 ? "" + bombCount : " ";
+    return constraints;
+  }
+
+  /**
+   * Computes the probability that each square of a rectangle holds a bomb, judging only from the
+   * numbers of the dug squares and the number of bombs on the board. The frontier is copied under
+   * the board's lock and enumerated after releasing it, for at most
+   * ServerConfig.PROBABILITY_BUDGET_MILLIS.
+   *
+   * @param x x-coordinate of the rectangle's top left square
+   * @param y y-coordinate of the rectangle's top left square
+   * @param w width of the rectangle
+   * @param h height of the rectangle
+   * @return one line per row of the rectangle that is on the board, holding one token per square
+   * that is on the board: "." for a dug square, otherwise the probability in percent; followed
+   * by the line "exact=true" or "exact=false" if the time budget ran out. Every line is
+   * terminated by "\r\n"
+   */
+  String probabilities(int x, int y, int w, int h) {
+    final long deadline = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(ServerConfig.PROBABILITY_BUDGET_MILLIS);
+    final long lockRequested = System.nanoTime();
+    final JfrEvents.BoardLockWaitEvent lockWaitEvent = new JfrEvents.BoardLockWaitEvent();
+    lockWaitEvent.begin();
+    final int left = Math.max(0, x);
+    final int top = Math.max(0, y);
+    final int right = (int) Math.min(sizeX, Math.max(0, (long) x + w));
+    final int bottom = (int) Math.min(sizeY, Math.max(0, (long) y + h));
+    boolean[][] dug = new boolean[Math.max(0, bottom - top)][Math.max(0, right - left)];
+    List<HintSolver.Constraint> constraints;
+    int unknownSquares;
+    int bombs;
+    synchronized (this) {
+      lockAcquired(lockRequested, lockWaitEvent);
+      for (int row = top; row < bottom; row++) {
+        for (int column = left; column < right; column++) {
+          dug[row - top][column - left] = isDug(column, row);
+        }
+      }
+      constraints = snapshotFrontier();
+      unknownSquares = safeSquaresLeft + bombsLeft;
+      bombs = bombsLeft;
+    }
+    ProbabilityEngine.Probabilities probabilities =
+        probabilityEngine.compute(constraints, unknownSquares, bombs, deadline);
+    StringBuilder sb = new StringBuilder();
+    for (int row = top; row < bottom; row++) {
+      for (int column = left; column < right; column++) {
+        if (column > left) {
+          sb.append(' ');
+        }
+        if (dug[row - top][column - left]) {
+          sb.append('.');
+        } else {
+          sb.append(Math.round(100 * probabilities.get(row * sizeX + column)));
+        }
+      }
+      sb.append("\r\n");
+    }
+    sb.append("exact=").append(probabilities.isExact()).append("\r\n");
+    return sb.toString();
+  }
+
+  /**
+   * @return number of dug squares next to a square that is not dug
+   */
+  synchronized int getFrontierSize() {
+    refreshIfStale();
+    return frontier.size();
+  }
+
+  /**
+   * @return number of squares without a bomb that are not dug
+   */
+  synchronized int getSafeSquaresLeft() {
+    refreshIfStale();
+    return safeSquaresLeft;
+  }
+
+  /**
+   * @return number of flagged squares
+   */
+  synchronized int getFlagsPlaced() {
+    refreshIfStale();
+    return flagsPlaced;
+  }
+
+  /**
+   * @return number of bombs on the board
+   */
+  synchronized int getBombsLeft() {
+    refreshIfStale();
+    return bombsLeft;
+  }
+
+  /**
+   * @param x x-coordinate of square
+   * @param y y-coordinate of square
+   * @return the number of neighbors of the square that have a bomb
+   */
+  private int bombsAround(int x, int y) {
+    return bombCounts[y * sizeX + x];
   }
 
   /**
@@ -309,11 +1007,138 @@ public class Board {
   }
 
   /**
-   * Get all the boards squares.
+   * @return width of the board in squares
+   */
+  int getSizeX() {
+    return sizeX;
+  }
+
+  /**
+   * @return length of the board in squares
    */
+  int getSizeY() {
+    return sizeY;
+  }
 
-  Square[][] getSquaresArray() {
-    return squaresArray;
+  /**
+   * Get all the boards squares, with every dug square's status set to DUG.
+   * Changes made through the returned array are picked up by the next Board operation.
+   * Requires a board stored on the heap.
+   */
+
+  synchronized Square[][] getSquaresArray() {
+    if (evictedTo != null) {
+      restore();
+    }
+    if (!(cells instanceof HeapCellStore)) {
+      throw new UnsupportedOperationException("the squares of this board are not on the heap");
+    }
+    if (!derivedStateStale) {
+      components.materialize(cells);
+    }
+    derivedStateStale = true;
+    return ((HeapCellStore) cells).getSquares();
+  }
+
+  /**
+   * Writes the dug state of the board into its store and makes the store durable, so a board
+   * backed by a file can be reopened in its current state.
+   */
+  synchronized void checkpoint() {
+    refreshIfStale();
+    components.materialize(cells);
+    cells.flush();
+  }
+
+  /**
+   * Writes the squares of the board to a file and releases them and all state derived from them.
+   * The next operation on the board reads them back and deletes the file. Boards whose squares
+   * live in a mapped file are not evicted, the operating system already pages them out, and
+   * neither are games on a shared BombLayout, which hold little more than their statuses.
+   *
+   * @param path file to write the squares to, replaced if it exists
+   * @return true if the board was evicted, false if it was already evicted, is mapped or shares
+   * its layout
+   * @throws IOException if the file cannot be written; the board then stays in memory
+   */
+  synchronized boolean evict(Path path) throws IOException {
+    if (evictedTo != null || cells instanceof MappedCellStore
+        || cells instanceof OverlayCellStore) {
+      return false;
+    }
+    if (!derivedStateStale) {
+      components.materialize(cells);
+    }
+    EvictedCells.write(cells, path);
+    cells = null;
+    components = null;
+    bombCounts = null;
+    flagged = null;
+    frontier.clear();
+    lookBytes = null;
+    lookBytesVersion = -1;
+    derivedStateStale = true;
+    evictedTo = path;
+    checkRep();
+    return true;
+  }
+
+  /**
+   * Reads the squares of an evicted board back now rather than on its next access, and deletes
+   * the file they were evicted to. Does nothing if the board is not evicted.
+   *
+   * @throws UncheckedIOException if the file of the evicted squares cannot be read
+   */
+  synchronized void reload() {
+    if (evictedTo != null) {
+      restore();
+    }
+    checkRep();
+  }
+
+  /**
+   * Reads the squares of an evicted board back onto the heap. Requires the caller to hold the
+   * board's lock.
+   *
+   * @throws UncheckedIOException if the file of the evicted squares cannot be read
+   */
+  private void restore() {
+    CellStore restored = new HeapCellStore(sizeX, sizeY);
+    try {
+      EvictedCells.read(evictedTo, restored);
+      Files.deleteIfExists(evictedTo);
+    } catch (IOException e) {
+      throw new UncheckedIOException("cannot reload the evicted board from " + evictedTo, e);
+    }
+    cells = restored;
+    evictedTo = null;
+  }
+
+  /**
+   * @return true if the squares of the board are evicted to a file
+   */
+  synchronized boolean isEvicted() {
+    return evictedTo != null;
+  }
+
+  /**
+   * @return System.nanoTime() of the last operation on the board; evicting it and the methods
+   * that only describe its memory do not count
+   */
+  synchronized long getLastAccessNanos() {
+    return lastAccessNanos;
+  }
+
+  /**
+   * @return estimated memory the squares of the board and their derived state use, 0 if evicted
+   */
+  synchronized long estimateResidentBytes() {
+    if (evictedTo != null) {
+      return 0;
+    }
+    long squares = (long) sizeX * sizeY;
+    return squares * (cells instanceof HeapCellStore ? HEAP_BYTES_PER_SQUARE
+        : MAPPED_BYTES_PER_SQUARE);
   }
 
 
@@ -0,0 +1,205 @@
+package minesweeper.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evicts the squares of boards nobody plays on to disk, so that idle or old games stop holding
+ * memory; the next operation on an evicted board reads its squares back.
+ *
+ * Once a second a single daemon thread evicts every watched board that was not accessed for
+ * idleNanos, then, while the estimated memory of the boards still in memory exceeds the budget,
+ * the least recently accessed of them. Each board is written to its own new file in the
+ * directory, which the board deletes when it reloads.
+ */
+
+class BoardEvictor implements Closeable {
+
+  private final Path directory;
+  private final long idleNanos;
+  private final long budgetBytes;
+  private final Set<Board> boards = ConcurrentHashMap.newKeySet();
+  private final LongAdder evictions = new LongAdder();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "board-evictor");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  // Representation invariant
+  //    directory is not null, idleNanos >= 0, budgetBytes >= 0
+  //    boards does not contain null
+
+  // Abstraction function
+  //    Represents the policy "evict every board of boards idle for idleNanos, then the least
+  //    recently accessed until the boards in memory fit in budgetBytes", writing to directory.
+  //    idleNanos == 0 or budgetBytes == 0 turns the respective rule off.
+
+  // Safety from representation exposure
+  //    All fields are private; the boards are shared with the server on purpose and only
+  //    accessed through their threadsafe methods.
+
+  // Thread safety argument
+  //    boards is a concurrent set and evictions a threadsafe counter. Evicting runs on the
+  //    scheduler thread or on the thread calling evictIdle and takes each board's lock, so an
+  //    access either finishes before the board is evicted or reloads it afterwards.
+  //    A board is only evicted if it is still in boards under its lock, and unwatch removes it
+  //    and reloads it under the same lock, so no unwatched board is left evicted to a file.
+
+  private void checkRep() {
+    assert directory != null : "directory should not be null";
+    assert idleNanos >= 0 && budgetBytes >= 0 : "limits should not be negative";
+  }
+
+  /**
+   * Creates an evictor watching no board; boards are evicted once a second from now on.
+   *
+   * @param directory existing directory to write evicted boards to
+   * @param idleNanos time without access after which a board is evicted, or 0 for never
+   * @param budgetBytes estimated memory the boards in memory may use, or 0 for no limit
+   */
+  BoardEvictor(Path directory, long idleNanos, long budgetBytes) {
+    this.directory = directory;
+    this.idleNanos = idleNanos;
+    this.budgetBytes = budgetBytes;
+    checkRep();
+    scheduler.scheduleWithFixedDelay(() -> evictIdle(System.nanoTime()), 1, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Starts applying the policy to a board.
+   *
+   * @param board the board
+   */
+  void watch(Board board) {
+    boards.add(board);
+  }
+
+  /**
+   * Stops applying the policy to a board. If it is evicted, it is read back, so that its file
+   * does not outlive it; an eviction in progress finishes first.
+   *
+   * @param board the board
+   */
+  void unwatch(Board board) {
+    synchronized (board) {
+      boards.remove(board);
+      try {
+        board.reload();
+      } catch (UncheckedIOException e) {
+        System.err.println("cannot reload an unwatched board: " + e);
+      }
+    }
+  }
+
+  /**
+   * Applies the policy once. A board that cannot be written stays in memory and is tried again
+   * the next time.
+   *
+   * @param nowNanos the current System.nanoTime()
+   * @return number of boards evicted
+   */
+  int evictIdle(long nowNanos) {
+    List<Resident> resident = new ArrayList<>();
+    long bytes = 0;
+    int evicted = 0;
+    for (Board board : boards) {
+      if (board.isEvicted()) {
+        continue;
+      }
+      long idle = nowNanos - board.getLastAccessNanos();
+      if (idleNanos > 0 && idle >= idleNanos && evict(board)) {
+        evicted++;
+        continue;
+      }
+      Resident entry = new Resident(board, idle, board.estimateResidentBytes());
+      resident.add(entry);
+      bytes += entry.bytes;
+    }
+    if (budgetBytes > 0 && bytes > budgetBytes) {
+      // boards are accessed concurrently, so sort by the idle times read above
+      resident.sort(Comparator.comparingLong((Resident entry) -> entry.idle).reversed());
+      for (int i = 0; i < resident.size() && bytes > budgetBytes; i++) {
+        if (evict(resident.get(i).board)) {
+          bytes -= resident.get(i).bytes;
+          evicted++;
+        }
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * @return number of boards evicted so far
+   */
+  long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Stops evicting boards; evicted boards still reload on their next access.
+   */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    try {
+      scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean evict(Board board) {
+    Path file = null;
+    try {
+      file = Files.createTempFile(directory, "board-", ".msev");
+      synchronized (board) {
+        // evictIdle may have seen the board before it was unwatched
+        if (boards.contains(board) && board.evict(file)) {
+          evictions.increment();
+          return true;
+        }
+      }
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      System.err.println("cannot evict a board to " + directory + ": " + e);
+      if (file != null) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+          // left for the operating system to clean up the temporary directory
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A board in memory, with how long it was idle and how much memory it used when last seen.
+   */
+  private static final class Resident {
+
+    private final Board board;
+    private final long idle;
+    private final long bytes;
+
+    private Resident(Board board, long idle, long bytes) {
+      this.board = board;
+      this.idle = idle;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package minesweeper.server;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of new random boards, generated ahead of time so that a game can start without waiting
+ * for its board to be built.
+ *
+ * Boards are generated by a single daemon thread of minimum priority, for every shape (size and
+ * bomb density) that was prepared, until the pool holds boardsPerShape boards of the shape or
+ * the estimated memory of all pooled boards would exceed the budget. Taking a board starts
+ * refilling its shape; if no board of the shape is ready, one is built on the caller's thread.
+ */
+
+class BoardPool implements Closeable {
+
+  /**
+   * Builds a new random board.
+   */
+  interface Factory {
+
+    /**
+     * @param sizeX width of the board, requires > 0
+     * @param sizeY length of the board, requires > 0
+     * @param density fraction of the squares with a bomb, requires 0 <= density <= 1
+     * @return a new board with every square untouched
+     */
+    Board create(int sizeX, int sizeY, double density);
+  }
+
+  private final Factory factory;
+  private final int boardsPerShape;
+  private final long budgetBytes;
+  private final long bytesPerSquare;
+  private final Map<Shape, Pool> pools = new ConcurrentHashMap<>();
+  private final AtomicLong pooledBytes = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final ExecutorService generator = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "board-pool");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+
+  // Representation invariant
+  //    factory is not null, boardsPerShape > 0, budgetBytes >= 0, bytesPerSquare > 0
+  //    pooledBytes == sum of estimateBytes() of the boards in all pools and of the board the
+  //      generator thread is building, if any; pooledBytes <= budgetBytes
+
+  // Abstraction function
+  //    Represents, for every prepared shape, the queue of boards of that shape that are ready to
+  //    be handed out, and the boards of that shape that the generator thread is building.
+
+  // Safety from representation exposure
+  //    All fields are private. A board is handed out at most once and never referenced by the
+  //    pool afterwards.
+
+  // Thread safety argument
+  //    pools is a concurrent map of threadsafe queues, the counters are atomic. Boards are only
+  //    built on the generator thread or on the thread that takes them; a refill of a shape is
+  //    only scheduled if its refilling flag was clear, so at most one refill per shape is queued.
+  //    pooledBytes is reserved with compareAndSet before a board is built, so concurrent
+  //    refills of different shapes never exceed the budget together.
+
+  private void checkRep() {
+    assert factory != null : "factory should not be null";
+    assert boardsPerShape > 0 : "boardsPerShape should be positive";
+    assert pooledBytes.get() <= budgetBytes : "pooled boards should fit in the budget";
+  }
+
+  /**
+   * Creates an empty pool; boards are generated once a shape is prepared.
+   *
+   * @param factory builds the boards
+   * @param boardsPerShape number of boards of every shape to keep ready, requires > 0
+   * @param budgetBytes estimated memory all pooled boards together may use, requires >= 0
+   * @param bytesPerSquare estimated memory a board of the factory uses per square, requires > 0
+   */
+  BoardPool(Factory factory, int boardsPerShape, long budgetBytes, long bytesPerSquare) {
+    this.factory = factory;
+    this.boardsPerShape = boardsPerShape;
+    this.budgetBytes = budgetBytes;
+    this.bytesPerSquare = bytesPerSquare;
+    checkRep();
+  }
+
+  /**
+   * Starts generating boards of a shape in the background, if it is not prepared yet.
+   *
+   * @param sizeX width of the boards, requires > 0
+   * @param sizeY length of the boards, requires > 0
+   * @param density fraction of the squares with a bomb, requires 0 <= density <= 1
+   */
+  void prepare(int sizeX, int sizeY, double density) {
+    refill(pools.computeIfAbsent(new Shape(sizeX, sizeY, density), Pool::new));
+  }
+
+  /**
+   * Hands out a new board and starts refilling the pool of its shape.
+   *
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   * @param density fraction of the squares with a bomb, requires 0 <= density <= 1
+   * @return a pooled board of the shape, or a board built now if none is ready
+   */
+  Board take(int sizeX, int sizeY, double density) {
+    Pool pool = pools.computeIfAbsent(new Shape(sizeX, sizeY, density), Pool::new);
+    Board board = pool.boards.poll();
+    if (board != null) {
+      pooledBytes.addAndGet(-estimateBytes(pool.shape));
+      hits.increment();
+    } else {
+      misses.increment();
+      board = factory.create(sizeX, sizeY, density);
+    }
+    refill(pool);
+    return board;
+  }
+
+  /**
+   * @param sizeX width of the boards
+   * @param sizeY length of the boards
+   * @param density fraction of the squares with a bomb
+   * @return number of boards of the shape that are ready to be handed out
+   */
+  int getReady(int sizeX, int sizeY, double density) {
+    Pool pool = pools.get(new Shape(sizeX, sizeY, density));
+    return pool == null ? 0 : pool.boards.size();
+  }
+
+  /**
+   * @return estimated memory of all boards that are ready to be handed out or being built
+   */
+  long getPooledBytes() {
+    return pooledBytes.get();
+  }
+
+  /**
+   * @return number of boards handed out from the pool
+   */
+  long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of boards built on the taking thread because none was ready
+   */
+  long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Stops generating boards; boards that are ready can still be taken.
+   */
+  @Override
+  public void close() {
+    generator.shutdownNow();
+    try {
+      generator.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private long estimateBytes(Shape shape) {
+    return (long) shape.sizeX * shape.sizeY * bytesPerSquare;
+  }
+
+  private void refill(Pool pool) {
+    if (!pool.refilling.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      generator.execute(() -> fill(pool));
+    } catch (RejectedExecutionException e) {
+      pool.refilling.set(false);
+    }
+  }
+
+  private void fill(Pool pool) {
+    final long bytes = estimateBytes(pool.shape);
+    try {
+      while (pool.boards.size() < boardsPerShape && !Thread.currentThread().isInterrupted()) {
+        long reserved = pooledBytes.get();
+        if (reserved + bytes > budgetBytes) {
+          return;
+        }
+        if (!pooledBytes.compareAndSet(reserved, reserved + bytes)) {
+          continue;
+        }
+        Board board;
+        try {
+          board = pool.shape.create(factory);
+        } catch (RuntimeException | OutOfMemoryError e) {
+          pooledBytes.addAndGet(-bytes);
+          throw e;
+        }
+        pool.boards.add(board);
+      }
+    } finally {
+      pool.refilling.set(false);
+    }
+    // a board taken after the loop ended found the flag still set and did not schedule a refill
+    if (pool.boards.size() < boardsPerShape && pooledBytes.get() + bytes <= budgetBytes) {
+      refill(pool);
+    }
+  }
+
+  /**
+   * Size and bomb density of boards.
+   */
+  private static final class Shape {
+
+    private final int sizeX;
+    private final int sizeY;
+    private final double density;
+
+    private Shape(int sizeX, int sizeY, double density) {
+      this.sizeX = sizeX;
+      this.sizeY = sizeY;
+      this.density = density;
+    }
+
+    private Board create(Factory factory) {
+      return factory.create(sizeX, sizeY, density);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Shape)) {
+        return false;
+      }
+      Shape that = (Shape) other;
+      return sizeX == that.sizeX && sizeY == that.sizeY
+          && Double.compare(density, that.density) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sizeX, sizeY, density);
+    }
+  }
+
+  /**
+   * The boards of one shape that are ready to be handed out.
+   */
+  private static final class Pool {
+
+    private final Shape shape;
+    private final Queue<Board> boards = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    private Pool(Shape shape) {
+      this.shape = shape;
+    }
+  }
+}
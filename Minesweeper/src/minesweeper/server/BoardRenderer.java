@@ -0,0 +1,111 @@
+package minesweeper.server;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Renders a board as the ASCII bytes of the look reply, eight squares at a time.
+ *
+ * The glyphs of eight squares are computed as the eight byte lanes of a long (SWAR): the bomb
+ * counts are read as one little-endian long and turned into digits by adding '0' to every lane,
+ * lanes with a count of 0 are turned into ' ', and the lanes of squares that are not dug are
+ * replaced by '-' or 'F' with byte masks spread from the dug and flagged bits. The eight glyphs
+ * are then written with a single store. Squares past the last multiple of eight in a row are
+ * rendered one at a time.
+ *
+ * The bytes are written into a buffer supplied by the caller, so a caller that reuses its buffer
+ * renders without allocating.
+ */
+
+final class BoardRenderer {
+
+  private static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle BUFFER_LONGS =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+  private static final long DIGITS = 0x3030303030303030L;
+  private static final long DASHES = 0x2D2D2D2D2D2D2D2DL;
+  private static final long FLAGS = 0x4646464646464646L;
+  /** SPREAD[b] has byte lane i set to 0xFF if and only if bit i of b is set. */
+  private static final long[] SPREAD = new long[256];
+
+  static {
+    for (int b = 0; b < 256; b++) {
+      for (int i = 0; i < 8; i++) {
+        if ((b & (1 << i)) != 0) {
+          SPREAD[b] |= 0xFFL << (8 * i);
+        }
+      }
+    }
+  }
+
+  private BoardRenderer() {
+  }
+
+  /**
+   * @param sizeX width of the board
+   * @param sizeY length of the board
+   * @return number of bytes render() writes for a board of this size
+   */
+  static int length(int sizeX, int sizeY) {
+    return sizeY * (sizeX + 2);
+  }
+
+  /**
+   * Renders a board into out, starting at index 0, without changing out's position or limit.
+   * Requires the caller to hold the board's lock.
+   *
+   * @param sizeX width of the board
+   * @param sizeY length of the board
+   * @param bombCounts number of neighbors with a bomb of every square, indexed by y * sizeX + x
+   * @param flagged the flagged squares
+   * @param components the board's components, which tell whether a square is dug
+   * @param out buffer to render into, requires limit >= length(sizeX, sizeY); receives one line
+   * per row, a glyph per square ('-' untouched, 'F' flagged, ' ' dug without neighboring bombs,
+   * '1' to '8' dug), every line terminated by "\r\n"
+   */
+  static void render(int sizeX, int sizeY, byte[] bombCounts, Bitboard flagged,
+      Components components, ByteBuffer out) {
+    final int lineLength = sizeX + 2;
+    final int lanes = sizeX & ~7;
+    for (int y = 0; y < sizeY; y++) {
+      final int cell = y * sizeX;
+      final int line = y * lineLength;
+      for (int x = 0; x < lanes; x += 8) {
+        int dug = 0;
+        for (int i = 0; i < 8; i++) {
+          if (components.isDug(cell + x + i)) {
+            dug |= 1 << i;
+          }
+        }
+        long dugLanes = SPREAD[dug];
+        long flagLanes = SPREAD[flagged.byteAt(x, y)] & ~dugLanes;
+        long glyphs = DASHES & ~(dugLanes | flagLanes) | FLAGS & flagLanes;
+        if (dug != 0) {
+          long counts = (long) LONGS.get(bombCounts, cell + x);
+          // high bit of a lane is set if its count is not 0; counts are at most 8
+          long nonzero = ((counts + LOW_BITS) | counts) & HIGH_BITS;
+          long digits = (counts + DIGITS) - ((~nonzero & HIGH_BITS) >>> 3);
+          glyphs |= digits & dugLanes;
+        }
+        BUFFER_LONGS.set(out, line + x, glyphs);
+      }
+      for (int x = lanes; x < sizeX; x++) {
+        byte glyph;
+        if (components.isDug(cell + x)) {
+          int count = bombCounts[cell + x];
+          glyph = (byte) (count == 0 ? ' ' : '0' + count);
+        } else {
+          glyph = (byte) (flagged.get(x, y) ? 'F' : '-');
+        }
+        out.put(line + x, glyph);
+      }
+      out.put(line + sizeX, (byte) '\r');
+      out.put(line + sizeX + 1, (byte) '\n');
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package minesweeper.server;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An immutable bomb layout that many games can be played on at once, for instance one game per
+ * team of a tournament.
+ *
+ * The layout computes the bombs, the number of bombs around every square and the components of
+ * the untouched board once. Every board created from it with Board.createBoard(BombLayout)
+ * shares them and only keeps the statuses of its squares, two bits per square, and the few
+ * components it revealed; it copies the shared data only when one of its bombs explodes.
+ * Creating such a board takes time in the number of components rather than squares.
+ *
+ * MinesweeperServer hosts a single board and never creates a layout, so this class is only a
+ * library for code that hosts many games of one layout in the same JVM; BombLayoutTest is its
+ * only user in this project.
+ */
+
+final class BombLayout {
+
+  private final int sizeX;
+  private final int sizeY;
+  private final long[] bombs;
+  private final int bombCount;
+  private final byte[] bombCounts;
+  private final Components components;
+
+  // Representation invariant
+  //    sizeX > 0, sizeY > 0
+  //    bombs.length == ceil(sizeX * sizeY / 64), with no bit set beyond sizeX * sizeY
+  //    bombCount == number of bits set in bombs
+  //    bombCounts[y * sizeX + x] == number of neighbors of the square that have a bomb
+  //    components are the components of the board with these bombs and every square untouched
+
+  // Abstraction function
+  //    Represents the board of size sizeX by sizeY whose square y * sizeX + x has a bomb if bit
+  //    y * sizeX + x of bombs is set.
+
+  // Safety from representation exposure
+  //    All fields are private and final. bombs and bombCounts are handed to the boards created
+  //    from the layout, which only read them and copy them before changing them; components is
+  //    only forked, never changed.
+
+  // Thread safety argument
+  //    Immutable: nothing is written after the constructor, and all fields are final, so the
+  //    boards of different threads can read the shared arrays without locking.
+
+  private void checkRep() {
+    assert sizeX > 0 && sizeY > 0 : "size should be positive";
+    assert bombCounts.length == sizeX * sizeY : "bombCounts should have a count per square";
+    assert bombCount >= 0 && bombCount <= sizeX * sizeY : "bombCount out of range";
+  }
+
+  private BombLayout(int sizeX, int sizeY, long[] bombs) {
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    this.bombs = bombs;
+    int count = 0;
+    Bitboard bitboard = new Bitboard(sizeX, sizeY);
+    for (int i = 0; i < sizeX * sizeY; i++) {
+      if ((bombs[i >>> 6] & 1L << i) != 0) {
+        bitboard.set(i % sizeX, i / sizeX);
+        count++;
+      }
+    }
+    this.bombCount = count;
+    this.bombCounts = bitboard.neighborCounts();
+    this.components = Components.build(newCells(), ForkJoinPool.commonPool(),
+        ServerConfig.PARALLEL_FILL_THRESHOLD);
+    checkRep();
+  }
+
+  /**
+   * Creates a layout with given bombs.
+   *
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   * @param bombs the squares with a bomb, indexed by y * sizeX + x; bits beyond the board are
+   * ignored
+   * @return the layout
+   */
+  static BombLayout create(int sizeX, int sizeY, BitSet bombs) {
+    final int n = sizeX * sizeY;
+    long[] bits = new long[(n + 63) >>> 6];
+    for (int i = bombs.nextSetBit(0); i >= 0 && i < n; i = bombs.nextSetBit(i + 1)) {
+      bits[i >>> 6] |= 1L << i;
+    }
+    return new BombLayout(sizeX, sizeY, bits);
+  }
+
+  /**
+   * Creates a layout with bombs placed randomly on a fraction of the squares.
+   *
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   * @param density fraction of the squares with a bomb, requires 0 <= density <= 1
+   * @return the layout
+   */
+  static BombLayout random(int sizeX, int sizeY, double density) {
+    final int n = sizeX * sizeY;
+    final int bombCount = (int) (n * density);
+    final Random random = new Random();
+    long[] bits = new long[(n + 63) >>> 6];
+    for (int placed = 0; placed < bombCount; ) {
+      int i = random.nextInt(n);
+      if ((bits[i >>> 6] & 1L << i) == 0) {
+        bits[i >>> 6] |= 1L << i;
+        placed++;
+      }
+    }
+    return new BombLayout(sizeX, sizeY, bits);
+  }
+
+  /**
+   * @return width of the board
+   */
+  int getSizeX() {
+    return sizeX;
+  }
+
+  /**
+   * @return length of the board
+   */
+  int getSizeY() {
+    return sizeY;
+  }
+
+  /**
+   * @return number of squares with a bomb
+   */
+  int getBombCount() {
+    return bombCount;
+  }
+
+  /**
+   * @return a new store of untouched squares that shares the bombs of this layout
+   */
+  OverlayCellStore newCells() {
+    return new OverlayCellStore(sizeX, sizeY, bombs);
+  }
+
+  /**
+   * @return the number of bombs around every square, indexed by y * sizeX + x; shared, so the
+   * caller must copy it before changing it
+   */
+  byte[] getBombCounts() {
+    return bombCounts;
+  }
+
+  /**
+   * @return the components of the untouched board, for a single new game
+   */
+  Components newComponents() {
+    return components.fork();
+  }
+}
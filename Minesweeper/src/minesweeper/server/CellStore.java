@@ -0,0 +1,70 @@
+package minesweeper.server;
+
+import minesweeper.server.Square.SquareStatus;
+
+/**
+ * Storage for the bomb and the status of every square of a board.
+ *
+ * Implementations are not threadsafe; a board only accesses its store while holding its lock.
+ */
+
+interface CellStore {
+
+  /**
+   * @return width of the board in squares
+   */
+  int getSizeX();
+
+  /**
+   * @return length of the board in squares
+   */
+  int getSizeY();
+
+  /**
+   * @param x x-coordinate of square, requires 0 <= x < getSizeX()
+   * @param y y-coordinate of square, requires 0 <= y < getSizeY()
+   * @return true if the square has a bomb
+   */
+  boolean hasBomb(int x, int y);
+
+  /**
+   * @param x x-coordinate of square, requires 0 <= x < getSizeX()
+   * @param y y-coordinate of square, requires 0 <= y < getSizeY()
+   * @param bomb true to place a bomb on the square, false to remove it
+   */
+  void setBomb(int x, int y, boolean bomb);
+
+  /**
+   * @param x x-coordinate of square, requires 0 <= x < getSizeX()
+   * @param y y-coordinate of square, requires 0 <= y < getSizeY()
+   * @return status of the square
+   */
+  SquareStatus getStatus(int x, int y);
+
+  /**
+   * @param x x-coordinate of square, requires 0 <= x < getSizeX()
+   * @param y y-coordinate of square, requires 0 <= y < getSizeY()
+   * @param status new status of the square
+   */
+  void setStatus(int x, int y, SquareStatus status);
+
+  /**
+   * @param x x-coordinate of square, requires 0 <= x < getSizeX()
+   * @param y y-coordinate of square, requires 0 <= y < getSizeY()
+   * @return number of squares from (x, y) towards the end of row y, at least 1, that all have
+   * the status of (x, y)
+   */
+  default int statusRun(int x, int y) {
+    SquareStatus status = getStatus(x, y);
+    int end = x + 1;
+    while (end < getSizeX() && getStatus(end, y) == status) {
+      end++;
+    }
+    return end - x;
+  }
+
+  /**
+   * Makes the changes so far durable, if the store is backed by a file.
+   */
+  void flush();
+}
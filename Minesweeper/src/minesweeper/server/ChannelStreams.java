@@ -0,0 +1,74 @@
+package minesweeper.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Streams over a blocking socket channel that has no Socket, such as a Unix domain socket.
+ *
+ * The streams of java.nio.channels.Channels hold the channel's blocking lock while they read or
+ * write, so a thread sending a notice would wait until the client's thread returns from a read.
+ * These streams call the channel directly, which reads and writes under separate locks.
+ */
+
+final class ChannelStreams {
+
+  private ChannelStreams() {
+  }
+
+  /**
+   * @param channel a channel in blocking mode
+   * @return a stream reading from the channel; closing it closes the channel
+   */
+  static InputStream input(SocketChannel channel) {
+    return new InputStream() {
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        return channel.read(ByteBuffer.wrap(b, off, len));
+      }
+
+      @Override
+      public void close() throws IOException {
+        channel.close();
+      }
+    };
+  }
+
+  /**
+   * @param channel a channel in blocking mode
+   * @return a stream writing to the channel; closing it closes the channel
+   */
+  static OutputStream output(SocketChannel channel) {
+    return new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        channel.close();
+      }
+    };
+  }
+}
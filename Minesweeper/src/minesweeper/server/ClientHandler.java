@@ -5,20 +5,101 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Each instance of ClientHandler runs in a separate thread of a Minesweeper server.
  * It accepts commands from a Minesweeper client, processes them
  * and sends back a message to the client.
+ *
+ * A client that sends MULTIPLEX_COMMAND switches its connection to framed mode, which carries
+ * the commands of many sessions. Every line the client sends is then a frame "id command", and
+ * every message of the server a frame "id length", a line terminator, the message of length
+ * bytes and another line terminator. The first frame of a new id opens a session that plays like
+ * a connection of its own, with its own rate limits, notices and welcome message, until it says
+ * bye or, outside debug mode, digs a bomb. Frames with id 0 come from the connection itself.
+ * The sessions' commands are executed on the connection's thread, one per session in turn.
  */
 
 public class ClientHandler implements Runnable {
 
+  /**
+   * Start of every message that is not a reply to the client's own command.
+   */
+  static final String NOTICE_PREFIX = "Notice: ";
+
+  /**
+   * Start of the reply to a command that was rejected by the client's rate limit.
+   */
+  static final String THROTTLED_PREFIX = "Throttled: ";
+
+  /**
+   * Line that switches a connection to framed mode.
+   */
+  static final String MULTIPLEX_COMMAND = "multiplex";
+
+  private static final Pattern FRAME = Pattern.compile("([1-9]\\d{0,17}) (.*)");
+
+  private static final int LINE_SEPARATOR_LENGTH = System.lineSeparator().length();
+  private static final ByteBuffer LINE_SEPARATOR = ByteBuffer.wrap(
+      System.lineSeparator().getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+  // the connection is socket, channel or both
   private final Socket socket;
+  private final SocketChannel channel;
+  private final String remoteAddress;
+  private final CommandSequencer.Request sequencerRequest = new CommandSequencer.Request();
+  private Session session;
+  // in framed mode, the connection's own session, whose rate limits all its sessions share
+  private final Session connectionSession;
+  private ConnectionReaper.Watch watch;
+  private Command lastCommand;
+  private ByteBuffer encodedReply;
+  private ByteBuffer replyBuffer = ByteBuffer.allocateDirect(0);
 
   public ClientHandler(Socket socket) {
     assert socket != null : "socket should not be null";
     this.socket = socket;
+    this.channel = socket.getChannel();
+    this.remoteAddress = String.valueOf(socket.getRemoteSocketAddress());
+    this.connectionSession = null;
+  }
+
+  /**
+   * Constructor for a connection that has no Socket, such as a Unix domain socket.
+   *
+   * @param channel the connection, in blocking mode
+   * @param remoteAddress description of where the client connected from
+   */
+  ClientHandler(SocketChannel channel, String remoteAddress) {
+    assert channel != null : "channel should not be null";
+    this.socket = null;
+    this.channel = channel;
+    this.remoteAddress = remoteAddress;
+    this.connectionSession = null;
+  }
+
+  /**
+   * Constructor for a session of a connection in framed mode, which handles its commands but
+   * never reads or writes the connection itself.
+   *
+   * @param connection the handler of the connection
+   * @param session the session
+   */
+  private ClientHandler(ClientHandler connection, Session session) {
+    this.socket = connection.socket;
+    this.channel = connection.channel;
+    this.remoteAddress = connection.remoteAddress;
+    this.session = session;
+    this.connectionSession = connection.session;
+    this.watch = connection.watch;
   }
 
   /**
@@ -28,65 +109,420 @@ public class ClientHandler implements Runnable {
   @Override
   public void run() {
     String output;
-    try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+    JfrEvents.ConnectionOpenedEvent openedEvent = new JfrEvents.ConnectionOpenedEvent();
+    if (openedEvent.shouldCommit()) {
+      openedEvent.remoteAddress = remoteAddress;
+      openedEvent.commit();
+    }
+    session = MinesweeperServer.sessions.open(remoteAddress);
+    watch = MinesweeperServer.reaper.watch(socket != null ? socket : channel);
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(socket != null
+            ? socket.getInputStream() : ChannelStreams.input(channel)));
+        PrintWriter out = new PrintWriter(socket != null
+            ? socket.getOutputStream() : ChannelStreams.output(channel), true);
     ) {
-      out.println("Welcome to Minesweeper. Players: " + MinesweeperServer.getNumberOfThreads() +
-          " including you. Board: " + MinesweeperServer.board.getSquaresArray()[0].length +
-          " columns by " + MinesweeperServer.board.getSquaresArray().length + " rows." +
-          " Type 'help' for help.");
+      if (socket != null) {
+        socket.setSendBufferSize(ServerConfig.SEND_BUFFER_BYTES);
+      } else {
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, ServerConfig.SEND_BUFFER_BYTES);
+      }
+      send(out, welcome());
+      session.setNotifier(message -> send(out, message));
       for (String line = in.readLine(); line != null; line = in.readLine()) {
+        watch.activity();
+        if (line.equals(MULTIPLEX_COMMAND)) {
+          // the connection is no player of its own, its sessions are and get the notices
+          session.setNotifier(message -> { });
+          MinesweeperServer.sessions.close(session);
+          send(out, "Multiplexing sessions.");
+          runMultiplexed(in, out);
+          return;
+        }
         output = handleRequest(line);
-        if (output.equals("client left game")) {
-          out.println("Bye now!");
+        if (encodedReply != null) {
+          send(out, encodedReply);
+          encodedReply = null;
+        } else if (output.equals("client left game")) {
+          send(out, "Bye now!");
           return;
         } else if (output.equals("BOOM") && !MinesweeperServer.debug) {
-          out.println("BOOM!!");
+          send(out, "BOOM!!");
           return;
         } else if (output.equals("BOOM") && MinesweeperServer.debug) {
-          out.println("BOOM!!");
+          send(out, "BOOM!!");
         } else {
-          out.println(output);
+          send(out, output);
         }
+        announceIfCleared();
       }
     } catch (IOException e) {
-      e.printStackTrace();
+      if (watch.isReaped()) {
+        System.err.println("Closed idle or slow connection " + remoteAddress);
+      } else {
+        e.printStackTrace();
+      }
       return;
+    } finally {
+      MinesweeperServer.reaper.unwatch(watch);
+      MinesweeperServer.sessions.close(session);
+      JfrEvents.ConnectionClosedEvent closedEvent = new JfrEvents.ConnectionClosedEvent();
+      if (closedEvent.shouldCommit()) {
+        closedEvent.remoteAddress = remoteAddress;
+        closedEvent.commands = session.getCommandCount();
+        closedEvent.commit();
+      }
     }
   }
 
+  /**
+   * @return the message a new player gets first
+   */
+  private static String welcome() {
+    return "Welcome to Minesweeper. Players: " + MinesweeperServer.sessions.getPlayers() +
+        " including you. Board: " + MinesweeperServer.board.getSizeX() +
+        " columns by " + MinesweeperServer.board.getSizeY() + " rows." +
+        " Type 'help' for help.";
+  }
+
+  /**
+   * Tells every player once that the board was cleared by the last command, if it was a dig that
+   * cleared it, and starts a new game if there is a board pool.
+   */
+  private void announceIfCleared() {
+    if (lastCommand == Command.DIG && MinesweeperServer.board.claimClearedAnnouncement()) {
+      MinesweeperServer.sessions.broadcast(NOTICE_PREFIX
+          + "The board is cleared, every square without a bomb is dug.");
+      if (MinesweeperServer.boardPool != null) {
+        Board next = MinesweeperServer.startNewGame();
+        MinesweeperServer.sessions.broadcast(NOTICE_PREFIX + "A new board of "
+            + next.getSizeX() + " columns by " + next.getSizeY() + " rows is ready.");
+      }
+    }
+  }
+
+  /**
+   * Serves a connection in framed mode until the client closes it. Reads ahead up to
+   * ServerConfig.MULTIPLEX_READ_AHEAD frames, without blocking while commands are waiting, and
+   * executes the waiting commands one session at a time in turn. A session's commands are
+   * charged to its own rate limits and to those of the connection, and its messages to its own
+   * bytes written.
+   *
+   * @param in stream from the client
+   * @param out stream to the client
+   * @throws IOException if the connection fails
+   */
+  private void runMultiplexed(BufferedReader in, PrintWriter out) throws IOException {
+    final Map<Long, ClientHandler> lanes = new HashMap<>();
+    final FairQueue<Long, String> commands = new FairQueue<>();
+    try {
+      while (true) {
+        while (commands.isEmpty()
+            || (commands.size() < ServerConfig.MULTIPLEX_READ_AHEAD && in.ready())) {
+          String line = in.readLine();
+          if (line == null) {
+            return;
+          }
+          watch.activity();
+          Matcher frame = FRAME.matcher(line);
+          if (frame.matches()) {
+            commands.add(Long.parseLong(frame.group(1)), frame.group(2));
+          } else {
+            MinesweeperServer.stats.recordInvalidCommand();
+            session.recordInvalidCommand(line.length() + 1);
+            sendFrame(out, session, 0, "Invalid frame.");
+          }
+        }
+        final long id = commands.peekKey();
+        final String command = commands.poll();
+        ClientHandler lane = lanes.get(id);
+        if (lane == null) {
+          if (lanes.size() >= ServerConfig.MULTIPLEX_MAX_SESSIONS) {
+            sendFrame(out, session, id, "Too many sessions on this connection.");
+            continue;
+          }
+          final Session laneSession = MinesweeperServer.sessions.open(remoteAddress + "#" + id);
+          lane = new ClientHandler(this, laneSession);
+          lanes.put(id, lane);
+          laneSession.setNotifier(message -> sendFrame(out, laneSession, id, message));
+          sendFrame(out, laneSession, id, welcome());
+        }
+        // the sessions take turns on this thread, so they can share its reply buffer
+        lane.replyBuffer = replyBuffer;
+        String output = lane.handleRequest(command);
+        replyBuffer = lane.replyBuffer;
+        boolean closed = false;
+        if (lane.encodedReply != null) {
+          send(out, lane.session, id + " " + lane.encodedReply.remaining()
+              + System.lineSeparator(), lane.encodedReply);
+          lane.encodedReply = null;
+        } else if (output.equals("client left game")) {
+          sendFrame(out, lane.session, id, "Bye now!");
+          closed = true;
+        } else if (output.equals("BOOM")) {
+          sendFrame(out, lane.session, id, "BOOM!!");
+          closed = !MinesweeperServer.debug;
+        } else {
+          sendFrame(out, lane.session, id, output);
+        }
+        if (closed) {
+          // a later frame with the same id opens a new session
+          MinesweeperServer.sessions.close(lane.session);
+          lanes.remove(id);
+        }
+        lane.announceIfCleared();
+      }
+    } finally {
+      for (ClientHandler lane : lanes.values()) {
+        MinesweeperServer.sessions.close(lane.session);
+      }
+    }
+  }
+
+  /**
+   * Sends a message of a session in framed mode.
+   *
+   * @param out stream to the client
+   * @param recipient the session whose bytes written the frame is recorded in
+   * @param id the session, or 0 for the connection
+   * @param message message without line terminator
+   */
+  private void sendFrame(PrintWriter out, Session recipient, long id, String message) {
+    send(out, recipient, id + " " + message.length() + System.lineSeparator() + message);
+  }
+
+  /**
+   * Sends a message to the client and records the number of bytes written.
+   * The connection is closed by MinesweeperServer.reaper if the write blocks for longer than
+   * the write timeout. Notices from other threads are sent through this method too, so whole
+   * messages never interleave.
+   *
+   * @param out stream to the client
+   * @param message message without line terminator
+   */
+  private void send(PrintWriter out, String message) {
+    send(out, session, message);
+  }
+
+  /**
+   * Sends a message to the client like send(PrintWriter, String), recording the bytes written in
+   * a given session of the connection.
+   *
+   * @param out stream to the client
+   * @param recipient the session whose bytes written the message is recorded in
+   * @param message message without line terminator
+   */
+  private synchronized void send(PrintWriter out, Session recipient, String message) {
+    watch.writeStarted();
+    try {
+      out.println(message);
+    } finally {
+      watch.writeFinished();
+    }
+    MinesweeperServer.stats.recordBytesWritten(message.length() + LINE_SEPARATOR_LENGTH);
+    recipient.recordBytesWritten(message.length() + LINE_SEPARATOR_LENGTH);
+  }
+
+  /**
+   * Sends an encoded message to the client with a single gathering write of the message and the
+   * line terminator, without copying or encoding the message. Otherwise like send(PrintWriter,
+   * String).
+   *
+   * @param out stream to the client, flushed before the message is written
+   * @param message encoded message without line terminator; its position is advanced
+   * @throws IOException if the message cannot be written
+   */
+  private void send(PrintWriter out, ByteBuffer message) throws IOException {
+    send(out, session, null, message);
+  }
+
+  /**
+   * Sends a text header followed by an encoded message, like send(PrintWriter, ByteBuffer).
+   *
+   * @param out stream to the client, flushed before the message is written
+   * @param recipient the session whose bytes written the message is recorded in
+   * @param header ASCII text written before the message, or null for none
+   * @param message encoded message without line terminator; its position is advanced
+   * @throws IOException if the message cannot be written
+   */
+  private synchronized void send(PrintWriter out, Session recipient, String header,
+      ByteBuffer message) throws IOException {
+    final ByteBuffer separator = LINE_SEPARATOR.duplicate();
+    final ByteBuffer[] buffers = header == null ? new ByteBuffer[] {message, separator}
+        : new ByteBuffer[] {ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)),
+            message, separator};
+    final long bytes = (header == null ? 0 : header.length()) + message.remaining()
+        + LINE_SEPARATOR_LENGTH;
+    watch.writeStarted();
+    try {
+      out.flush();
+      while (separator.hasRemaining()) {
+        channel.write(buffers);
+      }
+    } finally {
+      watch.writeFinished();
+    }
+    MinesweeperServer.stats.recordBytesWritten(bytes);
+    recipient.recordBytesWritten(bytes);
+  }
 
   /**
    * Handler for client commands. Executes them if valid and returns the resulting message.
+   * Records the execution time of every valid command in MinesweeperServer.stats and the
+   * command itself in MinesweeperServer.eventLog, if there is one; dig, flag and deflag are
+   * recorded before the board's lock is released, so they are logged in the board's order.
    *
    * @param input client to server command
    * @return server to client message
    */
   private String handleRequest(String input) {
     assert input != null : "input should not be null";
-    String regex = "(look)|(help)|(bye)|"
-        + "(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|(deflag -?\\d+ -?\\d+)";
+    lastCommand = null;
+    // at most 9 digits, so every operand fits in an int
+    String regex = "(look)|(help)|(bye)|(stats)|(status)|(hint)|"
+        + "(dig -?\\d{1,9} -?\\d{1,9})|(flag -?\\d{1,9} -?\\d{1,9})|"
+        + "(deflag -?\\d{1,9} -?\\d{1,9})|"
+        + "(probabilities -?\\d{1,9} -?\\d{1,9} \\d{1,9} \\d{1,9})";
     if (!input.matches(regex)) {
+      MinesweeperServer.stats.recordInvalidCommand();
+      session.recordInvalidCommand(input.length() + 1);
       return "Invalid command.";
     }
     String[] tokens = input.split(" ");
-    if (tokens[0].equals("look")) {
+    Command command = Command.fromKeyword(tokens[0]);
+    long wait = session.throttle(command);
+    if (wait == 0 && connectionSession != null) {
+      // the sessions of a connection together get no more than a connection of its own
+      wait = connectionSession.throttle(command);
+      if (wait > 0) {
+        // the command is not executed, so it must not use up the session's own allowance
+        session.refund(command);
+      }
+    }
+    if (wait > 0) {
+      MinesweeperServer.stats.recordThrottledCommand();
+      session.recordThrottledCommand(input.length() + 1);
+      return THROTTLED_PREFIX + "too many " + command.keyword() + " commands, retry in "
+          + Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)) + " ms.";
+    }
+    lastCommand = command;
+    JfrEvents.CommandEvent commandEvent = new JfrEvents.CommandEvent();
+    commandEvent.begin();
+    final long start = System.nanoTime();
+    String output = executeCommand(command, tokens);
+    MinesweeperServer.stats.recordCommand(command, System.nanoTime() - start);
+    session.recordCommand(command, input.length() + 1);
+    EventLog eventLog = MinesweeperServer.eventLog;
+    if (eventLog != null && command != Command.DIG && command != Command.FLAG
+        && command != Command.DEFLAG) {
+      int[] operands = new int[command.operands()];
+      for (int i = 0; i < operands.length; i++) {
+        operands[i] = Integer.parseInt(tokens[i + 1]);
+      }
+      eventLog.record(session.getId(), command, operands);
+    }
+    if (commandEvent.shouldCommit()) {
+      commandEvent.command = command.keyword();
+      if (tokens.length == 3) {
+        commandEvent.x = Integer.parseInt(tokens[1]);
+        commandEvent.y = Integer.parseInt(tokens[2]);
+      }
+      commandEvent.commit();
+    }
+    return output;
+  }
+
+  /**
+   * Executes a valid client command.
+   *
+   * @param command the command to execute
+   * @param tokens the tokens of the client message, tokens[0] is the command keyword
+   * @return server to client message
+   */
+  private String executeCommand(Command command, String[] tokens) {
+    if (command == Command.LOOK) {
+      if (channel != null) {
+        // written from the board's shared buffer by run()
+        encodedReply = MinesweeperServer.board.lookBuffer();
+        return "";
+      }
       return MinesweeperServer.board.look();
-    } else if (tokens[0].equals("help")) {
+    } else if (command == Command.HELP) {
       return "Read the manual.";
-    } else if (tokens[0].equals("bye")) {
+    } else if (command == Command.BYE) {
       return "client left game";
+    } else if (command == Command.STATS) {
+      return MinesweeperServer.stats.report();
+    } else if (command == Command.STATUS) {
+      return MinesweeperServer.board.status();
+    } else if (command == Command.HINT) {
+      return MinesweeperServer.board.hint();
+    } else if (command == Command.PROBABILITIES) {
+      return MinesweeperServer.board.probabilities(Integer.parseInt(tokens[1]),
+          Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]));
     } else {
       int x = Integer.parseInt(tokens[1]);
       int y = Integer.parseInt(tokens[2]);
-      if (tokens[0].equals("dig")) {
-        return MinesweeperServer.board.dig(x, y);
-      } else if (tokens[0].equals("flag")) {
-        return MinesweeperServer.board.flag(x, y);
-      } else if (tokens[0].equals("deflag")) {
-        return MinesweeperServer.board.deflag(x, y);
+      EventLog eventLog = MinesweeperServer.eventLog;
+      if (eventLog != null && !isSequenced()) {
+        Board board = MinesweeperServer.board;
+        // recorded before the lock is released, so concurrent moves are logged in board order
+        synchronized (board) {
+          String output = executeMove(board, command, x, y);
+          eventLog.record(session.getId(), command, new int[] {x, y});
+          return output;
+        }
+      }
+      return executeMove(MinesweeperServer.board, command, x, y);
+    }
+  }
+
+  /**
+   * Executes a dig, flag or deflag command.
+   *
+   * @param board the board to execute it on, unless isSequenced()
+   * @param command DIG, FLAG or DEFLAG
+   * @param x x-coordinate of the square
+   * @param y y-coordinate of the square
+   * @return server to client message
+   */
+  private String executeMove(Board board, Command command, int x, int y) {
+    if (channel != null) {
+      // rendered into this connection's reusable buffer and written from it by run()
+      ByteBuffer reply;
+      if (isSequenced()) {
+        reply = MinesweeperServer.sequencer.execute(sequencerRequest, session.getId(), command, x,
+            y, replyBuffer);
+      } else if (command == Command.DIG) {
+        reply = board.dig(x, y, replyBuffer);
+      } else if (command == Command.FLAG) {
+        reply = board.flag(x, y, replyBuffer);
+      } else if (command == Command.DEFLAG) {
+        reply = board.deflag(x, y, replyBuffer);
+      } else {
+        throw new UnsupportedOperationException();
       }
+      if (reply == null) {
+        return "BOOM";
+      }
+      replyBuffer = reply;
+      encodedReply = reply;
+      return "";
+    }
+    if (command == Command.DIG) {
+      return board.dig(x, y);
+    } else if (command == Command.FLAG) {
+      return board.flag(x, y);
+    } else if (command == Command.DEFLAG) {
+      return board.deflag(x, y);
     }
     throw new UnsupportedOperationException();
   }
+
+  /**
+   * @return true if this connection's moves are applied, and logged, by
+   * MinesweeperServer.sequencer; only connections with a channel use it
+   */
+  private boolean isSequenced() {
+    return channel != null && MinesweeperServer.sequencer != null;
+  }
 }
@@ -0,0 +1,66 @@
+package minesweeper.server;
+
+import java.util.Locale;
+
+/**
+ * The commands a Minesweeper client can send to the server.
+ * The ordinal of a command is its opcode in the event log, so new commands go at the end.
+ */
+
+enum Command {
+  LOOK(0, RateClass.EXPENSIVE), HELP(0, RateClass.CHEAP), BYE(0, RateClass.UNLIMITED),
+  DIG(2, RateClass.EXPENSIVE), FLAG(2, RateClass.CHEAP), DEFLAG(2, RateClass.CHEAP),
+  STATS(0, RateClass.CHEAP), STATUS(0, RateClass.CHEAP), HINT(0, RateClass.EXPENSIVE),
+  PROBABILITIES(4, RateClass.EXPENSIVE);
+
+  /**
+   * How a command is rate limited. Every client has a token bucket per limited class.
+   */
+  enum RateClass {
+    /** never limited */
+    UNLIMITED,
+    /** does not hold the board lock for long */
+    CHEAP,
+    /** renders or scans the board */
+    EXPENSIVE
+  }
+
+  private final int operands;
+  private final RateClass rateClass;
+
+  Command(int operands, RateClass rateClass) {
+    this.operands = operands;
+    this.rateClass = rateClass;
+  }
+
+  /**
+   * @return how the command is rate limited
+   */
+  RateClass rateClass() {
+    return rateClass;
+  }
+
+  /**
+   * @return number of integer arguments that follow the keyword
+   */
+  int operands() {
+    return operands;
+  }
+
+  /**
+   * @return the word that starts this command in the protocol
+   */
+  String keyword() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Finds the command for a protocol keyword.
+   *
+   * @param keyword first token of a client message, requires a valid keyword
+   * @return the command named by keyword
+   */
+  static Command fromKeyword(String keyword) {
+    return valueOf(keyword.toUpperCase(Locale.ROOT));
+  }
+}
@@ -0,0 +1,292 @@
+package minesweeper.server;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies the dig, flag and deflag commands of all clients of a board on a single thread, so the
+ * board's lock is never handed over between client threads.
+ *
+ * Client threads publish their commands into a pre-allocated ring buffer whose capacity is a
+ * power of two: a client claims a sequence number with one atomic increment, waits until the
+ * slot of that sequence number is free and stores its request in it. The applier thread takes
+ * the published requests in sequence order and applies all that are available as one batch,
+ * taking the board's lock once per batch. A request is completed as soon as it is applied; its
+ * client spins briefly and then parks, and is only unparked if it did park. The sequence numbers
+ * are the order in which the board sees the commands. If there is an event log, every command is
+ * queued in it right after it is applied, while the board's lock is still held, so the log has
+ * the same order.
+ *
+ * Every client owns a Request that it reuses for all its commands and the reply is rendered into
+ * the client's own buffer, so in steady state a command allocates nothing.
+ */
+
+class CommandSequencer implements Closeable {
+
+  /**
+   * Number of times a waiting thread checks for its condition before it parks; spinning only
+   * helps if the thread it waits for runs on another processor.
+   */
+  private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+
+  private volatile Board board;
+  private final EventLog eventLog;
+  private final AtomicReferenceArray<Request> slots;
+  private final int mask;
+  private final AtomicLong claimed = new AtomicLong();
+  private final AtomicLong consumed = new AtomicLong();
+  private final Thread applier;
+  private volatile boolean applierParked;
+  private volatile boolean closed;
+  private volatile long applied;
+  private volatile long batches;
+
+  // Representation invariant
+  //    board, slots and applier are not null
+  //    slots.length() is a power of two and mask == slots.length() - 1
+  //    consumed <= claimed <= consumed + slots.length() + number of clients waiting for a slot
+  //    the slot of a sequence number below consumed is null until a client claims the sequence
+  //    number slots.length() higher
+
+  // Abstraction function
+  //    Represents the queue of the commands with sequence numbers consumed to claimed - 1,
+  //    where the command with sequence number s is the request in slot s & mask once its client
+  //    has published it, followed by the board the applier thread applies them to.
+
+  // Safety from representation exposure
+  //    All fields are private and never returned. Requests are owned by their clients and only
+  //    touched by the applier between their publication and completion.
+
+  // Thread safety argument
+  //    claimed is only advanced with an atomic increment, so every sequence number is claimed by
+  //    exactly one client. consumed, applied and batches are only written by the applier thread.
+  //    board is volatile and read once per batch. eventLog is final and threadsafe.
+  //    The applier clears a slot before it advances consumed, and a client only stores into a
+  //    slot after it has read consumed past the slot's previous sequence number, so a request is
+  //    never overwritten before it was taken. The fields of a request are written before the
+  //    volatile store that publishes it and read after the volatile store of done, and both the
+  //    client and the applier set their parked flag before checking their condition a last
+  //    time, so no wakeup is lost.
+
+  private void checkRep() {
+    assert board != null : "board should not be null";
+    assert applier != null : "applier should not be null";
+    assert Integer.bitCount(slots.length()) == 1 : "capacity should be a power of two";
+    assert mask == slots.length() - 1 : "mask should select a slot";
+  }
+
+  /**
+   * Creates a sequencer without an event log and starts its applier thread.
+   *
+   * @param board the board the commands are applied to
+   * @param capacity number of commands that may wait to be applied before clients wait for a
+   * free slot, requires > 0; rounded up to a power of two
+   */
+  CommandSequencer(Board board, int capacity) {
+    this(board, capacity, null);
+  }
+
+  /**
+   * Creates a sequencer and starts its applier thread.
+   *
+   * @param board the board the commands are applied to
+   * @param capacity number of commands that may wait to be applied before clients wait for a
+   * free slot, requires > 0; rounded up to a power of two
+   * @param eventLog log every applied command is recorded in, or null
+   */
+  CommandSequencer(Board board, int capacity, EventLog eventLog) {
+    assert capacity > 0 : "capacity should be positive";
+    this.board = board;
+    this.eventLog = eventLog;
+    int slotCount = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    slots = new AtomicReferenceArray<>(slotCount);
+    mask = slotCount - 1;
+    applier = new Thread(this::applyCommands, "board-sequencer");
+    applier.setDaemon(true);
+    applier.start();
+    checkRep();
+  }
+
+  /**
+   * Applies a command to the board on the applier thread and waits until it is applied.
+   *
+   * @param request the calling thread's request; must not be used by another thread at the
+   * same time
+   * @param sessionId id of the session that sent the command, for the event log
+   * @param command DIG, FLAG or DEFLAG
+   * @param x x-coordinate of the square
+   * @param y y-coordinate of the square
+   * @param reply buffer the reply is rendered into, as for Board.dig(int, int, ByteBuffer)
+   * @return the reply, as returned by Board.dig, Board.flag or Board.deflag for the command
+   * @throws IllegalArgumentException if command is not DIG, FLAG or DEFLAG
+   * @throws IllegalStateException if the sequencer is closed
+   * @throws RuntimeException or Error that applying the command to the board threw, rethrown on
+   * the calling thread; the sequencer goes on applying the other commands
+   */
+  ByteBuffer execute(Request request, long sessionId, Command command, int x, int y,
+      ByteBuffer reply) {
+    if (command != Command.DIG && command != Command.FLAG && command != Command.DEFLAG) {
+      throw new IllegalArgumentException(command + " is not sequenced");
+    }
+    if (closed) {
+      throw new IllegalStateException("sequencer is closed");
+    }
+    request.owner = Thread.currentThread();
+    request.sessionId = sessionId;
+    request.command = command;
+    request.x = x;
+    request.y = y;
+    request.reply = reply;
+    request.failure = null;
+    request.done = false;
+    final long sequence = claimed.getAndIncrement();
+    while (sequence - consumed.get() >= slots.length()) {
+      Thread.yield();
+    }
+    slots.set((int) sequence & mask, request);
+    if (applierParked) {
+      LockSupport.unpark(applier);
+    }
+    for (int spins = 0; !request.done; spins++) {
+      if (spins < SPINS) {
+        Thread.onSpinWait();
+      } else {
+        request.parked = true;
+        if (!request.done) {
+          LockSupport.park(this);
+        }
+        request.parked = false;
+      }
+    }
+    if (request.failure instanceof RuntimeException) {
+      throw (RuntimeException) request.failure;
+    } else if (request.failure instanceof Error) {
+      throw (Error) request.failure;
+    } else if (request.failure != null) {
+      throw new IllegalStateException("command failed", request.failure);
+    }
+    return request.reply;
+  }
+
+  /**
+   * Applies the commands of later batches to another board.
+   *
+   * @param board the new board
+   */
+  void setBoard(Board board) {
+    assert board != null : "board should not be null";
+    this.board = board;
+  }
+
+  /**
+   * @return number of commands applied so far
+   */
+  long getApplied() {
+    return applied;
+  }
+
+  /**
+   * @return number of batches the applied commands were applied in
+   */
+  long getBatches() {
+    return batches;
+  }
+
+  /**
+   * Applies the commands that were published and stops the applier thread. Commands must not
+   * be executed while or after the sequencer is closed.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(applier);
+    try {
+      applier.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void applyCommands() {
+    long next = 0;
+    int idle = 0;
+    while (true) {
+      Request request = slots.get((int) next & mask);
+      if (request == null) {
+        if (closed && claimed.get() == next) {
+          return;
+        }
+        if (idle++ < SPINS) {
+          Thread.onSpinWait();
+        } else {
+          applierParked = true;
+          if (slots.get((int) next & mask) == null && !closed) {
+            LockSupport.park(this);
+          }
+          applierParked = false;
+        }
+        continue;
+      }
+      idle = 0;
+      long batchStart = next;
+      final Board board = this.board;
+      synchronized (board) {
+        do {
+          slots.lazySet((int) next & mask, null);
+          next++;
+          consumed.lazySet(next);
+          apply(board, request);
+          request.done = true;
+          if (request.parked) {
+            LockSupport.unpark(request.owner);
+          }
+          request = slots.get((int) next & mask);
+        } while (request != null && next - batchStart < slots.length());
+      }
+      applied += next - batchStart;
+      batches++;
+    }
+  }
+
+  private void apply(Board board, Request request) {
+    try {
+      if (request.command == Command.DIG) {
+        request.reply = board.dig(request.x, request.y, request.reply);
+      } else if (request.command == Command.FLAG) {
+        request.reply = board.flag(request.x, request.y, request.reply);
+      } else {
+        request.reply = board.deflag(request.x, request.y, request.reply);
+      }
+      if (eventLog != null) {
+        eventLog.record(request.sessionId, request.command, new int[] {request.x, request.y});
+      }
+    } catch (Throwable e) {
+      // also an Error, e.g. a failed assertion: it belongs to the client, the applier goes on
+      request.failure = e;
+    }
+  }
+
+  /**
+   * A command of one client and, once it is done, its reply. Reused for all commands of the
+   * client.
+   */
+  static final class Request {
+
+    private Thread owner;
+    private long sessionId;
+    private Command command;
+    private int x;
+    private int y;
+    private ByteBuffer reply;
+    private Throwable failure;
+    private volatile boolean done;
+    private volatile boolean parked;
+  }
+}
@@ -0,0 +1,513 @@
+package minesweeper.server;
+
+import static minesweeper.server.Square.SquareStatus.DUG;
+import static minesweeper.server.Square.SquareStatus.FLAGGED;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import minesweeper.server.Square.SquareStatus;
+
+/**
+ * The regions a single dig reveals, precomputed so that a dig reveals a whole region in one step.
+ *
+ * A dig on a square without a bomb digs every square that can be reached from it through
+ * neighboring squares (8-connected) that have no bomb and are not dug. Those squares form a
+ * component; they are labelled with union-find, or with parallel breadth-first fills on large
+ * boards, when the components are built. Every dug square
+ * is a component of its own, and squares with a bomb that are not dug belong to no component.
+ * A component is either revealed, meaning all its squares are dug, or not, so a square is dug if
+ * and only if its component is revealed.
+ *
+ * Components never merge after they are built: a bomb that explodes becomes a dug square, which
+ * the flood fill does not cross, so it just becomes a new revealed component.
+ *
+ * For every component the squares with a neighbor outside the component are kept in a border
+ * list; revealing a component only changes the frontier at those squares and their neighbors.
+ */
+
+class Components {
+
+  /** Kind of a square that has no bomb and is not dug, so that a flood fill reaches it. */
+  private static final byte FILLABLE = 2;
+  /** Number of squares of a breadth-first level that one task expands. */
+  private static final int FILL_CHUNK = 1024;
+
+  private final int sizeX;
+  private final int sizeY;
+  private int[] componentOf;
+  private boolean componentOfShared;
+  private final BitSet revealed;
+  private int[] size;
+  private int[] flags;
+  private int components;
+  private final int[] borderStart;
+  private final int[] borderCells;
+
+  // Representation invariant
+  //    componentOf.length == sizeX * sizeY
+  //    -1 <= componentOf[i] < components
+  //    0 <= size[k], 0 <= flags[k] <= size[k] for every component k
+  //    the border of component k is borderCells[borderStart[k] .. borderStart[k + 1]) for the
+  //    components that existed when they were built; later components have no border list
+  //    if componentOfShared, componentOf is also used by other forks of the same components
+
+  // Abstraction function
+  //    Represents a partition of the squares that have no bomb or are dug into components,
+  //    each revealed (dug) or not, with the number of flagged squares of the unrevealed ones.
+
+  // Safety from representation exposure
+  //    All fields are private; only single values are returned. Forks share componentOf, which
+  //    explode() copies before changing it, and borderStart and borderCells, which never change.
+
+  // Thread safety argument
+  //    Not threadsafe: only used by the Board that built it, while holding the board's lock.
+  //    Components that are forked are never changed afterwards, so forks used by boards under
+  //    different locks only read what they share.
+
+  private void checkRep() {
+    assert componentOf.length == sizeX * sizeY : "componentOf should have a label per square";
+    assert components <= size.length : "more components than sizes";
+  }
+
+  private Components(int sizeX, int sizeY, int[] componentOf, BitSet revealed, int[] size,
+      int[] flags, int components, int[] borderStart, int[] borderCells) {
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    this.componentOf = componentOf;
+    this.revealed = revealed;
+    this.size = size;
+    this.flags = flags;
+    this.components = components;
+    this.borderStart = borderStart;
+    this.borderCells = borderCells;
+    checkRep();
+  }
+
+  /**
+   * Creates components that start as a copy of these and share their per-square labels and
+   * borders until a bomb explodes. Takes time in the number of components; these components
+   * must not be changed afterwards.
+   *
+   * @return the copy
+   */
+  Components fork() {
+    Components fork = new Components(sizeX, sizeY, componentOf, (BitSet) revealed.clone(),
+        size.clone(), flags.clone(), components, borderStart, borderCells);
+    fork.componentOfShared = true;
+    return fork;
+  }
+
+  /**
+   * Labels the components of a board with union-find on the calling thread. Takes
+   * O(sizeX * sizeY) time.
+   *
+   * @param cells the squares of the board
+   * @return the components of the board's current state
+   */
+  static Components build(CellStore cells) {
+    return build(cells, null, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Labels the components of a board. Boards with at least parallelThreshold squares are
+   * labelled by breadth-first fills whose large levels are split across pool; smaller boards by
+   * union-find on the calling thread. Both label the same components.
+   *
+   * @param cells the squares of the board
+   * @param pool pool for the parallel fills, may be null if parallelThreshold is never reached
+   * @param parallelThreshold number of squares from which the board is labelled in parallel
+   * @return the components of the board's current state
+   */
+  static Components build(CellStore cells, ForkJoinPool pool, int parallelThreshold) {
+    final int sizeX = cells.getSizeX();
+    final int sizeY = cells.getSizeY();
+    final int n = sizeX * sizeY;
+    // 0: bomb that is not dug, 1: dug, FILLABLE: can be reached by a flood fill
+    final byte[] kind = new byte[n];
+    final Bitboard fillable = new Bitboard(sizeX, sizeY);
+    final Bitboard flagged = new Bitboard(sizeX, sizeY);
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; ) {
+        // statuses are read a run at a time, which stores that compress runs answer quickly
+        final SquareStatus status = cells.getStatus(x, y);
+        for (final int end = x + cells.statusRun(x, y); x < end; x++) {
+          if (status == DUG) {
+            kind[y * sizeX + x] = 1;
+          } else if (!cells.hasBomb(x, y)) {
+            kind[y * sizeX + x] = FILLABLE;
+            fillable.set(x, y);
+            if (status == FLAGGED) {
+              flagged.set(x, y);
+            }
+          }
+        }
+      }
+    }
+    // every fillable neighbor of a fillable square is in its component, so it is on the border
+    // exactly if a neighbor is not fillable; a dug square is on the border if it has a neighbor
+    final Bitboard fillableBorder = fillable.and(fillable.not().dilate());
+    final boolean dugBorder = n > 1;
+
+    final int[] componentOf = n >= parallelThreshold
+        ? labelByParallelFill(kind, sizeX, sizeY, pool)
+        : labelByUnionFind(kind, sizeX, sizeY);
+    int components = 0;
+    for (int i = 0; i < n; i++) {
+      components = Math.max(components, componentOf[i] + 1);
+    }
+    // dug squares get a component of their own
+    int bombs = 0;
+    final BitSet revealed = new BitSet();
+    for (int i = 0; i < n; i++) {
+      if (kind[i] == 0) {
+        bombs++;
+      } else if (kind[i] == 1) {
+        revealed.set(components);
+        componentOf[i] = components++;
+      }
+    }
+    // room for every bomb to explode into a component of its own
+    final int[] size = new int[components + bombs];
+    final int[] flags = new int[components + bombs];
+    final int[] borderStart = new int[components + 1];
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        int i = y * sizeX + x;
+        int k = componentOf[i];
+        if (k < 0) {
+          continue;
+        }
+        size[k]++;
+        if (flagged.get(x, y)) {
+          flags[k]++;
+        }
+        if (kind[i] == FILLABLE ? fillableBorder.get(x, y) : dugBorder) {
+          borderStart[k + 1]++;
+        }
+      }
+    }
+    for (int k = 0; k < components; k++) {
+      borderStart[k + 1] += borderStart[k];
+    }
+    final int[] borderCells = new int[borderStart[components]];
+    final int[] next = Arrays.copyOf(borderStart, components);
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        int i = y * sizeX + x;
+        int k = componentOf[i];
+        if (k >= 0 && (kind[i] == FILLABLE ? fillableBorder.get(x, y) : dugBorder)) {
+          borderCells[next[k]++] = i;
+        }
+      }
+    }
+    return new Components(sizeX, sizeY, componentOf, revealed, size, flags, components,
+        borderStart, borderCells);
+  }
+
+  /**
+   * Labels the fillable squares with union-find, with path halving and union by rank.
+   *
+   * @return component ids 0, 1, ... for the fillable squares and -1 for the others
+   */
+  private static int[] labelByUnionFind(byte[] kind, int sizeX, int sizeY) {
+    final int n = sizeX * sizeY;
+    final int[] parent = new int[n];
+    for (int i = 0; i < n; i++) {
+      parent[i] = i;
+    }
+    final int[] rank = new int[n];
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        int i = y * sizeX + x;
+        if (kind[i] != FILLABLE) {
+          continue;
+        }
+        // the neighbors before i in row-major order were already visited
+        if (x + 1 < sizeX && kind[i + 1] == FILLABLE) {
+          union(parent, rank, i, i + 1);
+        }
+        if (y + 1 < sizeY) {
+          for (int dx = -1; dx <= 1; dx++) {
+            if (x + dx >= 0 && x + dx < sizeX && kind[i + sizeX + dx] == FILLABLE) {
+              union(parent, rank, i, i + sizeX + dx);
+            }
+          }
+        }
+      }
+    }
+    final int[] componentOf = new int[n];
+    Arrays.fill(componentOf, -1);
+    int components = 0;
+    for (int i = 0; i < n; i++) {
+      if (kind[i] == FILLABLE && find(parent, i) == i) {
+        componentOf[i] = components++;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (kind[i] == FILLABLE) {
+        componentOf[i] = componentOf[find(parent, i)];
+      }
+    }
+    return componentOf;
+  }
+
+  /**
+   * Labels the fillable squares with one breadth-first fill per component. A fill claims a
+   * square by setting its label with compareAndSet, so every square is added to exactly one
+   * level even when the level is expanded by several threads. Levels of more than FILL_CHUNK
+   * squares are split into FILL_CHUNK sized tasks on pool, smaller levels are expanded on the
+   * calling thread, so small components never leave it.
+   *
+   * @return component ids 0, 1, ... for the fillable squares and -1 for the others
+   */
+  private static int[] labelByParallelFill(byte[] kind, int sizeX, int sizeY, ForkJoinPool pool) {
+    final int n = sizeX * sizeY;
+    final AtomicIntegerArray labels = new AtomicIntegerArray(n);
+    for (int i = 0; i < n; i++) {
+      labels.set(i, -1);
+    }
+    int components = 0;
+    for (int seed = 0; seed < n; seed++) {
+      if (kind[seed] != FILLABLE || labels.get(seed) >= 0) {
+        continue;
+      }
+      int component = components++;
+      labels.set(seed, component);
+      int[] level = {seed};
+      while (level.length > 0) {
+        FillTask task = new FillTask(kind, labels, sizeX, sizeY, component, level, 0,
+            level.length);
+        level = level.length > FILL_CHUNK ? pool.invoke(task) : task.compute();
+      }
+    }
+    final int[] componentOf = new int[n];
+    for (int i = 0; i < n; i++) {
+      componentOf[i] = labels.get(i);
+    }
+    return componentOf;
+  }
+
+  /**
+   * Expands a slice of a breadth-first level: claims the unlabelled fillable neighbors of the
+   * squares level[from .. to) and returns them as the slice's part of the next level.
+   */
+  private static final class FillTask extends RecursiveTask<int[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] kind;
+    private final AtomicIntegerArray labels;
+    private final int sizeX;
+    private final int sizeY;
+    private final int component;
+    private final int[] level;
+    private final int from;
+    private final int to;
+
+    private FillTask(byte[] kind, AtomicIntegerArray labels, int sizeX, int sizeY,
+        int component, int[] level, int from, int to) {
+      this.kind = kind;
+      this.labels = labels;
+      this.sizeX = sizeX;
+      this.sizeY = sizeY;
+      this.component = component;
+      this.level = level;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected int[] compute() {
+      if (to - from > FILL_CHUNK) {
+        int middle = (from + to) >>> 1;
+        FillTask left = new FillTask(kind, labels, sizeX, sizeY, component, level, from,
+            middle);
+        left.fork();
+        int[] right = new FillTask(kind, labels, sizeX, sizeY, component, level, middle, to)
+            .compute();
+        int[] claimed = left.join();
+        int[] next = Arrays.copyOf(claimed, claimed.length + right.length);
+        System.arraycopy(right, 0, next, claimed.length, right.length);
+        return next;
+      }
+      int[] next = new int[Math.min(8 * (to - from), 64)];
+      int size = 0;
+      for (int index = from; index < to; index++) {
+        int x = level[index] % sizeX;
+        int y = level[index] / sizeX;
+        for (int dy = -1; dy <= 1; dy++) {
+          for (int dx = -1; dx <= 1; dx++) {
+            int nx = x + dx;
+            int ny = y + dy;
+            if (nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY) {
+              continue;
+            }
+            int neighbor = ny * sizeX + nx;
+            if (kind[neighbor] == FILLABLE && labels.get(neighbor) < 0
+                && labels.compareAndSet(neighbor, -1, component)) {
+              if (size == next.length) {
+                next = Arrays.copyOf(next, 2 * size);
+              }
+              next[size++] = neighbor;
+            }
+          }
+        }
+      }
+      return Arrays.copyOf(next, size);
+    }
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  private static void union(int[] parent, int[] rank, int a, int b) {
+    int rootA = find(parent, a);
+    int rootB = find(parent, b);
+    if (rootA == rootB) {
+      return;
+    }
+    if (rank[rootA] < rank[rootB]) {
+      int swap = rootA;
+      rootA = rootB;
+      rootB = swap;
+    }
+    parent[rootB] = rootA;
+    if (rank[rootA] == rank[rootB]) {
+      rank[rootA]++;
+    }
+  }
+
+  /**
+   * @param cell square y * sizeX + x
+   * @return true if the square is dug
+   */
+  boolean isDug(int cell) {
+    int k = componentOf[cell];
+    return k >= 0 && revealed.get(k);
+  }
+
+  /**
+   * @param cell square y * sizeX + x
+   * @return the component of the square, or -1 for a bomb that is not dug
+   */
+  int componentOf(int cell) {
+    return componentOf[cell];
+  }
+
+  /**
+   * @param component a component
+   * @return number of squares in the component
+   */
+  int size(int component) {
+    return size[component];
+  }
+
+  /**
+   * @param component a component
+   * @return number of flagged squares in the component if it is not revealed, otherwise 0
+   */
+  int flags(int component) {
+    return flags[component];
+  }
+
+  /**
+   * Records that a square of an unrevealed component was flagged or deflagged.
+   *
+   * @param cell a square that is not dug
+   * @param delta 1 if the square was flagged, -1 if it was deflagged
+   */
+  void flagChanged(int cell, int delta) {
+    int k = componentOf[cell];
+    if (k >= 0) {
+      flags[k] += delta;
+    }
+  }
+
+  /**
+   * Digs every square of a component.
+   *
+   * @param component a component that is not revealed
+   */
+  void reveal(int component) {
+    assert !revealed.get(component) : "component is already revealed";
+    revealed.set(component);
+    flags[component] = 0;
+  }
+
+  /**
+   * Makes an exploded bomb a revealed component of its own.
+   *
+   * @param cell a square that had a bomb and is now dug
+   */
+  void explode(int cell) {
+    if (componentOf[cell] >= 0) {
+      return;
+    }
+    if (components == size.length) {
+      size = Arrays.copyOf(size, 2 * size.length + 1);
+      flags = Arrays.copyOf(flags, size.length);
+    }
+    if (componentOfShared) {
+      componentOf = componentOf.clone();
+      componentOfShared = false;
+    }
+    size[components] = 1;
+    revealed.set(components);
+    componentOf[cell] = components++;
+  }
+
+  /**
+   * @param component a component
+   * @return index of the component's first border square in border(), its last is
+   * borderEnd(component) - 1
+   */
+  int borderStart(int component) {
+    return component < borderStart.length - 1 ? borderStart[component] : 0;
+  }
+
+  /**
+   * @param component a component
+   * @return index after the component's last border square
+   */
+  int borderEnd(int component) {
+    return component < borderStart.length - 1 ? borderStart[component + 1] : 0;
+  }
+
+  /**
+   * @param index between borderStart(k) and borderEnd(k) of a component k
+   * @return a border square of k, y * sizeX + x
+   */
+  int border(int index) {
+    return borderCells[index];
+  }
+
+  /**
+   * Writes the dug state of revealed components back into the squares.
+   *
+   * @param cells the squares these components were built from
+   */
+  void materialize(CellStore cells) {
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; ) {
+        final int end = x + cells.statusRun(x, y);
+        if (cells.getStatus(x, y) == DUG) {
+          x = end;
+          continue;
+        }
+        for (; x < end; x++) {
+          if (isDug(y * sizeX + x)) {
+            cells.setStatus(x, y, DUG);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package minesweeper.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closes client connections that have been idle for too long or whose reply has been blocked
+ * in a write for too long, so a client that stops reading or abandons its connection cannot
+ * hold a server thread forever.
+ *
+ * Closing the socket makes the blocked read or write of the client's thread fail, after which
+ * the thread cleans up and returns to the pool.
+ */
+
+class ConnectionReaper {
+
+  private final long idleTimeoutNanos;
+  private final long writeTimeoutNanos;
+  private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+  private final LongAdder idleDisconnects = new LongAdder();
+  private final LongAdder slowClientDisconnects = new LongAdder();
+  private ScheduledExecutorService scheduler;
+
+  // Representation invariant
+  //    idleTimeoutNanos >= 0, writeTimeoutNanos > 0
+  //    watches is not null.
+
+  // Abstraction function
+  //    Represents the set of watched connections, which are closed after being idle for
+  //    idleTimeoutNanos (if > 0) or after blocking in a write for writeTimeoutNanos.
+
+  // Safety from representation exposure
+  //    All fields are private. Watch objects are handed to clients but only expose operations
+  //    that record activity of their own connection.
+
+  // Thread safety argument
+  //    watches is a concurrent set and the counters are threadsafe.
+  //    The timestamps of a Watch are volatile: written by the connection's thread and read by
+  //    the scheduler thread.
+  //    scheduler is only accessed in synchronized methods.
+
+  private void checkRep() {
+    assert idleTimeoutNanos >= 0 : "idleTimeoutNanos should not be negative";
+    assert writeTimeoutNanos > 0 : "writeTimeoutNanos should be greater than 0";
+    assert watches != null : "watches should not be null";
+  }
+
+  /**
+   * Constructor
+   *
+   * @param idleTimeoutNanos maximum time without client activity, 0 means no limit
+   * @param writeTimeoutNanos maximum time a single write may block, requires > 0
+   */
+  ConnectionReaper(long idleTimeoutNanos, long writeTimeoutNanos) {
+    this.idleTimeoutNanos = idleTimeoutNanos;
+    this.writeTimeoutNanos = writeTimeoutNanos;
+    checkRep();
+  }
+
+  /**
+   * Starts watching a connection. Starts the scanning thread on first use.
+   *
+   * @param connection closed when the connection times out
+   * @return the watch through which the connection reports its activity
+   */
+  Watch watch(Closeable connection) {
+    Watch watch = new Watch(connection);
+    watches.add(watch);
+    startScanning();
+    return watch;
+  }
+
+  /**
+   * Stops watching a connection.
+   *
+   * @param watch a watch returned by watch()
+   */
+  void unwatch(Watch watch) {
+    watches.remove(watch);
+  }
+
+  private synchronized void startScanning() {
+    if (scheduler != null) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "connection-reaper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long smallestTimeout = idleTimeoutNanos > 0 ? Math.min(idleTimeoutNanos, writeTimeoutNanos)
+        : writeTimeoutNanos;
+    long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), smallestTimeout / 4);
+    scheduler.scheduleAtFixedRate(this::scan, period, period, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Closes every watched connection that has timed out.
+   */
+  void scan() {
+    long now = System.nanoTime();
+    for (Watch watch : watches) {
+      long writeStarted = watch.writeStartedNanos;
+      if (writeStarted != 0 && now - writeStarted > writeTimeoutNanos) {
+        if (watch.reap()) {
+          slowClientDisconnects.increment();
+        }
+      } else if (writeStarted == 0 && idleTimeoutNanos > 0
+          && now - watch.lastActivityNanos > idleTimeoutNanos) {
+        if (watch.reap()) {
+          idleDisconnects.increment();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return number of connections closed because the client was idle
+   */
+  long getIdleDisconnects() {
+    return idleDisconnects.sum();
+  }
+
+  /**
+   * @return number of connections closed because a write blocked for too long
+   */
+  long getSlowClientDisconnects() {
+    return slowClientDisconnects.sum();
+  }
+
+  /**
+   * The activity of a single watched connection.
+   */
+  final class Watch {
+
+    private final Closeable connection;
+    private volatile long lastActivityNanos = System.nanoTime();
+    private volatile long writeStartedNanos;
+    private volatile boolean reaped;
+
+    private Watch(Closeable connection) {
+      this.connection = connection;
+    }
+
+    /**
+     * Records that the client sent something.
+     */
+    void activity() {
+      lastActivityNanos = System.nanoTime();
+    }
+
+    /**
+     * Records that the connection's thread is about to write to the client.
+     */
+    void writeStarted() {
+      // 0 means "not writing", so never store it as a start time
+      writeStartedNanos = System.nanoTime() | 1;
+    }
+
+    /**
+     * Records that the write to the client completed.
+     */
+    void writeFinished() {
+      writeStartedNanos = 0;
+      lastActivityNanos = System.nanoTime();
+    }
+
+    /**
+     * @return true if the connection was closed by the reaper
+     */
+    boolean isReaped() {
+      return reaped;
+    }
+
+    /**
+     * Closes the connection unless it is no longer watched.
+     *
+     * @return true if this call closed the connection
+     */
+    private boolean reap() {
+      if (!watches.remove(this)) {
+        return false;
+      }
+      reaped = true;
+      try {
+        connection.close();
+      } catch (IOException e) {
+        // the connection is unusable either way
+      }
+      return true;
+    }
+  }
+}
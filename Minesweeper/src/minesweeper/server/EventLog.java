@@ -0,0 +1,434 @@
+package minesweeper.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An append-only binary log of the commands handled by the server, for replaying games and
+ * analysing play.
+ *
+ * File format, all integers are unsigned LEB128 varints unless noted:
+ *   header: the bytes "MSEL", version byte 1, start time in milliseconds since the epoch, sizeX,
+ *     sizeY and the bomb layout of the board when the log was opened, ceil(sizeX * sizeY / 8)
+ *     bytes with bit i % 8 of byte i / 8 set if square i = y * sizeX + x has a bomb;
+ *   record: microseconds since the previous record (since the start time for the first), session
+ *     id, opcode byte (the ordinal of the Command) and Command.operands() zigzag encoded varints;
+ *   gap: a record with session id 0, opcode byte 255 and no operands, written where moves are
+ *     missing from the log.
+ *
+ * Client threads only put an event in a bounded queue; a single daemon thread encodes the events
+ * and writes them through a buffer, flushing whenever the queue runs empty. Dig, flag and deflag
+ * are queued while their board's lock is still held, so they are logged in the order the board
+ * applied them and replaying the log reproduces the game. A move waits up to MOVE_WAIT_MILLIS for
+ * room in the queue; if there is still none, it is dropped and a gap is written before the next
+ * event, so a replay stops there instead of playing a different game. Other commands are queued
+ * after they were handled and dropped without a gap if the queue is full. The log is only opened
+ * on a board without dug or flagged squares, since the header does not store square statuses.
+ */
+
+class EventLog implements Closeable {
+
+  private static final byte[] MAGIC = {'M', 'S', 'E', 'L'};
+  private static final int VERSION = 1;
+  private static final int GAP_OPCODE = 255;
+  private static final long MOVE_WAIT_MILLIS = 100;
+  private static final Event CLOSE = new Event(0, 0, null, null);
+
+  private final BlockingQueue<Event> queue;
+  private final OutputStream out;
+  private final Thread writer;
+  private final LongAdder dropped = new LongAdder();
+  private final AtomicBoolean gapPending = new AtomicBoolean();
+  private long lastNanos;
+  private volatile boolean closed;
+
+  // Representation invariant
+  //    queue, out and writer are not null.
+
+  // Abstraction function
+  //    Represents the log file: its header followed by the records written so far, and the
+  //    events in queue that are still to be written.
+
+  // Safety from representation exposure
+  //    All fields are private and never returned.
+
+  // Thread safety argument
+  //    queue is a threadsafe blocking queue, dropped a threadsafe counter, gapPending atomic and
+  //    closed volatile. Only moves and close() queue gaps, and moves are recorded under their
+  //    board's lock, so no move is queued between a dropped move and the gap that replaces it.
+  //    out and lastNanos are confined to the writer thread after the constructor returns.
+
+  private void checkRep() {
+    assert queue != null : "queue should not be null";
+    assert out != null : "out should not be null";
+    assert writer != null : "writer should not be null";
+  }
+
+  /**
+   * Creates a new log file and starts its writer thread.
+   *
+   * @param path file to create, requires that it does not exist
+   * @param board the board whose layout is stored in the header
+   * @param queueCapacity maximum number of events waiting to be written, requires > 0
+   * @throws IOException if the file exists or cannot be written
+   * @throws IllegalArgumentException if the board has dug or flagged squares
+   */
+  EventLog(Path path, Board board, int queueCapacity) throws IOException {
+    this(create(path, board), board, queueCapacity);
+  }
+
+  private static OutputStream create(Path path, Board board) throws IOException {
+    requireFresh(board);
+    return Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Creates a log that writes to a stream and starts its writer thread.
+   *
+   * @param stream where the log is written, closed by close()
+   * @param board the board whose layout is stored in the header
+   * @param queueCapacity maximum number of events waiting to be written, requires > 0
+   * @throws IOException if the stream cannot be written
+   * @throws IllegalArgumentException if the board has dug or flagged squares
+   */
+  EventLog(OutputStream stream, Board board, int queueCapacity) throws IOException {
+    queue = new ArrayBlockingQueue<>(queueCapacity);
+    out = new BufferedOutputStream(stream, 64 * 1024);
+    synchronized (board) {
+      requireFresh(board);
+      lastNanos = System.nanoTime();
+      writeHeader(board, System.currentTimeMillis());
+      out.flush();
+    }
+    writer = new Thread(this::writeEvents, "event-log");
+    writer.setDaemon(true);
+    writer.start();
+    checkRep();
+  }
+
+  private static void requireFresh(Board board) {
+    if (!board.isFresh()) {
+      throw new IllegalArgumentException("the board already has dug or flagged squares");
+    }
+  }
+
+  private void writeHeader(Board board, long startMillis) throws IOException {
+    out.write(MAGIC);
+    out.write(VERSION);
+    writeVarint(out, startMillis);
+    writeVarint(out, board.getSizeX());
+    writeVarint(out, board.getSizeY());
+    int squares = board.getSizeX() * board.getSizeY();
+    byte[] layout = new byte[(squares + 7) / 8];
+    byte[] bits = board.getBombLayout().toByteArray();
+    System.arraycopy(bits, 0, layout, 0, bits.length);
+    out.write(layout);
+  }
+
+  /**
+   * Queues a command for writing. A dig, flag or deflag waits up to MOVE_WAIT_MILLIS for room in
+   * the queue and must be recorded while its board's lock is held; if it is dropped, a gap is
+   * written in its place. Other commands never wait and are dropped if the queue is full.
+   *
+   * @param sessionId id of the session that sent the command
+   * @param command the command
+   * @param operands the command's integer arguments, command.operands() of them
+   */
+  void record(long sessionId, Command command, int[] operands) {
+    assert operands.length == command.operands() : "wrong number of operands";
+    boolean move = command == Command.DIG || command == Command.FLAG
+        || command == Command.DEFLAG;
+    Event event = new Event(System.nanoTime(), sessionId, command, operands);
+    if (closed || move && !queueGap(MOVE_WAIT_MILLIS)
+        || !offer(event, move ? MOVE_WAIT_MILLIS : 0)) {
+      dropped.increment();
+      if (move) {
+        gapPending.set(true);
+      }
+    }
+  }
+
+  /**
+   * Queues the gap marking dropped moves, if there is one.
+   *
+   * @param waitMillis how long to wait for room in the queue
+   * @return false if a gap is pending and could not be queued
+   */
+  private boolean queueGap(long waitMillis) {
+    if (!gapPending.getAndSet(false)) {
+      return true;
+    }
+    if (offer(new Event(System.nanoTime(), 0, null, new int[0]), waitMillis)) {
+      return true;
+    }
+    gapPending.set(true);
+    return false;
+  }
+
+  private boolean offer(Event event, long waitMillis) {
+    try {
+      return waitMillis == 0 ? queue.offer(event)
+          : queue.offer(event, waitMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * @return number of events that were not logged because the queue was full or the log closed
+   */
+  long getDroppedEvents() {
+    return dropped.sum();
+  }
+
+  /**
+   * Writes the queued events and closes the file. Events recorded afterwards are dropped.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (queueGap(TimeUnit.SECONDS.toMillis(10)) && queue.offer(CLOSE, 10, TimeUnit.SECONDS)) {
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeEvents() {
+    try {
+      while (true) {
+        Event event = queue.poll();
+        if (event == null) {
+          out.flush();
+          event = queue.take();
+        }
+        if (event == CLOSE) {
+          break;
+        }
+        writeEvent(event);
+      }
+      out.close();
+    } catch (IOException e) {
+      closed = true;
+      e.printStackTrace();
+    } catch (InterruptedException e) {
+      // the server is shutting down
+    }
+  }
+
+  private void writeEvent(Event event) throws IOException {
+    // events of different client threads may be queued slightly out of time order
+    long deltaNanos = Math.max(0, event.nanos - lastNanos);
+    lastNanos = Math.max(lastNanos, event.nanos);
+    writeVarint(out, TimeUnit.NANOSECONDS.toMicros(deltaNanos));
+    writeVarint(out, event.sessionId);
+    out.write(event.command == null ? GAP_OPCODE : event.command.ordinal());
+    for (int operand : event.operands) {
+      writeVarint(out, ((operand << 1) ^ (operand >> 31)) & 0xFFFFFFFFL);
+    }
+  }
+
+  /**
+   * Writes an unsigned LEB128 varint.
+   *
+   * @param out where the varint is written
+   * @param value value to write, interpreted as unsigned
+   * @throws IOException if out cannot be written
+   */
+  static void writeVarint(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  /**
+   * Reads an unsigned LEB128 varint.
+   *
+   * @param in where the varint is read from
+   * @return the value
+   * @throws EOFException if in ends before the varint does
+   * @throws IOException if in cannot be read or the varint is longer than 64 bits
+   */
+  static long readVarint(InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("varint longer than 64 bits");
+  }
+
+  /**
+   * A command waiting to be written, or a gap if command is null.
+   */
+  private static final class Event {
+
+    private final long nanos;
+    private final long sessionId;
+    private final Command command;
+    private final int[] operands;
+
+    private Event(long nanos, long sessionId, Command command, int[] operands) {
+      this.nanos = nanos;
+      this.sessionId = sessionId;
+      this.command = command;
+      this.operands = operands;
+    }
+  }
+
+  /**
+   * Reads a log file record by record.
+   */
+  static final class Reader implements Closeable {
+
+    private final InputStream in;
+    private final long startMillis;
+    private final int sizeX;
+    private final int sizeY;
+    private final BitSet bombs;
+    private final int[] operands = new int[4];
+    private long timeMicros;
+    private long sessionId;
+    private Command command;
+
+    /**
+     * Opens a log file and reads its header.
+     *
+     * @param path the log file
+     * @throws IOException if the file cannot be read or is not an event log
+     */
+    Reader(Path path) throws IOException {
+      in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024);
+      byte[] magic = new byte[MAGIC.length];
+      if (in.readNBytes(magic, 0, magic.length) != magic.length
+          || !Arrays.equals(magic, MAGIC) || in.read() != VERSION) {
+        in.close();
+        throw new IOException(path + " is not a version " + VERSION + " event log");
+      }
+      startMillis = readVarint(in);
+      sizeX = (int) readVarint(in);
+      sizeY = (int) readVarint(in);
+      byte[] layout = new byte[(int) (((long) sizeX * sizeY + 7) / 8)];
+      if (in.readNBytes(layout, 0, layout.length) != layout.length) {
+        throw new EOFException();
+      }
+      bombs = BitSet.valueOf(layout);
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return false if there are no more records
+     * @throws IOException if the file cannot be read or ends inside a record
+     */
+    boolean next() throws IOException {
+      in.mark(1);
+      if (in.read() < 0) {
+        return false;
+      }
+      in.reset();
+      timeMicros += readVarint(in);
+      sessionId = readVarint(in);
+      int opcode = in.read();
+      if (opcode == GAP_OPCODE) {
+        command = null;
+        return true;
+      }
+      if (opcode < 0 || opcode >= Command.values().length) {
+        throw new IOException("invalid opcode " + opcode);
+      }
+      command = Command.values()[opcode];
+      for (int i = 0; i < command.operands(); i++) {
+        long zigzag = readVarint(in);
+        operands[i] = (int) (zigzag >>> 1) ^ -(int) (zigzag & 1);
+      }
+      return true;
+    }
+
+    long getStartMillis() {
+      return startMillis;
+    }
+
+    int getSizeX() {
+      return sizeX;
+    }
+
+    int getSizeY() {
+      return sizeY;
+    }
+
+    /**
+     * @return the bomb layout of the board when the log was opened, indexed by y * sizeX + x
+     */
+    BitSet getBombs() {
+      return (BitSet) bombs.clone();
+    }
+
+    /**
+     * @return microseconds between the start of the log and the current record
+     */
+    long getTimeMicros() {
+      return timeMicros;
+    }
+
+    long getSessionId() {
+      return sessionId;
+    }
+
+    /**
+     * @return the command of the current record, or null if the record is a gap
+     */
+    Command getCommand() {
+      return command;
+    }
+
+    /**
+     * @return true if moves are missing from the log at the current record
+     */
+    boolean isGap() {
+      return command == null;
+    }
+
+    /**
+     * @param i index of the operand, requires 0 <= i < getCommand().operands()
+     * @return the operand of the current record
+     */
+    int getOperand(int i) {
+      return operands[i];
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package minesweeper.server;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Replays an event log written by EventLog against a fresh board with the logged bomb layout.
+ *
+ * The whole log is read into memory first, then every command that reads or changes the board is
+ * executed back to back on a single thread, ignoring the logged timing. Commands that do not touch
+ * the board (help, bye, stats) are skipped. The final board and the throughput are printed. A log
+ * with a gap, where the server dropped moves, is refused, since replaying past it would play a
+ * different game.
+ */
+
+public class EventLogReplay {
+
+  /**
+   * The commands of a log, in log order.
+   */
+  static final class Recording {
+
+    private final int sizeX;
+    private final int sizeY;
+    private final BitSet bombs;
+    private Command[] commands = new Command[1024];
+    private int[] operands = new int[1024 * 4];
+    private int size;
+
+    private Recording(int sizeX, int sizeY, BitSet bombs) {
+      this.sizeX = sizeX;
+      this.sizeY = sizeY;
+      this.bombs = bombs;
+    }
+
+    private void add(EventLog.Reader reader) {
+      if (size == commands.length) {
+        commands = Arrays.copyOf(commands, 2 * size);
+        operands = Arrays.copyOf(operands, 2 * 4 * size);
+      }
+      commands[size] = reader.getCommand();
+      for (int i = 0; i < reader.getCommand().operands(); i++) {
+        operands[4 * size + i] = reader.getOperand(i);
+      }
+      size++;
+    }
+
+    /**
+     * @return number of logged commands
+     */
+    int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Reads a whole log into memory.
+   *
+   * @param reader an open log
+   * @return the board layout and commands of the log
+   * @throws IOException if the log cannot be read or moves are missing from it
+   */
+  static Recording read(EventLog.Reader reader) throws IOException {
+    Recording recording = new Recording(reader.getSizeX(), reader.getSizeY(), reader.getBombs());
+    while (reader.next()) {
+      if (reader.isGap()) {
+        throw new IOException("moves are missing from the log after command "
+            + recording.size() + "; replaying past them would play a different game");
+      }
+      recording.add(reader);
+    }
+    return recording;
+  }
+
+  /**
+   * Executes the board commands of a recording against a fresh board.
+   *
+   * @param recording the commands to replay
+   * @param counts incremented for every executed command
+   * @return the board after the last command
+   */
+  static Board replay(Recording recording, Map<Command, Long> counts) {
+    Board board = Board.createBoard(recording.sizeX, recording.sizeY, recording.bombs);
+    for (int i = 0; i < recording.size; i++) {
+      Command command = recording.commands[i];
+      int[] o = recording.operands;
+      int base = 4 * i;
+      if (command == Command.LOOK) {
+        board.look();
+      } else if (command == Command.DIG) {
+        board.dig(o[base], o[base + 1]);
+      } else if (command == Command.FLAG) {
+        board.flag(o[base], o[base + 1]);
+      } else if (command == Command.DEFLAG) {
+        board.deflag(o[base], o[base + 1]);
+      } else if (command == Command.STATUS) {
+        board.status();
+      } else if (command == Command.HINT) {
+        board.hint();
+      } else if (command == Command.PROBABILITIES) {
+        board.probabilities(o[base], o[base + 1], o[base + 2], o[base + 3]);
+      } else {
+        continue;
+      }
+      counts.merge(command, 1L, Long::sum);
+    }
+    return board;
+  }
+
+  /**
+   * Replays an event log.
+   *
+   * <br> Usage: EventLogReplay [--repeat N] [--quiet] LOG_FILE
+   *
+   * <br> --repeat N replays the log N times, each time against a fresh board, and reports the
+   * throughput of every run, so the later runs show the throughput after JIT warm-up.
+   * <br> --quiet does not print the final board.
+   *
+   * @param args arguments as described
+   */
+  public static void main(String[] args) {
+    int repeat = 1;
+    boolean quiet = false;
+    String file = null;
+    Queue<String> arguments = new LinkedList<>(Arrays.asList(args));
+    try {
+      while (!arguments.isEmpty()) {
+        String flag = arguments.remove();
+        try {
+          if (flag.equals("--repeat")) {
+            repeat = Integer.parseInt(arguments.remove());
+            if (repeat <= 0) {
+              throw new IllegalArgumentException("repeat must be positive");
+            }
+          } else if (flag.equals("--quiet")) {
+            quiet = true;
+          } else if (file == null && !flag.startsWith("--")) {
+            file = flag;
+          } else {
+            throw new IllegalArgumentException("unknown option: \"" + flag + "\"");
+          }
+        } catch (NoSuchElementException nsee) {
+          throw new IllegalArgumentException("missing argument for " + flag);
+        } catch (NumberFormatException nfe) {
+          throw new IllegalArgumentException("unable to parse number for " + flag);
+        }
+      }
+      if (file == null) {
+        throw new IllegalArgumentException("missing LOG_FILE");
+      }
+    } catch (IllegalArgumentException iae) {
+      System.err.println(iae.getMessage());
+      System.err.println("usage: EventLogReplay [--repeat N] [--quiet] LOG_FILE");
+      return;
+    }
+
+    Recording recording;
+    try (EventLog.Reader reader = new EventLog.Reader(Paths.get(file))) {
+      recording = read(reader);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return;
+    }
+    System.out.println("Read " + recording.size() + " commands for a " + recording.sizeX + "x"
+        + recording.sizeY + " board.");
+
+    Board board = null;
+    for (int run = 1; run <= repeat; run++) {
+      Map<Command, Long> counts = new EnumMap<>(Command.class);
+      long start = System.nanoTime();
+      board = replay(recording, counts);
+      long nanos = System.nanoTime() - start;
+      long executed = counts.values().stream().mapToLong(Long::longValue).sum();
+      System.out.println(String.format(Locale.ROOT,
+          "run %d: %d commands in %.1f ms, %.0f commands/s %s", run, executed, nanos / 1e6,
+          executed / Math.max(1e-9, nanos / 1e9), counts));
+    }
+    if (!quiet) {
+      System.out.print(board.look());
+      System.out.println(board.status());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package minesweeper.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import minesweeper.server.Square.SquareStatus;
+
+/**
+ * Writes the squares of an evicted board to a file and reads them back.
+ *
+ * File format: the bytes "MSEV", then big-endian 32-bit integers version (1), sizeX and sizeY,
+ * then a deflate stream of one byte per square y * sizeX + x, encoded as in MappedCellStore: bit 0
+ * set if the square has a bomb, bits 1-2 holding the ordinal of its SquareStatus. Untouched and dug
+ * areas compress to almost nothing, and the bombs to little more than one bit per square.
+ */
+
+final class EvictedCells {
+
+  private static final byte[] MAGIC = {'M', 'S', 'E', 'V'};
+  private static final int VERSION = 1;
+  private static final SquareStatus[] STATUSES = SquareStatus.values();
+
+  private EvictedCells() {
+  }
+
+  /**
+   * Writes the squares of a store to a file, replacing its content.
+   *
+   * @param cells the squares to write
+   * @param path the file
+   * @throws IOException if the file cannot be written
+   */
+  static void write(CellStore cells, Path path) throws IOException {
+    final int sizeX = cells.getSizeX();
+    final int sizeY = cells.getSizeY();
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(path), 64 * 1024))) {
+      out.write(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(sizeX);
+      out.writeInt(sizeY);
+      OutputStream squares = new DeflaterOutputStream(out, deflater, 64 * 1024);
+      byte[] row = new byte[sizeX];
+      for (int y = 0; y < sizeY; y++) {
+        for (int x = 0; x < sizeX; ) {
+          final int status = cells.getStatus(x, y).ordinal() << 1;
+          for (final int end = x + cells.statusRun(x, y); x < end; x++) {
+            row[x] = (byte) (status | (cells.hasBomb(x, y) ? 1 : 0));
+          }
+        }
+        squares.write(row);
+      }
+      squares.close();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Reads the squares of a file written by write() into a store.
+   *
+   * @param path the file
+   * @param cells store of the size of the written squares, every square untouched and without a
+   * bomb; receives the squares
+   * @throws IOException if the file cannot be read, is not an evicted board or has another size
+   */
+  static void read(Path path, CellStore cells) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(path), 64 * 1024))) {
+      byte[] magic = new byte[MAGIC.length];
+      if (in.readNBytes(magic, 0, magic.length) != magic.length || magic[0] != MAGIC[0]
+          || magic[1] != MAGIC[1] || magic[2] != MAGIC[2] || magic[3] != MAGIC[3]
+          || in.readInt() != VERSION) {
+        throw new IOException(path + " is not a version " + VERSION + " evicted board");
+      }
+      final int sizeX = in.readInt();
+      final int sizeY = in.readInt();
+      if (sizeX != cells.getSizeX() || sizeY != cells.getSizeY()) {
+        throw new IOException(path + " holds a board of another size");
+      }
+      try (InputStream squares = new InflaterInputStream(in)) {
+        byte[] row = new byte[sizeX];
+        for (int y = 0; y < sizeY; y++) {
+          if (squares.readNBytes(row, 0, sizeX) != sizeX) {
+            throw new EOFException(path + " ends in row " + y);
+          }
+          for (int x = 0; x < sizeX; x++) {
+            int status = row[x] >>> 1 & 3;
+            if (status >= STATUSES.length) {
+              throw new IOException(path + " has an invalid square at " + x + "," + y);
+            }
+            if ((row[x] & 1) != 0) {
+              cells.setBomb(x, y, true);
+            }
+            if (STATUSES[status] != SquareStatus.UNTOUCHED) {
+              cells.setStatus(x, y, STATUSES[status]);
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package minesweeper.server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A mutable queue of items of several keys, for instance the commands of several sessions, that
+ * hands out one item per key in turn, so that a key with many items cannot delay the items of
+ * the others for long. Items of the same key come out in the order they were added.
+ *
+ * Not threadsafe; every queue is used by a single thread.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the items
+ */
+
+class FairQueue<K, V> {
+
+  private final Map<K, Queue<V>> items = new HashMap<>();
+  private final Queue<K> turns = new ArrayDeque<>();
+  private int size;
+
+  // Representation invariant
+  //    the keys of items are exactly the elements of turns, each once
+  //    no queue of items is empty
+  //    size == sum of the sizes of the queues of items
+
+  // Abstraction function
+  //    Represents, for every key of turns, the items of its queue in order, where the key at the
+  //    head of turns has the next turn.
+
+  // Safety from representation exposure
+  //    All fields are private; only single items and keys are returned.
+
+  // Thread safety argument
+  //    Not threadsafe: confined to the thread that created it.
+
+  private void checkRep() {
+    assert items.size() == turns.size() : "every key with items should have a turn";
+    assert size >= items.size() : "every key should have an item";
+  }
+
+  /**
+   * Adds an item to the end of the items of its key; a key without items gets the last turn.
+   *
+   * @param key the key of the item, not null
+   * @param item the item
+   */
+  void add(K key, V item) {
+    Queue<V> queue = items.get(key);
+    if (queue == null) {
+      queue = new ArrayDeque<>();
+      items.put(key, queue);
+      turns.add(key);
+    }
+    queue.add(item);
+    size++;
+    checkRep();
+  }
+
+  /**
+   * @return the key whose item poll() returns next, or null if the queue is empty
+   */
+  K peekKey() {
+    return turns.peek();
+  }
+
+  /**
+   * Removes the first item of the key whose turn it is; the key gets the last turn if it has
+   * more items.
+   *
+   * @return the item, or null if the queue is empty
+   */
+  V poll() {
+    K key = turns.poll();
+    if (key == null) {
+      return null;
+    }
+    Queue<V> queue = items.get(key);
+    V item = queue.poll();
+    if (queue.isEmpty()) {
+      items.remove(key);
+    } else {
+      turns.add(key);
+    }
+    size--;
+    checkRep();
+    return item;
+  }
+
+  /**
+   * @return number of items of all keys
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return true if there are no items
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+}
@@ -0,0 +1,100 @@
+package minesweeper.server;
+
+import minesweeper.server.Square.SquareStatus;
+
+/**
+ * A CellStore that keeps a Square object per square on the heap.
+ */
+
+class HeapCellStore implements CellStore {
+
+  private final Square[][] squares;
+
+  // Representation invariant
+  //    squares is a non-empty rectangular array of non-null Squares, squares[y][x].
+
+  // Abstraction function
+  //    Represents the bombs and statuses of the squares of squares.
+
+  // Safety from representation exposure
+  //    getSquares() returns squares itself; it is only used by Board, its unit tests and
+  //    benchmarks, which change squares through it on purpose.
+
+  // Thread safety argument
+  //    Not threadsafe: only accessed while holding the lock of the board that owns it.
+
+  private void checkRep() {
+    assert squares.length > 0 && squares[0].length > 0 : "squares should not be empty";
+  }
+
+  /**
+   * Constructor; every square is untouched and has no bomb.
+   *
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   */
+  HeapCellStore(int sizeX, int sizeY) {
+    squares = new Square[sizeY][sizeX];
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        squares[y][x] = new Square();
+      }
+    }
+    checkRep();
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param squares the squares to store, squares[y][x], requires a non-empty rectangular array
+   */
+  HeapCellStore(Square[][] squares) {
+    this.squares = squares;
+    checkRep();
+  }
+
+  /**
+   * @return the squares of this store, squares[y][x]
+   */
+  Square[][] getSquares() {
+    return squares;
+  }
+
+  @Override
+  public int getSizeX() {
+    return squares[0].length;
+  }
+
+  @Override
+  public int getSizeY() {
+    return squares.length;
+  }
+
+  @Override
+  public boolean hasBomb(int x, int y) {
+    return squares[y][x].hasBomb();
+  }
+
+  @Override
+  public void setBomb(int x, int y, boolean bomb) {
+    if (bomb) {
+      squares[y][x].placeBomb();
+    } else {
+      squares[y][x].removeBomb();
+    }
+  }
+
+  @Override
+  public SquareStatus getStatus(int x, int y) {
+    return squares[y][x].getSquareStatus();
+  }
+
+  @Override
+  public void setStatus(int x, int y, SquareStatus status) {
+    squares[y][x].setSquareStatus(status);
+  }
+
+  @Override
+  public void flush() {
+  }
+}
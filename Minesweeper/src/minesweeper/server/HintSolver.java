@@ -0,0 +1,242 @@
+package minesweeper.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Deduces squares that are provably safe or provably mined from the numbers of dug squares.
+ *
+ * The solver works on a snapshot of the frontier taken under the board's lock, see
+ * Board.hint(), and never touches the board itself, so solving does not block other players.
+ * Flags are ignored: they are guesses of the players, not facts.
+ *
+ * Two rules are applied until neither deduces anything new:
+ *   single square: a constraint whose mines are all known makes its other squares safe, and a
+ *     constraint with as many mines as unknown squares makes them all mines;
+ *   subset: if the unknown squares of A are a subset of those of B, then B minus A holds
+ *     B.mines - A.mines mines, to which the single square rule is applied.
+ */
+
+final class HintSolver {
+
+  private HintSolver() {
+  }
+
+  /**
+   * Solves a frontier snapshot.
+   *
+   * @param constraints one constraint per dug square that has a square next to it that is not dug
+   * @param sizeX width of the board, squares are numbered y * sizeX + x
+   * @return the squares the constraints prove to be safe or mined
+   */
+  static Hint solve(List<Constraint> constraints, int sizeX) {
+    Map<Integer, Boolean> known = new HashMap<>();
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      List<Constraint> reduced = new ArrayList<>(constraints.size());
+      for (Constraint constraint : constraints) {
+        Constraint r = constraint.reduce(known);
+        if (r.cells.length > 0) {
+          reduced.add(r);
+        }
+      }
+      for (Constraint constraint : reduced) {
+        changed |= applySingleRule(constraint.cells, constraint.mines, known);
+      }
+      if (changed) {
+        continue;
+      }
+      Map<Integer, List<Constraint>> byCell = new HashMap<>();
+      for (Constraint constraint : reduced) {
+        for (int cell : constraint.cells) {
+          byCell.computeIfAbsent(cell, c -> new ArrayList<>()).add(constraint);
+        }
+      }
+      for (Constraint a : reduced) {
+        for (Constraint b : byCell.get(a.cells[0])) {
+          if (a != b && a.cells.length < b.cells.length && b.containsAll(a)) {
+            changed |= applySingleRule(b.minus(a), b.mines - a.mines, known);
+          }
+        }
+      }
+    }
+    TreeSet<Integer> safe = new TreeSet<>();
+    TreeSet<Integer> mines = new TreeSet<>();
+    for (Map.Entry<Integer, Boolean> entry : known.entrySet()) {
+      (entry.getValue() ? mines : safe).add(entry.getKey());
+    }
+    return new Hint(safe, mines, sizeX);
+  }
+
+  /**
+   * Marks the cells as safe if they hold no mine, or as mines if every cell holds one.
+   *
+   * @param cells unknown cells
+   * @param mines number of mines among cells
+   * @param known known cells, updated
+   * @return true if a cell became known
+   */
+  private static boolean applySingleRule(int[] cells, int mines, Map<Integer, Boolean> known) {
+    if (cells.length == 0 || (mines != 0 && mines != cells.length)) {
+      return false;
+    }
+    boolean changed = false;
+    for (int cell : cells) {
+      changed |= known.putIfAbsent(cell, mines != 0) == null;
+    }
+    return changed;
+  }
+
+  /**
+   * An immutable constraint: exactly mines of the cells hold a mine.
+   */
+  static final class Constraint {
+
+    private final int mines;
+    private final int[] cells;
+
+    // Representation invariant
+    //    0 <= mines <= cells.length, cells is sorted and has no duplicates.
+
+    // Safety from representation exposure
+    //    cells is a private copy; only copies of it are returned.
+
+    private void checkRep() {
+      assert mines >= 0 && mines <= cells.length : "mines should be between 0 and cells.length";
+    }
+
+    /**
+     * Constructor
+     *
+     * @param mines number of mines among cells
+     * @param cells distinct cells, numbered y * sizeX + x
+     */
+    Constraint(int mines, int[] cells) {
+      this.mines = mines;
+      this.cells = cells.clone();
+      Arrays.sort(this.cells);
+      checkRep();
+    }
+
+    /**
+     * @return number of mines among the cells
+     */
+    int getMines() {
+      return mines;
+    }
+
+    /**
+     * @return the cells in ascending order, numbered y * sizeX + x
+     */
+    int[] getCells() {
+      return cells.clone();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Constraint)) {
+        return false;
+      }
+      Constraint that = (Constraint) other;
+      return mines == that.mines && Arrays.equals(cells, that.cells);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * mines + Arrays.hashCode(cells);
+    }
+
+    private Constraint reduce(Map<Integer, Boolean> known) {
+      int unknown = 0;
+      int knownMines = 0;
+      for (int cell : cells) {
+        Boolean mine = known.get(cell);
+        if (mine == null) {
+          unknown++;
+        } else if (mine) {
+          knownMines++;
+        }
+      }
+      if (unknown == cells.length) {
+        return this;
+      }
+      int[] rest = new int[unknown];
+      int i = 0;
+      for (int cell : cells) {
+        if (!known.containsKey(cell)) {
+          rest[i++] = cell;
+        }
+      }
+      return new Constraint(mines - knownMines, rest);
+    }
+
+    private boolean containsAll(Constraint other) {
+      for (int cell : other.cells) {
+        if (Arrays.binarySearch(cells, cell) < 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int[] minus(Constraint other) {
+      return Arrays.stream(cells).filter(cell -> Arrays.binarySearch(other.cells, cell) < 0)
+          .toArray();
+    }
+  }
+
+  /**
+   * The immutable result of solving a frontier.
+   */
+  static final class Hint {
+
+    private final List<Integer> safe;
+    private final List<Integer> mines;
+    private final int sizeX;
+
+    private Hint(TreeSet<Integer> safe, TreeSet<Integer> mines, int sizeX) {
+      this.safe = Collections.unmodifiableList(new ArrayList<>(safe));
+      this.mines = Collections.unmodifiableList(new ArrayList<>(mines));
+      this.sizeX = sizeX;
+    }
+
+    /**
+     * @return provably safe cells in ascending order, numbered y * sizeX + x
+     */
+    List<Integer> getSafe() {
+      return safe;
+    }
+
+    /**
+     * @return provably mined cells in ascending order, numbered y * sizeX + x
+     */
+    List<Integer> getMines() {
+      return mines;
+    }
+
+    /**
+     * @return "safe=X,Y;X,Y mines=X,Y;X,Y", either list may be empty
+     */
+    @Override
+    public String toString() {
+      return "safe=" + format(safe) + " mines=" + format(mines);
+    }
+
+    private String format(List<Integer> cells) {
+      StringBuilder sb = new StringBuilder();
+      for (int cell : cells) {
+        if (sb.length() > 0) {
+          sb.append(';');
+        }
+        sb.append(cell % sizeX).append(',').append(cell / sizeX);
+      }
+      return sb.toString();
+    }
+  }
+}
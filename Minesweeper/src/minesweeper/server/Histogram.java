@@ -0,0 +1,145 @@
+package minesweeper.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A threadsafe, lock-free histogram of non-negative long values, e.g. latencies in nanoseconds
+ * or flood fill sizes in squares.
+ *
+ * Values are recorded into log-linear buckets: every power of two is split into 16 linear
+ * sub-buckets, so a reported percentile is never more than 1/16th above the recorded value.
+ */
+
+public class Histogram implements HistogramMBean {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int NUMBER_OF_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  // Representation invariant
+  //    buckets, count, sum and max are not null.
+  //    every recorded value v >= 0 was counted exactly once in buckets[bucketIndex(v)].
+
+  // Abstraction function
+  //    Represents the multiset of recorded values, with the precision of the bucket boundaries.
+
+  // Safety from representation exposure
+  //    All fields are private and final and are never returned to clients.
+
+  // Thread safety argument
+  //    All fields are threadsafe atomic types and are only updated with atomic increments.
+  //    Reads are not a consistent snapshot across fields, which is acceptable for monitoring.
+
+  /**
+   * Records a value. Negative values are recorded as 0.
+   *
+   * @param value the value to record
+   */
+  void record(long value) {
+    long v = Math.max(0, value);
+    buckets.incrementAndGet(bucketIndex(v));
+    count.increment();
+    sum.add(v);
+    long currentMax = max.get();
+    while (v > currentMax && !max.compareAndSet(currentMax, v)) {
+      currentMax = max.get();
+    }
+  }
+
+  /**
+   * @param value non-negative value
+   * @return index of the bucket that value belongs to
+   */
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  /**
+   * @param index bucket index
+   * @return the largest value that is recorded into the bucket
+   */
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lower + (1L << shift) - 1;
+  }
+
+  /**
+   * Returns the value at the given quantile.
+   *
+   * @param quantile requires 0 <= quantile <= 1
+   * @return the upper bound of the bucket holding the quantile, capped at the maximum recorded
+   * value, or 0 if nothing was recorded
+   */
+  public long getValueAtQuantile(double quantile) {
+    assert quantile >= 0 && quantile <= 1 : "quantile " + quantile + " out of range";
+    long[] snapshot = new long[NUMBER_OF_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  public long getSum() {
+    return sum.sum();
+  }
+
+  @Override
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  @Override
+  public long getMax() {
+    return max.get();
+  }
+
+  @Override
+  public long get50thPercentile() {
+    return getValueAtQuantile(0.5);
+  }
+
+  @Override
+  public long get99thPercentile() {
+    return getValueAtQuantile(0.99);
+  }
+
+  @Override
+  public long get999thPercentile() {
+    return getValueAtQuantile(0.999);
+  }
+}
@@ -0,0 +1,43 @@
+package minesweeper.server;
+
+/**
+ * JMX management interface of a Histogram.
+ */
+
+public interface HistogramMBean {
+
+  /**
+   * @return number of recorded values
+   */
+  long getCount();
+
+  /**
+   * @return sum of all recorded values
+   */
+  long getSum();
+
+  /**
+   * @return mean of all recorded values, or 0 if nothing was recorded
+   */
+  double getMean();
+
+  /**
+   * @return largest recorded value, or 0 if nothing was recorded
+   */
+  long getMax();
+
+  /**
+   * @return median of the recorded values
+   */
+  long get50thPercentile();
+
+  /**
+   * @return 99th percentile of the recorded values
+   */
+  long get99thPercentile();
+
+  /**
+   * @return 99.9th percentile of the recorded values
+   */
+  long get999thPercentile();
+}
@@ -0,0 +1,127 @@
+package minesweeper.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted by the Minesweeper server.
+ *
+ * All events are disabled by default, so a running server only pays for a check of the event
+ * settings. Enable them with the settings file next to this class, e.g.
+ * <pre>
+ *   java -XX:StartFlightRecording:settings=default,settings=minesweeper.jfc,filename=rec.jfr ...
+ * </pre>
+ */
+
+final class JfrEvents {
+
+  private JfrEvents() {
+  }
+
+  /**
+   * Execution of a single client command.
+   */
+  @Name("minesweeper.Command")
+  @Label("Command")
+  @Category("Minesweeper")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class CommandEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("X")
+    @Description("x-coordinate, only set for dig, flag and deflag")
+    int x;
+
+    @Label("Y")
+    @Description("y-coordinate, only set for dig, flag and deflag")
+    int y;
+  }
+
+  /**
+   * Digging of the neighbors of a dug square without bombs.
+   */
+  @Name("minesweeper.FloodFill")
+  @Label("Flood Fill")
+  @Category("Minesweeper")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class FloodFillEvent extends Event {
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Squares")
+    @Description("Number of squares that changed to dug")
+    int squares;
+  }
+
+  /**
+   * Time a thread waited to acquire a board's lock.
+   */
+  @Name("minesweeper.BoardLockWait")
+  @Label("Board Lock Wait")
+  @Category("Minesweeper")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class BoardLockWaitEvent extends Event {
+  }
+
+  /**
+   * Conversion of a board's state to a string.
+   */
+  @Name("minesweeper.Render")
+  @Label("Render")
+  @Category("Minesweeper")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class RenderEvent extends Event {
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+  }
+
+  /**
+   * A client connected to the server.
+   */
+  @Name("minesweeper.ConnectionOpened")
+  @Label("Connection Opened")
+  @Category("Minesweeper")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class ConnectionOpenedEvent extends Event {
+
+    @Label("Remote Address")
+    String remoteAddress;
+  }
+
+  /**
+   * A client connection was closed.
+   */
+  @Name("minesweeper.ConnectionClosed")
+  @Label("Connection Closed")
+  @Category("Minesweeper")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class ConnectionClosedEvent extends Event {
+
+    @Label("Remote Address")
+    String remoteAddress;
+
+    @Label("Commands")
+    @Description("Number of commands handled on the connection")
+    long commands;
+  }
+}
@@ -0,0 +1,482 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for a Minesweeper server.
+ *
+ * Opens a number of concurrent connections and sends a weighted mix of look, dig, flag and
+ * deflag commands at a fixed total rate. Scheduling is open-loop: every command has an intended
+ * send time that does not depend on how fast the server answered the previous one, and latency
+ * is measured from that intended time. A stalled server therefore shows up as high latency
+ * instead of as a lower request rate (no coordinated omission).
+ *
+ * Throughput, latency percentiles and errors are printed for every reporting interval and for the
+ * whole run.
+ */
+
+public class LoadGenerator {
+
+  private static final Pattern WELCOME_PATTERN =
+      Pattern.compile(".*Board: (\\d+) columns by (\\d+) rows.*");
+  private static final String BOOM_MESSAGE = "BOOM!!";
+
+  private final String host;
+  private final int port;
+  private final int connections;
+  private final double rate;
+  private final Map<Command, Integer> mix;
+  private final long durationNanos;
+  private final long intervalNanos;
+  private final long seed;
+
+  private final Histogram[] intervalLatency = {new Histogram(), new Histogram()};
+  private final AtomicIntegerArray intervalWriters = new AtomicIntegerArray(2);
+  private volatile int intervalPhase;
+  private final Histogram totalLatency = new Histogram();
+  private final LongAdder intervalErrors = new LongAdder();
+  private final LongAdder totalErrors = new LongAdder();
+  private final LongAdder booms = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+  private final LongAdder reconnects = new LongAdder();
+
+  // Representation invariant
+  //    host is not null, 0 <= port <= 65535, connections > 0, rate > 0
+  //    mix is not empty, only contains LOOK, DIG, FLAG and DEFLAG, and all weights are > 0
+  //    durationNanos > 0, intervalNanos > 0
+
+  // Abstraction function
+  //    Represents a load test of the server at host:port with the given connections, total rate
+  //    and command mix, running for durationNanos and reporting every intervalNanos.
+
+  // Safety from representation exposure
+  //    All fields are private and final; mix is a private copy.
+
+  // Thread safety argument
+  //    Configuration fields are final and immutable after construction.
+  //    Every connection runs in its own thread and only shares the histograms and counters,
+  //    which are threadsafe. Latencies of the current interval go to
+  //    intervalLatency[intervalPhase]; a connection announces itself in intervalWriters for that
+  //    phase and checks the phase again before recording, and the reporting thread flips the
+  //    phase and then waits until the old phase has no writers before reading and replacing its
+  //    histogram, so no latency is lost or reported twice. The histograms are only replaced by
+  //    the reporting thread before the volatile write of intervalPhase that makes them current.
+
+  private void checkRep() {
+    assert host != null : "host should not be null";
+    assert port >= 0 && port <= 65535 : "port " + port + " out of range";
+    assert connections > 0 : "connections should be greater than 0";
+    assert rate > 0 : "rate should be greater than 0";
+    assert !mix.isEmpty() : "mix should not be empty";
+    assert durationNanos > 0 && intervalNanos > 0 : "duration and interval should be positive";
+  }
+
+  /**
+   * Constructor
+   *
+   * @param host server host name
+   * @param port server port, requires 0 <= port <= 65535
+   * @param connections number of concurrent connections, requires connections > 0
+   * @param rate total number of commands per second over all connections, requires rate > 0
+   * @param mix relative weight of each command, requires only LOOK, DIG, FLAG and DEFLAG
+   * @param durationNanos length of the run
+   * @param intervalNanos time between two reports
+   * @param seed seed for the random command and coordinate choices
+   */
+  LoadGenerator(String host, int port, int connections, double rate, Map<Command, Integer> mix,
+      long durationNanos, long intervalNanos, long seed) {
+    this.host = host;
+    this.port = port;
+    this.connections = connections;
+    this.rate = rate;
+    this.mix = new EnumMap<>(mix);
+    this.durationNanos = durationNanos;
+    this.intervalNanos = intervalNanos;
+    this.seed = seed;
+    checkRep();
+  }
+
+  /**
+   * Runs the load test and blocks until it is finished.
+   *
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  void run() throws InterruptedException {
+    final long start = System.nanoTime();
+    final long end = start + durationNanos;
+    final long period = (long) (TimeUnit.SECONDS.toNanos(1) * connections / rate);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < connections; i++) {
+      // spread the first commands of the connections evenly over one period
+      final long firstSend = start + period * i / connections;
+      final Random random = new Random(seed + i);
+      Thread thread = new Thread(() -> runConnection(firstSend, period, end, random),
+          "load-" + i);
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+    System.out.println(String.format(Locale.ROOT,
+        "Load test of %s:%d with %d connections at %.1f commands/s for %ds, mix %s",
+        host, port, connections, rate, TimeUnit.NANOSECONDS.toSeconds(durationNanos), mix));
+    long lastReport = start;
+    for (long nextReport = start + intervalNanos; nextReport < end; nextReport += intervalNanos) {
+      sleepUntil(nextReport);
+      long now = System.nanoTime();
+      Histogram latency = flipIntervalLatency();
+      System.out.println(describe("t=" + TimeUnit.NANOSECONDS.toSeconds(now - start) + "s",
+          latency, intervalErrors.sumThenReset(), now - lastReport));
+      lastReport = now;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    System.out.println(describe("total", totalLatency, totalErrors.sum(),
+        System.nanoTime() - start) + " booms=" + booms.sum() + " throttled=" + throttled.sum()
+        + " reconnects=" + reconnects.sum());
+  }
+
+  /**
+   * Sends commands over one connection until the end of the run, reconnecting when the server
+   * closes the connection.
+   *
+   * @param firstSend intended send time of the first command
+   * @param period time between the intended send times of two commands
+   * @param end end of the run
+   * @param random source of commands and coordinates
+   */
+  private void runConnection(long firstSend, long period, long end, Random random) {
+    long intendedSend = firstSend;
+    boolean boomed = false;
+    while (intendedSend < end) {
+      try (Socket socket = new Socket(host, port);
+          BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+          PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+        int[] size = parseWelcome(in.readLine());
+        while (intendedSend < end) {
+          sleepUntil(intendedSend);
+          String command = randomCommand(random, size[0], size[1]);
+          out.println(command);
+          String reply = readReply(in, Command.fromKeyword(command.split(" ", 2)[0]));
+          recordLatency(System.nanoTime() - intendedSend);
+          intendedSend += period;
+          boomed = reply.equals(BOOM_MESSAGE);
+          if (boomed) {
+            booms.increment();
+          } else if (reply.startsWith(ClientHandler.THROTTLED_PREFIX)) {
+            throttled.increment();
+          }
+        }
+      } catch (IOException e) {
+        // the command in flight is lost; try again on a new connection. A server that is not in
+        // debug mode closes the connection after a BOOM message, which is not an error.
+        if (!boomed) {
+          recordError();
+        }
+        boomed = false;
+        reconnects.increment();
+        intendedSend += period;
+      }
+    }
+  }
+
+  /**
+   * Parses the board size from the server's welcome message.
+   *
+   * @param welcome first line sent by the server
+   * @return {columns, rows}
+   * @throws IOException if welcome is not a welcome message
+   */
+  private static int[] parseWelcome(String welcome) throws IOException {
+    if (welcome == null) {
+      throw new IOException("connection closed before welcome message");
+    }
+    Matcher matcher = WELCOME_PATTERN.matcher(welcome);
+    if (!matcher.matches()) {
+      throw new IOException("unexpected welcome message: " + welcome);
+    }
+    return new int[]{Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))};
+  }
+
+  /**
+   * Reads one reply from the server. The reply to look, dig, flag and deflag is a BOARD message,
+   * read up to and including the empty line that follows the last row, unless it is a BOOM or
+   * throttled message; any other message is a single line. Notices sent by the server on its own
+   * initiative are skipped.
+   *
+   * @param in stream from the server
+   * @param sent the command the reply answers
+   * @return the first line of the reply
+   * @throws IOException if the connection is closed or broken
+   */
+  private static String readReply(BufferedReader in, Command sent) throws IOException {
+    String first = in.readLine();
+    while (first != null && first.startsWith(ClientHandler.NOTICE_PREFIX)) {
+      first = in.readLine();
+    }
+    if (first == null) {
+      throw new IOException("connection closed by server");
+    }
+    boolean boardCommand = sent == Command.LOOK || sent == Command.DIG || sent == Command.FLAG
+        || sent == Command.DEFLAG;
+    if (boardCommand && !first.equals(BOOM_MESSAGE)
+        && !first.startsWith(ClientHandler.THROTTLED_PREFIX)) {
+      String line = in.readLine();
+      while (line != null && !line.isEmpty()) {
+        line = in.readLine();
+      }
+      if (line == null) {
+        throw new IOException("connection closed by server");
+      }
+    }
+    return first;
+  }
+
+  /**
+   * Chooses a command according to the mix, with random coordinates on the board.
+   */
+  private String randomCommand(Random random, int columns, int rows) {
+    int totalWeight = 0;
+    for (int weight : mix.values()) {
+      totalWeight += weight;
+    }
+    int choice = random.nextInt(totalWeight);
+    for (Map.Entry<Command, Integer> entry : mix.entrySet()) {
+      choice -= entry.getValue();
+      if (choice < 0) {
+        Command command = entry.getKey();
+        if (command == Command.LOOK) {
+          return command.keyword();
+        }
+        return command.keyword() + " " + random.nextInt(columns) + " " + random.nextInt(rows);
+      }
+    }
+    throw new RuntimeException("randomCommand() should never get down here.");
+  }
+
+  private void recordLatency(long nanos) {
+    while (true) {
+      int phase = intervalPhase;
+      intervalWriters.incrementAndGet(phase);
+      if (intervalPhase == phase) {
+        intervalLatency[phase].record(nanos);
+        intervalWriters.decrementAndGet(phase);
+        break;
+      }
+      // the reporting thread flipped the phase in between and may already be reading
+      intervalWriters.decrementAndGet(phase);
+    }
+    totalLatency.record(nanos);
+  }
+
+  /**
+   * Starts a new interval; only called by the reporting thread.
+   *
+   * @return the latencies recorded in the interval that ended, complete
+   */
+  private Histogram flipIntervalLatency() {
+    int ended = intervalPhase;
+    intervalPhase = 1 - ended;
+    while (intervalWriters.get(ended) != 0) {
+      Thread.onSpinWait();
+    }
+    Histogram latency = intervalLatency[ended];
+    intervalLatency[ended] = new Histogram();
+    return latency;
+  }
+
+  private void recordError() {
+    intervalErrors.increment();
+    totalErrors.increment();
+  }
+
+  /**
+   * Formats one report line.
+   *
+   * @param label start of the line
+   * @param latency latencies of the commands in the reported period
+   * @param errors number of errors in the reported period
+   * @param elapsedNanos length of the reported period
+   * @return the report line, latencies in microseconds
+   */
+  private static String describe(String label, Histogram latency, long errors, long elapsedNanos) {
+    return String.format(Locale.ROOT,
+        "%s commands=%d throughput=%.1f/s p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus errors=%d",
+        label, latency.getCount(), latency.getCount() * 1e9 / Math.max(1, elapsedNanos),
+        latency.get50thPercentile() / 1e3, latency.get99thPercentile() / 1e3,
+        latency.get999thPercentile() / 1e3, latency.getMax() / 1e3, errors);
+  }
+
+  private static void sleepUntil(long deadline) {
+    for (long remaining = deadline - System.nanoTime(); remaining > 0;
+        remaining = deadline - System.nanoTime()) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  /**
+   * Parses a duration such as "90", "90s", "30m" or "4h".
+   *
+   * @param duration a number of seconds, minutes or hours
+   * @return the duration in nanoseconds
+   */
+  static long parseDuration(String duration) {
+    TimeUnit unit = TimeUnit.SECONDS;
+    String amount = duration;
+    if (duration.endsWith("s")) {
+      amount = duration.substring(0, duration.length() - 1);
+    } else if (duration.endsWith("m")) {
+      unit = TimeUnit.MINUTES;
+      amount = duration.substring(0, duration.length() - 1);
+    } else if (duration.endsWith("h")) {
+      unit = TimeUnit.HOURS;
+      amount = duration.substring(0, duration.length() - 1);
+    }
+    long nanos = unit.toNanos(Long.parseLong(amount));
+    if (nanos <= 0) {
+      throw new IllegalArgumentException("duration must be positive: " + duration);
+    }
+    return nanos;
+  }
+
+  /**
+   * Parses a command mix such as "look=10,dig=1,flag=2,deflag=2".
+   *
+   * @param mix comma separated command=weight pairs
+   * @return weight of each command with a positive weight
+   */
+  static Map<Command, Integer> parseMix(String mix) {
+    Map<Command, Integer> weights = new EnumMap<>(Command.class);
+    for (String pair : mix.split(",")) {
+      String[] keyAndWeight = pair.split("=");
+      if (keyAndWeight.length != 2) {
+        throw new IllegalArgumentException("invalid mix entry: \"" + pair + "\"");
+      }
+      Command command = Command.fromKeyword(keyAndWeight[0]);
+      if (command != Command.LOOK && command != Command.DIG && command != Command.FLAG
+          && command != Command.DEFLAG) {
+        throw new IllegalArgumentException("command not supported in mix: " + keyAndWeight[0]);
+      }
+      int weight = Integer.parseInt(keyAndWeight[1]);
+      if (weight > 0) {
+        weights.put(command, weight);
+      }
+    }
+    if (weights.isEmpty()) {
+      throw new IllegalArgumentException("mix has no command with a positive weight");
+    }
+    return weights;
+  }
+
+  /**
+   * Start a load test using the given arguments.
+   *
+   * <br> Usage: LoadGenerator [--host HOST] [--port PORT] [--connections N] [--rate RATE]
+   * [--mix MIX] [--duration DURATION] [--interval DURATION] [--seed SEED] [--server SIZE_X,SIZE_Y]
+   *
+   * <br> RATE is the total number of commands per second over all N connections.
+   * <br> MIX is a list of command weights, e.g. "look=10,dig=1,flag=2,deflag=2".
+   * <br> DURATION is a number of seconds, optionally followed by s, m or h, e.g. "4h" for a soak
+   * run. --duration is the length of the run and --interval the time between two reports.
+   * <br> --server starts a Minesweeper server in debug mode with a random board of size
+   * SIZE_X*SIZE_Y in this JVM on PORT before the load test begins.
+   *
+   * <br> Defaults: --host 127.0.0.1 --port 4444 --connections 10 --rate 100
+   * --mix look=4,dig=1,flag=2,deflag=2 --duration 60 --interval 10 --seed 0
+   *
+   * @param args arguments as described
+   * @throws InterruptedException if the main thread is interrupted
+   */
+  public static void main(String[] args) throws InterruptedException {
+    String host = "127.0.0.1";
+    int port = 4444;
+    int connections = 10;
+    double rate = 100;
+    Map<Command, Integer> mix = parseMix("look=4,dig=1,flag=2,deflag=2");
+    long durationNanos = TimeUnit.SECONDS.toNanos(60);
+    long intervalNanos = TimeUnit.SECONDS.toNanos(10);
+    long seed = 0;
+    String serverSize = null;
+
+    Queue<String> arguments = new LinkedList<>(Arrays.asList(args));
+    try {
+      while (!arguments.isEmpty()) {
+        String flag = arguments.remove();
+        try {
+          if (flag.equals("--host")) {
+            host = arguments.remove();
+          } else if (flag.equals("--port")) {
+            port = Integer.parseInt(arguments.remove());
+            if (port < 0 || port > 65535) {
+              throw new IllegalArgumentException("port " + port + " out of range");
+            }
+          } else if (flag.equals("--connections")) {
+            connections = Integer.parseInt(arguments.remove());
+            if (connections <= 0) {
+              throw new IllegalArgumentException("connections must be positive");
+            }
+          } else if (flag.equals("--rate")) {
+            rate = Double.parseDouble(arguments.remove());
+            if (rate <= 0) {
+              throw new IllegalArgumentException("rate must be positive");
+            }
+          } else if (flag.equals("--mix")) {
+            mix = parseMix(arguments.remove());
+          } else if (flag.equals("--duration")) {
+            durationNanos = parseDuration(arguments.remove());
+          } else if (flag.equals("--interval")) {
+            intervalNanos = parseDuration(arguments.remove());
+          } else if (flag.equals("--seed")) {
+            seed = Long.parseLong(arguments.remove());
+          } else if (flag.equals("--server")) {
+            serverSize = arguments.remove();
+          } else {
+            throw new IllegalArgumentException("unknown option: \"" + flag + "\"");
+          }
+        } catch (NoSuchElementException nsee) {
+          throw new IllegalArgumentException("missing argument for " + flag);
+        } catch (NumberFormatException nfe) {
+          throw new IllegalArgumentException("unable to parse number for " + flag);
+        }
+      }
+    } catch (IllegalArgumentException iae) {
+      System.err.println(iae.getMessage());
+      System.err.println("usage: LoadGenerator [--host HOST] [--port PORT] [--connections N] "
+          + "[--rate RATE] [--mix MIX] [--duration DURATION] [--interval DURATION] [--seed SEED] "
+          + "[--server SIZE_X,SIZE_Y]");
+      return;
+    }
+    if (serverSize != null) {
+      final String[] serverArgs = {"--debug", "--port", Integer.toString(port), "--size", serverSize};
+      Thread serverThread = new Thread(() -> MinesweeperServer.main(serverArgs), "server");
+      serverThread.setDaemon(true);
+      serverThread.start();
+      Thread.sleep(1000);
+    }
+    new LoadGenerator(host, port, connections, rate, mix, durationNanos, intervalNanos, seed).run();
+    if (serverSize != null) {
+      // the server's client threads linger in its thread pool
+      System.exit(0);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package minesweeper.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import minesweeper.server.Square.SquareStatus;
+
+/**
+ * A CellStore whose squares live off the heap, in a file mapped into memory. The garbage collector
+ * never scans the squares, the operating system's page cache decides which parts of a large
+ * board are resident, and a board can be reopened after a restart without parsing anything.
+ *
+ * File format: the bytes "MSBD", then big-endian 32-bit integers version (1), sizeX and sizeY,
+ * then one byte per square y * sizeX + x with bit 0 set if the square has a bomb and bits 1-2
+ * holding the ordinal of its SquareStatus. Changes reach the file when the operating system
+ * writes the mapped pages back, and at the latest when flush() returns.
+ */
+
+class MappedCellStore implements CellStore {
+
+  private static final byte[] MAGIC = {'M', 'S', 'B', 'D'};
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 16;
+  private static final SquareStatus[] STATUSES = SquareStatus.values();
+
+  private final MappedByteBuffer cells;
+  private final int sizeX;
+  private final int sizeY;
+
+  // Representation invariant
+  //    sizeX > 0, sizeY > 0
+  //    cells.capacity() == HEADER_BYTES + sizeX * sizeY
+  //    the status bits of every square hold the ordinal of a SquareStatus
+
+  // Abstraction function
+  //    Represents the bombs and statuses stored in the squares part of the mapped file.
+
+  // Safety from representation exposure
+  //    All fields are private and cells is never returned.
+
+  // Thread safety argument
+  //    Not threadsafe: only accessed while holding the lock of the board that owns it. Only
+  //    absolute get and put are used, so the buffer's position is never shared state.
+
+  private void checkRep() {
+    assert sizeX > 0 && sizeY > 0 : "size should be positive";
+    assert cells.capacity() == HEADER_BYTES + (long) sizeX * sizeY : "file should hold all squares";
+  }
+
+  private MappedCellStore(MappedByteBuffer cells, int sizeX, int sizeY) {
+    this.cells = cells;
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    checkRep();
+  }
+
+  /**
+   * Creates a store file with every square untouched and without a bomb.
+   *
+   * @param path file to create, requires that it does not exist
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   * @return the store
+   * @throws IOException if the file exists or cannot be created
+   * @throws IllegalArgumentException if the board is too large to be mapped
+   */
+  static MappedCellStore create(Path path, int sizeX, int sizeY) throws IOException {
+    long bytes = HEADER_BYTES + (long) sizeX * sizeY;
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("board of " + sizeX + "x" + sizeY
+          + " squares is too large to be mapped");
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer cells = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+      cells.order(ByteOrder.BIG_ENDIAN);
+      cells.put(0, MAGIC[0]).put(1, MAGIC[1]).put(2, MAGIC[2]).put(3, MAGIC[3]);
+      cells.putInt(4, VERSION).putInt(8, sizeX).putInt(12, sizeY);
+      return new MappedCellStore(cells, sizeX, sizeY);
+    }
+  }
+
+  /**
+   * Opens a store file written by create().
+   *
+   * @param path the file
+   * @return the store, with the squares as they were last written
+   * @throws IOException if the file cannot be read or is not a store file
+   */
+  static MappedCellStore open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // keep reading until the header is complete or the file ends
+      }
+      header.flip();
+      if (header.remaining() < HEADER_BYTES || header.get(0) != MAGIC[0]
+          || header.get(1) != MAGIC[1] || header.get(2) != MAGIC[2] || header.get(3) != MAGIC[3]
+          || header.getInt(4) != VERSION) {
+        throw new IOException(path + " is not a version " + VERSION + " board file");
+      }
+      int sizeX = header.getInt(8);
+      int sizeY = header.getInt(12);
+      long bytes = HEADER_BYTES + (long) sizeX * sizeY;
+      if (sizeX <= 0 || sizeY <= 0 || bytes > Integer.MAX_VALUE || channel.size() != bytes) {
+        throw new IOException(path + " has an invalid size");
+      }
+      MappedByteBuffer cells = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+      for (int i = HEADER_BYTES; i < bytes; i++) {
+        if ((cells.get(i) >>> 1 & 3) >= STATUSES.length) {
+          throw new IOException(path + " has an invalid square at " + (i - HEADER_BYTES));
+        }
+      }
+      return new MappedCellStore(cells, sizeX, sizeY);
+    }
+  }
+
+  @Override
+  public int getSizeX() {
+    return sizeX;
+  }
+
+  @Override
+  public int getSizeY() {
+    return sizeY;
+  }
+
+  @Override
+  public boolean hasBomb(int x, int y) {
+    return (cells.get(index(x, y)) & 1) != 0;
+  }
+
+  @Override
+  public void setBomb(int x, int y, boolean bomb) {
+    int index = index(x, y);
+    cells.put(index, (byte) (cells.get(index) & ~1 | (bomb ? 1 : 0)));
+  }
+
+  @Override
+  public SquareStatus getStatus(int x, int y) {
+    return STATUSES[cells.get(index(x, y)) >>> 1 & 3];
+  }
+
+  @Override
+  public void setStatus(int x, int y, SquareStatus status) {
+    int index = index(x, y);
+    cells.put(index, (byte) (cells.get(index) & 1 | status.ordinal() << 1));
+  }
+
+  @Override
+  public void flush() {
+    cells.force();
+  }
+
+  private int index(int x, int y) {
+    return HEADER_BYTES + y * sizeX + x;
+  }
+}
@@ -5,8 +5,18 @@ package minesweeper.server;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
@@ -14,7 +24,9 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Multiplayer Minesweeper server.
@@ -23,7 +35,8 @@ public class MinesweeperServer {
 
   private static final int DEFAULT_PORT = 4444;
   private static final int MAXIMUM_PORT = 65535;
-  static Board board;
+  private static final long MEGABYTE = 1024 * 1024;
+  static volatile Board board;
   private static ExecutorService cachedThreadPool;
   private final int port;
 
@@ -37,6 +50,47 @@ public class MinesweeperServer {
    */
   static boolean debug;
 
+  /**
+   * Statistics of all clients and boards of the server.
+   */
+  static final ServerStats stats = new ServerStats();
+
+  /**
+   * Players connected to the server.
+   */
+  static final SessionRegistry sessions = new SessionRegistry();
+
+  /**
+   * Closes client connections that are idle or do not read their replies.
+   */
+  static final ConnectionReaper reaper = new ConnectionReaper(
+      TimeUnit.SECONDS.toNanos(ServerConfig.IDLE_TIMEOUT_SECONDS),
+      TimeUnit.MILLISECONDS.toNanos(ServerConfig.WRITE_TIMEOUT_MILLIS));
+
+  /**
+   * Log of all handled commands, or null if ServerConfig.EVENT_LOG_FILE is empty or the log
+   * could not be created.
+   */
+  static EventLog eventLog;
+
+  /**
+   * Applies the dig, flag and deflag commands of all clients on a single thread, or null if
+   * ServerConfig.SEQUENCER_CAPACITY is 0.
+   */
+  static CommandSequencer sequencer;
+
+  /**
+   * New boards of the size of board, replacing board whenever it is cleared, or null if
+   * ServerConfig.POOLED_BOARDS is 0 or the board is stored in a file or logged.
+   */
+  static BoardPool boardPool;
+
+  /**
+   * Evicts board to disk while nobody plays on it, or null if ServerConfig.EVICT_AFTER_SECONDS
+   * and ServerConfig.RESIDENT_BOARDS_MEGABYTES are 0 or the board is stored in a file.
+   */
+  static BoardEvictor evictor;
+
   // Representation invariant
   //  port > 0 && port <= 65535
   //  cachedThreadPool is not null
@@ -52,11 +106,28 @@ public class MinesweeperServer {
   //  board is only mutated by methods on the Board class itself
   //  cachedThreadPool is a private variable and is only altered by the ExecutorService as clients connect and disconnect
   //  debug is an immutable data type but the reference is mutable and package private
+  //  stats is package private, static and final; it only exposes threadsafe recording and read operations
+  //  sessions is package private, static and final; sessions are only opened and closed by ClientHandler
+  //  reaper is package private, static and final; it only closes connections that it was asked to watch
+  //  eventLog is package private and static; it is set before the first client connects
+  //  sequencer is package private and static; it is set before the first client connects
+  //  boardPool is package private and static; it is set before the first client connects and
+  //  board is volatile, since it is replaced by startNewGame()
+  //  evictor is package private and static; it is set before the first client connects
 
   // Thread safety argument
   //  The Minesweeper server uses a single cachedThreadPool (from the Executors interface).
-  //  Every client runs in a separate thread of the cached thread pool and they all access the same
-  //  threadsafe board (from the Board class). There is no communication between the threads.
+  //  Every client, whether it connected over TCP or over the Unix domain socket that its own
+  //  listener thread accepts, runs in a separate thread of the cached thread pool and they all
+  //  access the same threadsafe board (from the Board class). There is no communication between
+  //  the threads.
+  //  All threads record into the same threadsafe stats (from the ServerStats class).
+  //  The threadsafe reaper (from the ConnectionReaper class) closes the socket of a client thread
+  //  that is idle or blocked in a write, which makes that thread's blocked I/O fail.
+  //  If there is a sequencer, the client threads hand their dig, flag and deflag commands to its
+  //  single applier thread (from the threadsafe CommandSequencer class) and wait for the replies.
+  //  The evictor's thread (from the threadsafe BoardEvictor class) evicts the board under its
+  //  lock; the next command of a client thread reloads it under the same lock.
 
   /**
    * Checks if the representation invariants hold.
@@ -80,9 +151,72 @@ public class MinesweeperServer {
     MinesweeperServer.debug = debug;
     this.port = port;
     cachedThreadPool = Executors.newCachedThreadPool();
+    stats.registerMBeans();
+    sessions.registerMBean();
+    openEventLog();
+    if (ServerConfig.SEQUENCER_CAPACITY > 0 && sequencer == null) {
+      sequencer = new CommandSequencer(board, ServerConfig.SEQUENCER_CAPACITY, eventLog);
+    }
+    if (ServerConfig.POOLED_BOARDS > 0 && ServerConfig.BOARD_FILE.isEmpty() && eventLog == null
+        && boardPool == null) {
+      boardPool = new BoardPool(Board::createRandomBoard, ServerConfig.POOLED_BOARDS,
+          ServerConfig.BOARD_POOL_BUDGET_MEGABYTES * MEGABYTE, Board.HEAP_BYTES_PER_SQUARE);
+      boardPool.prepare(board.getSizeX(), board.getSizeY(), Board.BOMB_DENSITY);
+    }
+    if ((ServerConfig.EVICT_AFTER_SECONDS > 0 || ServerConfig.RESIDENT_BOARDS_MEGABYTES > 0)
+        && ServerConfig.BOARD_FILE.isEmpty() && evictor == null) {
+      evictor = new BoardEvictor(Paths.get(ServerConfig.EVICTION_DIRECTORY),
+          TimeUnit.SECONDS.toNanos(ServerConfig.EVICT_AFTER_SECONDS),
+          ServerConfig.RESIDENT_BOARDS_MEGABYTES * MEGABYTE);
+      evictor.watch(board);
+    }
     checkRep();
   }
 
+  /**
+   * Replaces the board by a new one of the same size from boardPool. Clients that are in the
+   * middle of a command may still finish it on the old board.
+   *
+   * @return the new board
+   */
+  static Board startNewGame() {
+    assert boardPool != null : "boardPool should not be null";
+    Board previous = board;
+    Board next = boardPool.take(board.getSizeX(), board.getSizeY(), Board.BOMB_DENSITY);
+    board = next;
+    if (sequencer != null) {
+      sequencer.setBoard(next);
+    }
+    if (evictor != null) {
+      // the cleared board is garbage once its last clients finish their commands
+      evictor.unwatch(previous);
+      evictor.watch(next);
+    }
+    return next;
+  }
+
+  /**
+   * Opens the event log configured by ServerConfig.EVENT_LOG_FILE, if any, and closes it when
+   * the JVM shuts down. The server keeps running without a log if it cannot be created or the
+   * board, such as a reopened board file, already has dug or flagged squares.
+   */
+  private static void openEventLog() {
+    if (ServerConfig.EVENT_LOG_FILE.isEmpty() || eventLog != null) {
+      return;
+    }
+    try {
+      eventLog = new EventLog(Paths.get(ServerConfig.EVENT_LOG_FILE), board,
+          ServerConfig.EVENT_LOG_QUEUE_CAPACITY);
+      Runtime.getRuntime().addShutdownHook(new Thread(eventLog::close, "event-log-close"));
+    } catch (IOException e) {
+      System.err.println("Event log disabled: cannot create " + ServerConfig.EVENT_LOG_FILE
+          + " (" + e + ")");
+    } catch (IllegalArgumentException e) {
+      System.err.println("Event log disabled: " + e.getMessage()
+          + ", and a replay starts from a fresh board");
+    }
+  }
+
   /**
    * Start a MinesweeperServer running on the specified port, with either a random new board or a
    * board loaded from a file.
@@ -102,12 +236,46 @@ public class MinesweeperServer {
     if (!file.isPresent() && (sizeX <= 0 || sizeY <= 0)) {
       throw new IllegalArgumentException("Board size parameters invalid. ");
     }
-    board = Board.createBoard(file, sizeX, sizeY);
+    board = ServerConfig.BOARD_FILE.isEmpty()
+        ? Board.createBoard(file, sizeX, sizeY)
+        : openBoardFile(file, sizeX, sizeY);
     MinesweeperServer server = new MinesweeperServer(port, debug);
     server.serve();
   }
 
 
+  /**
+   * Opens the board file configured by ServerConfig.BOARD_FILE, or creates it from the board
+   * described by the arguments if it does not exist, and checkpoints the board when the JVM shuts
+   * down.
+   *
+   * @param file as for runMinesweeperServer
+   * @param sizeX as for runMinesweeperServer
+   * @param sizeY as for runMinesweeperServer
+   * @return a board whose squares live in the board file
+   */
+  private static Board openBoardFile(Optional<File> file, int sizeX, int sizeY) {
+    Path path = Paths.get(ServerConfig.BOARD_FILE);
+    Board mapped;
+    try {
+      if (Files.exists(path)) {
+        mapped = Board.openMappedBoard(path);
+        System.out.println("Reopened board " + mapped.getSizeX() + "x" + mapped.getSizeY()
+            + " from " + path + ".");
+      } else if (file.isPresent()) {
+        mapped = Board.createMappedBoard(path, Board.createBoard(file, sizeX, sizeY));
+      } else {
+        mapped = Board.createMappedBoard(path, sizeX, sizeY);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+      throw new RuntimeException("openBoardFile() should never get down here.");
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(mapped::checkpoint, "board-checkpoint"));
+    return mapped;
+  }
+
   /**
    * Run the server, listening for client connections and handling them.
    * Never returns unless an exception is thrown.
@@ -117,10 +285,19 @@ public class MinesweeperServer {
    */
   public void serve() {
     System.out.println("Minesweeper started.");
-    try (ServerSocket serverSocket = new ServerSocket(port);) {
+    if (!ServerConfig.UNIX_SOCKET.isEmpty()) {
+      Thread listener = new Thread(() -> serveUnixSocket(Paths.get(ServerConfig.UNIX_SOCKET)),
+          "unix-socket-listener");
+      listener.setDaemon(true);
+      listener.start();
+    }
+    try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      serverChannel.bind(new InetSocketAddress(port));
       while (true) {
-        // block until a client connects
-        Socket socket = serverSocket.accept();
+        // block until a client connects; the socket has a channel, so ClientHandler can write
+        // shared board buffers without copying them
+        Socket socket = serverChannel.accept().socket();
         Runnable clientHandler = new ClientHandler(socket);
         cachedThreadPool.execute(clientHandler);
       }
@@ -134,10 +311,47 @@ public class MinesweeperServer {
     }
   }
 
+  /**
+   * Listens for client connections on a Unix domain socket and handles them like the connections
+   * to the TCP port. Returns if the socket cannot be opened or breaks; the TCP port keeps
+   * serving.
+   *
+   * @param path path of the socket; an existing socket file is replaced, any other file is kept
+   */
+  private void serveUnixSocket(Path path) {
+    try {
+      if (Files.exists(path, LinkOption.NOFOLLOW_LINKS) && Files.readAttributes(path,
+          BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+        Files.delete(path);
+      }
+    } catch (IOException e) {
+      System.err.println("cannot replace the socket file " + path + ": " + e);
+      return;
+    }
+    try (ServerSocketChannel serverChannel =
+        ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      serverChannel.bind(UnixDomainSocketAddress.of(path));
+      path.toFile().deleteOnExit();
+      System.out.println("Minesweeper listening on " + path + ".");
+      final String remoteAddress = "unix:" + path;
+      while (true) {
+        SocketChannel channel = serverChannel.accept();
+        cachedThreadPool.execute(new ClientHandler(channel, remoteAddress));
+      }
+    } catch (IOException | RejectedExecutionException e) {
+      e.printStackTrace();
+    }
+  }
+
   /**
    * Returns approximate number of threads.
+   * Walks all threads of the pool under the pool's lock; use sessions.getPlayers() for the
+   * number of connected players.
    */
   public static int getNumberOfThreads() {
+    if (cachedThreadPool == null) {
+      return 0;
+    }
     return ((ThreadPoolExecutor) cachedThreadPool).getActiveCount();
   }
 
@@ -0,0 +1,114 @@
+package minesweeper.server;
+
+import minesweeper.server.Square.SquareStatus;
+
+/**
+ * A CellStore for one of many games played on the same BombLayout. The bombs are the layout's,
+ * shared with every other game, until this game removes one; then it copies them. The statuses
+ * are its own, two bits per square.
+ */
+
+class OverlayCellStore implements CellStore {
+
+  private static final SquareStatus[] STATUSES = SquareStatus.values();
+
+  private final int sizeX;
+  private final int sizeY;
+  private long[] bombs;
+  private boolean bombsShared;
+  private final long[] statuses;
+
+  // Representation invariant
+  //    sizeX > 0, sizeY > 0
+  //    bombs.length == ceil(sizeX * sizeY / 64)
+  //    statuses.length == ceil(sizeX * sizeY / 32)
+
+  // Abstraction function
+  //    Represents the squares (x, y) with 0 <= x < sizeX, 0 <= y < sizeY, where with
+  //    i == y * sizeX + x the square has a bomb if bit i % 64 of bombs[i / 64] is set, and the
+  //    status whose ordinal is in bits 2 * (i % 32) and 2 * (i % 32) + 1 of statuses[i / 32].
+
+  // Safety from representation exposure
+  //    All fields are private. If bombsShared, bombs belongs to a BombLayout and other stores;
+  //    it is never written, setBomb copies it first.
+
+  // Thread safety argument
+  //    Not threadsafe: only accessed while holding the lock of the board that owns it. A shared
+  //    bombs array is only read, and was published by the final field of its BombLayout.
+
+  private void checkRep() {
+    assert sizeX > 0 && sizeY > 0 : "size should be positive";
+    assert bombs.length == (int) (((long) sizeX * sizeY + 63) >>> 6) : "a bit per square";
+  }
+
+  /**
+   * Constructor; every square is untouched.
+   *
+   * @param sizeX width of the board, requires > 0
+   * @param sizeY length of the board, requires > 0
+   * @param bombs the bombs of the layout as in the abstraction function, shared and never
+   * written
+   */
+  OverlayCellStore(int sizeX, int sizeY, long[] bombs) {
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    this.bombs = bombs;
+    this.bombsShared = true;
+    this.statuses = new long[(int) (((long) sizeX * sizeY + 31) >>> 5)];
+    checkRep();
+  }
+
+  @Override
+  public int getSizeX() {
+    return sizeX;
+  }
+
+  @Override
+  public int getSizeY() {
+    return sizeY;
+  }
+
+  @Override
+  public boolean hasBomb(int x, int y) {
+    int i = y * sizeX + x;
+    return (bombs[i >>> 6] & 1L << i) != 0;
+  }
+
+  @Override
+  public void setBomb(int x, int y, boolean bomb) {
+    if (hasBomb(x, y) == bomb) {
+      return;
+    }
+    if (bombsShared) {
+      bombs = bombs.clone();
+      bombsShared = false;
+    }
+    int i = y * sizeX + x;
+    bombs[i >>> 6] ^= 1L << i;
+  }
+
+  @Override
+  public SquareStatus getStatus(int x, int y) {
+    int i = y * sizeX + x;
+    return STATUSES[(int) (statuses[i >>> 5] >>> ((i & 31) << 1)) & 3];
+  }
+
+  @Override
+  public void setStatus(int x, int y, SquareStatus status) {
+    int i = y * sizeX + x;
+    int shift = (i & 31) << 1;
+    statuses[i >>> 5] = statuses[i >>> 5] & ~(3L << shift) | (long) status.ordinal() << shift;
+  }
+
+  @Override
+  public void flush() {
+    // nothing to write, the squares only live in memory
+  }
+
+  /**
+   * @return true if the bombs are still the layout's, shared with other games
+   */
+  boolean isSharingBombs() {
+    return bombsShared;
+  }
+}
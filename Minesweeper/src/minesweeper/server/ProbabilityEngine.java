@@ -0,0 +1,355 @@
+package minesweeper.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes the probability that a square that is not dug holds a bomb, judging only from the
+ * numbers of the dug squares and the number of bombs on the board.
+ *
+ * The frontier constraints are split into independent components: two constraints are in the
+ * same component if they share a square. Every component is enumerated in its own fork/join task
+ * by backtracking over its squares, and the probability of a square is the fraction of the
+ * consistent assignments that put a bomb on it. The solutions of a component only depend on its
+ * constraints, so they are cached and reused by later calls while the component is unchanged.
+ *
+ * Components are weighed independently of each other and of the global bomb count; squares off
+ * the frontier get the density of the bombs not expected on the frontier. Enumeration stops at a
+ * deadline, components that did not finish, or that are too large to enumerate, get the overall
+ * bomb density and the result is marked inexact.
+ */
+
+class ProbabilityEngine {
+
+  private static final int DEADLINE_CHECK_INTERVAL = 1024;
+  // bounds the recursion depth of a component's enumeration
+  private static final int MAX_COMPONENT_SQUARES = 1024;
+  private static final Comparator<HintSolver.Constraint> COMPONENT_ORDER =
+      Comparator.comparingInt((HintSolver.Constraint c) -> c.getCells()[0])
+          .thenComparingInt(c -> c.getCells().length)
+          .thenComparingInt(HintSolver.Constraint::getMines)
+          .thenComparing(HintSolver.Constraint::getCells, Arrays::compare);
+
+  private final ForkJoinPool pool;
+  private final int cacheSize;
+  private final ConcurrentMap<List<HintSolver.Constraint>, double[]> cache = new ConcurrentHashMap<>();
+  private final AtomicLong cacheHits = new AtomicLong();
+
+  // Representation invariant
+  //    cacheSize > 0.
+  //    Every cache entry maps the constraints of a component, sorted by COMPONENT_ORDER, to the
+  //    bomb probabilities of the component's squares in ascending square order.
+
+  // Abstraction function
+  //    Represents a probability calculator that remembers the results of up to about cacheSize
+  //    components.
+
+  // Safety from representation exposure
+  //    All fields are private. Cached arrays are never handed out; results are copied into a new
+  //    map for every call.
+
+  // Thread safety argument
+  //    The engine does not touch any board; callers pass a snapshot.
+  //    cache and cacheHits are threadsafe. Cached arrays are never mutated after they were
+  //    published through the cache. Every component is enumerated by a single task that only
+  //    writes its own Component object, and compute() reads them after invokeAll() returned.
+
+  private void checkRep() {
+    assert cacheSize > 0 : "cacheSize should be greater than 0";
+  }
+
+  /**
+   * Constructor
+   *
+   * @param pool pool that enumerates the components
+   * @param cacheSize approximate number of components to remember, requires > 0
+   */
+  ProbabilityEngine(ForkJoinPool pool, int cacheSize) {
+    this.pool = pool;
+    this.cacheSize = cacheSize;
+    checkRep();
+  }
+
+  /**
+   * Computes bomb probabilities.
+   *
+   * @param constraints one constraint per frontier square; every constraint has at least one cell
+   * @param unknownSquares number of squares that are not dug
+   * @param bombs number of bombs on the board
+   * @param deadlineNanos System.nanoTime() after which enumeration is abandoned
+   * @return the probabilities of the frontier squares and of the other squares
+   */
+  Probabilities compute(List<HintSolver.Constraint> constraints, int unknownSquares, int bombs,
+      long deadlineNanos) {
+    double density = unknownSquares == 0 ? 0.0 : (double) bombs / unknownSquares;
+    List<Component> components = split(constraints);
+    List<Component> toEnumerate = new ArrayList<>();
+    for (Component component : components) {
+      double[] cached = cache.get(component.key);
+      if (cached != null) {
+        component.probabilities = cached;
+        cacheHits.incrementAndGet();
+      } else if (component.cells.length <= MAX_COMPONENT_SQUARES) {
+        component.deadlineNanos = deadlineNanos;
+        toEnumerate.add(component);
+      }
+    }
+    if (toEnumerate.size() == 1) {
+      toEnumerate.get(0).compute();
+    } else if (!toEnumerate.isEmpty()) {
+      pool.invoke(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          invokeAll(toEnumerate);
+        }
+      });
+    }
+    Map<Integer, Double> frontier = new HashMap<>();
+    boolean exact = true;
+    double expectedFrontierBombs = 0.0;
+    for (Component component : components) {
+      if (component.probabilities == null) {
+        exact = false;
+        for (int cell : component.cells) {
+          frontier.put(cell, density);
+        }
+        expectedFrontierBombs += density * component.cells.length;
+        continue;
+      }
+      if (component.enumerated) {
+        if (cache.size() >= cacheSize) {
+          cache.clear();
+        }
+        cache.put(component.key, component.probabilities);
+      }
+      for (int i = 0; i < component.cells.length; i++) {
+        frontier.put(component.cells[i], component.probabilities[i]);
+        expectedFrontierBombs += component.probabilities[i];
+      }
+    }
+    int otherSquares = unknownSquares - frontier.size();
+    double otherProbability = otherSquares <= 0 ? 0.0
+        : Math.max(0.0, Math.min(1.0, (bombs - expectedFrontierBombs) / otherSquares));
+    return new Probabilities(frontier, otherProbability, exact);
+  }
+
+  /**
+   * @return number of components whose result was taken from the cache
+   */
+  long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * Splits constraints into components of constraints that share cells.
+   *
+   * @param constraints constraints with at least one cell each
+   * @return the components
+   */
+  private static List<Component> split(List<HintSolver.Constraint> constraints) {
+    Map<Integer, List<Integer>> constraintsByCell = new HashMap<>();
+    for (int i = 0; i < constraints.size(); i++) {
+      for (int cell : constraints.get(i).getCells()) {
+        constraintsByCell.computeIfAbsent(cell, c -> new ArrayList<>()).add(i);
+      }
+    }
+    boolean[] visited = new boolean[constraints.size()];
+    List<Component> components = new ArrayList<>();
+    for (int start = 0; start < constraints.size(); start++) {
+      if (visited[start]) {
+        continue;
+      }
+      List<HintSolver.Constraint> members = new ArrayList<>();
+      Deque<Integer> queue = new ArrayDeque<>();
+      queue.add(start);
+      visited[start] = true;
+      while (!queue.isEmpty()) {
+        HintSolver.Constraint constraint = constraints.get(queue.poll());
+        members.add(constraint);
+        for (int cell : constraint.getCells()) {
+          for (int other : constraintsByCell.get(cell)) {
+            if (!visited[other]) {
+              visited[other] = true;
+              queue.add(other);
+            }
+          }
+        }
+      }
+      members.sort(COMPONENT_ORDER);
+      components.add(new Component(members));
+    }
+    return components;
+  }
+
+  /**
+   * A set of constraints that share squares, enumerated by a single task.
+   */
+  private static final class Component extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<HintSolver.Constraint> key;
+    private final int[] cells;
+    private final int[][] constraintCells;
+    private final int[] constraintMines;
+    private long deadlineNanos;
+    private double[] probabilities;
+    private boolean enumerated;
+
+    // Enumeration state
+    private final boolean[] mine;
+    private final int[][] cellConstraints;
+    private final int[] placed;
+    private final int[] open;
+    private long solutions;
+    private long[] bombCounts;
+    private long nodes;
+    private boolean timedOut;
+
+    private Component(List<HintSolver.Constraint> key) {
+      this.key = key;
+      int[] all = key.stream().flatMapToInt(c -> Arrays.stream(c.getCells())).distinct()
+          .sorted().toArray();
+      cells = all;
+      constraintCells = new int[key.size()][];
+      constraintMines = new int[key.size()];
+      List<List<Integer>> byCell = new ArrayList<>();
+      for (int i = 0; i < cells.length; i++) {
+        byCell.add(new ArrayList<>());
+      }
+      for (int i = 0; i < key.size(); i++) {
+        int[] global = key.get(i).getCells();
+        constraintCells[i] = new int[global.length];
+        for (int j = 0; j < global.length; j++) {
+          constraintCells[i][j] = Arrays.binarySearch(cells, global[j]);
+          byCell.get(constraintCells[i][j]).add(i);
+        }
+        constraintMines[i] = key.get(i).getMines();
+      }
+      cellConstraints = new int[cells.length][];
+      for (int i = 0; i < cells.length; i++) {
+        cellConstraints[i] = byCell.get(i).stream().mapToInt(Integer::intValue).toArray();
+      }
+      mine = new boolean[cells.length];
+      placed = new int[key.size()];
+      open = new int[key.size()];
+    }
+
+    /**
+     * Enumerates every assignment of bombs to the component's squares that satisfies all of its
+     * constraints, unless the deadline passes first.
+     */
+    @Override
+    protected void compute() {
+      for (int i = 0; i < key.size(); i++) {
+        open[i] = constraintCells[i].length;
+      }
+      bombCounts = new long[cells.length];
+      enumerate(0);
+      if (timedOut || solutions == 0) {
+        return;
+      }
+      double[] result = new double[cells.length];
+      for (int i = 0; i < cells.length; i++) {
+        result[i] = (double) bombCounts[i] / solutions;
+      }
+      probabilities = result;
+      enumerated = true;
+    }
+
+    private void enumerate(int cell) {
+      if (timedOut) {
+        return;
+      }
+      if (++nodes % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() - deadlineNanos > 0) {
+        timedOut = true;
+        return;
+      }
+      if (cell == cells.length) {
+        solutions++;
+        for (int i = 0; i < cells.length; i++) {
+          if (mine[i]) {
+            bombCounts[i]++;
+          }
+        }
+        return;
+      }
+      for (int value = 0; value <= 1; value++) {
+        if (assign(cell, value == 1)) {
+          enumerate(cell + 1);
+        }
+        unassign(cell, value == 1);
+      }
+    }
+
+    /**
+     * Assigns a square and checks that every constraint on it can still be satisfied.
+     */
+    private boolean assign(int cell, boolean bomb) {
+      mine[cell] = bomb;
+      boolean feasible = true;
+      for (int c : cellConstraints[cell]) {
+        open[c]--;
+        if (bomb) {
+          placed[c]++;
+        }
+        if (placed[c] > constraintMines[c] || placed[c] + open[c] < constraintMines[c]) {
+          feasible = false;
+        }
+      }
+      return feasible;
+    }
+
+    private void unassign(int cell, boolean bomb) {
+      mine[cell] = false;
+      for (int c : cellConstraints[cell]) {
+        open[c]++;
+        if (bomb) {
+          placed[c]--;
+        }
+      }
+    }
+  }
+
+  /**
+   * The immutable result of a probability computation.
+   */
+  static final class Probabilities {
+
+    private final Map<Integer, Double> frontier;
+    private final double otherProbability;
+    private final boolean exact;
+
+    private Probabilities(Map<Integer, Double> frontier, double otherProbability, boolean exact) {
+      this.frontier = frontier;
+      this.otherProbability = otherProbability;
+      this.exact = exact;
+    }
+
+    /**
+     * @param cell a square that is not dug, numbered y * sizeX + x
+     * @return the probability that the square holds a bomb
+     */
+    double get(int cell) {
+      return frontier.getOrDefault(cell, otherProbability);
+    }
+
+    /**
+     * @return false if some component was estimated because the deadline passed
+     */
+    boolean isExact() {
+      return exact;
+    }
+  }
+}
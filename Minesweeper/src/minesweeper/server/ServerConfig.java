@@ -0,0 +1,166 @@
+package minesweeper.server;
+
+/**
+ * Tuning parameters of the Minesweeper server.
+ *
+ * MinesweeperServer.main() only accepts the options of the original assignment, so every
+ * other setting is read once from a system property, e.g.
+ * "java -Dminesweeper.idleTimeoutSeconds=60 minesweeper.server.MinesweeperServer".
+ */
+
+final class ServerConfig {
+
+  /**
+   * Seconds a client may stay silent before its connection is closed; 0 disables the check.
+   */
+  static final int IDLE_TIMEOUT_SECONDS = Integer.getInteger("minesweeper.idleTimeoutSeconds", 600);
+
+  /**
+   * Milliseconds a single reply may take to be written out before the connection is closed.
+   */
+  static final int WRITE_TIMEOUT_MILLIS = Integer.getInteger("minesweeper.writeTimeoutMillis", 10000);
+
+  /**
+   * Size of the per-connection socket send buffer in bytes. A client that does not read blocks
+   * the server once this buffer is full, which then starts the write timeout.
+   */
+  static final int SEND_BUFFER_BYTES = Integer.getInteger("minesweeper.sendBufferBytes", 256 * 1024);
+
+  /**
+   * Milliseconds the probabilities command may spend enumerating constraint components. Components
+   * that are not enumerated in time are estimated from the overall bomb density instead.
+   */
+  static final int PROBABILITY_BUDGET_MILLIS =
+      Integer.getInteger("minesweeper.probabilityBudgetMillis", 200);
+
+  /**
+   * Number of enumerated constraint components the probability engine keeps across moves.
+   */
+  static final int PROBABILITY_CACHE_SIZE =
+      Integer.getInteger("minesweeper.probabilityCacheSize", 4096);
+
+  /**
+   * Cheap commands (flag, deflag, status, help, stats) a client may send per second on average;
+   * 0 disables the limit.
+   */
+  static final int CHEAP_COMMANDS_PER_SECOND =
+      Integer.getInteger("minesweeper.cheapCommandsPerSecond", 200);
+
+  /**
+   * Cheap commands a client may send in a burst above the average rate.
+   */
+  static final int CHEAP_COMMANDS_BURST = Integer.getInteger("minesweeper.cheapCommandsBurst", 400);
+
+  /**
+   * Expensive commands (look, dig, hint, probabilities) a client may send per second on average;
+   * 0 disables the limit.
+   */
+  static final int EXPENSIVE_COMMANDS_PER_SECOND =
+      Integer.getInteger("minesweeper.expensiveCommandsPerSecond", 50);
+
+  /**
+   * Expensive commands a client may send in a burst above the average rate.
+   */
+  static final int EXPENSIVE_COMMANDS_BURST =
+      Integer.getInteger("minesweeper.expensiveCommandsBurst", 100);
+
+  /**
+   * File the event log of all handled commands is written to; empty disables the log. The file
+   * must not exist yet.
+   */
+  static final String EVENT_LOG_FILE = System.getProperty("minesweeper.eventLog", "");
+
+  /**
+   * Number of commands that may wait to be written to the event log before further commands are
+   * dropped from the log.
+   */
+  static final int EVENT_LOG_QUEUE_CAPACITY =
+      Integer.getInteger("minesweeper.eventLogQueueCapacity", 64 * 1024);
+
+  /**
+   * Number of threads that write notices to the players, shared by all players.
+   */
+  static final int NOTIFICATION_THREADS = Integer.getInteger("minesweeper.notificationThreads", 4);
+
+  /**
+   * Number of notices that may wait for a notification thread before further notices are dropped.
+   */
+  static final int NOTIFICATION_QUEUE_CAPACITY =
+      Integer.getInteger("minesweeper.notificationQueueCapacity", 64 * 1024);
+
+  /**
+   * Number of squares from which a board labels the regions a dig reveals with breadth-first
+   * fills split across the common fork/join pool instead of on a single thread.
+   */
+  static final int PARALLEL_FILL_THRESHOLD =
+      Integer.getInteger("minesweeper.parallelFillThreshold", 1024 * 1024);
+
+  /**
+   * File the board's squares are stored in, memory-mapped and off the heap; empty keeps them on
+   * the heap. An existing file is reopened as it was at its last checkpoint, otherwise the file
+   * is created with the board given on the command line.
+   */
+  static final String BOARD_FILE = System.getProperty("minesweeper.boardFile", "");
+
+  /**
+   * Number of new boards of the server's size kept ready in the background; when > 0, a board
+   * that is cleared is replaced by a new board from the pool. 0 keeps the same board forever.
+   * Ignored if BOARD_FILE or EVENT_LOG_FILE is set, since those describe a single board.
+   */
+  static final int POOLED_BOARDS = Integer.getInteger("minesweeper.pooledBoards", 0);
+
+  /**
+   * Estimated memory in megabytes the boards kept ready in the pool may use together.
+   */
+  static final int BOARD_POOL_BUDGET_MEGABYTES =
+      Integer.getInteger("minesweeper.boardPoolBudgetMegabytes", 1024);
+
+  /**
+   * Number of dig, flag and deflag commands that may wait in the ring buffer of a single thread
+   * applying them to the board, rounded up to a power of two; 0 applies every command on its
+   * client's thread under the board's lock instead.
+   */
+  static final int SEQUENCER_CAPACITY = Integer.getInteger("minesweeper.sequencerCapacity", 0);
+
+  /**
+   * Seconds without any command on the board after which its squares are written to
+   * EVICTION_DIRECTORY and dropped from memory until the next command; 0 never evicts idle
+   * boards. Ignored if BOARD_FILE is set, since the operating system pages mapped squares out.
+   */
+  static final int EVICT_AFTER_SECONDS = Integer.getInteger("minesweeper.evictAfterSeconds", 0);
+
+  /**
+   * Estimated memory in megabytes the boards in memory may use together before the least
+   * recently used are evicted to EVICTION_DIRECTORY; 0 for no limit. Ignored if BOARD_FILE is set.
+   */
+  static final int RESIDENT_BOARDS_MEGABYTES =
+      Integer.getInteger("minesweeper.residentBoardsMegabytes", 0);
+
+  /**
+   * Existing directory that evicted boards are written to.
+   */
+  static final String EVICTION_DIRECTORY =
+      System.getProperty("minesweeper.evictionDirectory", System.getProperty("java.io.tmpdir"));
+
+  /**
+   * Number of frames a connection in framed mode reads ahead of the commands it executes, so
+   * that the commands of every session that has one waiting take turns.
+   */
+  static final int MULTIPLEX_READ_AHEAD =
+      Integer.getInteger("minesweeper.multiplexReadAhead", 256);
+
+  /**
+   * Number of sessions a connection in framed mode may have open at the same time.
+   */
+  static final int MULTIPLEX_MAX_SESSIONS =
+      Integer.getInteger("minesweeper.multiplexMaxSessions", 1024);
+
+  /**
+   * Path of a Unix domain socket the server listens on besides its TCP port, for clients on the
+   * same host; empty for none. A socket file left behind by an earlier server is replaced.
+   */
+  static final String UNIX_SOCKET = System.getProperty("minesweeper.unixSocket", "");
+
+  private ServerConfig() {
+  }
+}
@@ -0,0 +1,261 @@
+package minesweeper.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A threadsafe collection of server wide statistics: latency histograms and throughput per
+ * command, board lock wait times, flood fill sizes and bytes written to clients.
+ */
+
+public class ServerStats implements ServerStatsMBean {
+
+  private static final String JMX_DOMAIN = "minesweeper.server";
+
+  private final long startNanos = System.nanoTime();
+  private final Map<Command, Histogram> commandLatencies = new EnumMap<>(Command.class);
+  private final Histogram lockWait = new Histogram();
+  private final Histogram floodFillSize = new Histogram();
+  private final LongAdder invalidCommands = new LongAdder();
+  private final LongAdder throttledCommands = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+
+  // Representation invariant
+  //    commandLatencies has a histogram for every Command.
+
+  // Abstraction function
+  //    Represents the statistics of all clients and boards of a Minesweeper server since startNanos.
+
+  // Safety from representation exposure
+  //    All fields are private and final. The histograms are handed out to callers, but Histogram
+  //    only exposes read operations outside of this package.
+
+  // Thread safety argument
+  //    commandLatencies is filled in the constructor and never mutated afterwards; it is safely
+  //    published through a final field.
+  //    The histograms and counters are threadsafe lock-free types.
+
+  private void checkRep() {
+    assert commandLatencies.size() == Command.values().length : "missing command histogram";
+  }
+
+  /**
+   * Constructor
+   */
+  ServerStats() {
+    for (Command command : Command.values()) {
+      commandLatencies.put(command, new Histogram());
+    }
+    checkRep();
+  }
+
+  /**
+   * Records the time a command took to execute.
+   *
+   * @param command the executed command
+   * @param nanos execution time in nanoseconds
+   */
+  void recordCommand(Command command, long nanos) {
+    commandLatencies.get(command).record(nanos);
+  }
+
+  /**
+   * Records a message that was not a valid command.
+   */
+  void recordInvalidCommand() {
+    invalidCommands.increment();
+  }
+
+  /**
+   * Records a command that was rejected by a client's rate limit.
+   */
+  void recordThrottledCommand() {
+    throttledCommands.increment();
+  }
+
+  /**
+   * Records the time a thread waited to acquire a board's lock.
+   *
+   * @param nanos waiting time in nanoseconds
+   */
+  void recordLockWait(long nanos) {
+    lockWait.record(nanos);
+  }
+
+  /**
+   * Records the number of squares dug by a single dig.
+   *
+   * @param squares number of squares that changed to dug
+   */
+  void recordFloodFill(int squares) {
+    floodFillSize.record(squares);
+  }
+
+  /**
+   * Records bytes written to a client.
+   *
+   * @param bytes number of bytes
+   */
+  void recordBytesWritten(long bytes) {
+    bytesWritten.add(bytes);
+  }
+
+  /**
+   * @param command a command
+   * @return the latency histogram of command, in nanoseconds
+   */
+  Histogram getCommandLatency(Command command) {
+    return commandLatencies.get(command);
+  }
+
+  /**
+   * @return the histogram of board lock wait times, in nanoseconds
+   */
+  Histogram getLockWait() {
+    return lockWait;
+  }
+
+  /**
+   * @return the histogram of squares dug per dig
+   */
+  Histogram getFloodFillSize() {
+    return floodFillSize;
+  }
+
+  @Override
+  public long getUptimeSeconds() {
+    return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+  }
+
+  @Override
+  public long getCommands() {
+    long commands = 0;
+    for (Histogram histogram : commandLatencies.values()) {
+      commands += histogram.getCount();
+    }
+    return commands;
+  }
+
+  @Override
+  public long getInvalidCommands() {
+    return invalidCommands.sum();
+  }
+
+  @Override
+  public long getThrottledCommands() {
+    return throttledCommands.sum();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  @Override
+  public long getIdleDisconnects() {
+    return MinesweeperServer.reaper.getIdleDisconnects();
+  }
+
+  @Override
+  public long getSlowClientDisconnects() {
+    return MinesweeperServer.reaper.getSlowClientDisconnects();
+  }
+
+  @Override
+  public int getPlayers() {
+    return MinesweeperServer.sessions.getPlayers();
+  }
+
+  /**
+   * Formats the statistics as the lines of a STATS message.
+   * Latencies are reported in microseconds, rates in commands per second since start up.
+   *
+   * @return the statistics, every line terminated by "\r\n"
+   */
+  @Override
+  public String report() {
+    double uptimeSeconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT,
+        "uptime=%.0fs players=%d commands=%d invalid=%d throttled=%d bytes=%d "
+            + "idle-disconnects=%d slow-disconnects=%d\r\n",
+        uptimeSeconds, getPlayers(), getCommands(), getInvalidCommands(),
+        getThrottledCommands(), getBytesWritten(),
+        getIdleDisconnects(), getSlowClientDisconnects()));
+    for (Map.Entry<Command, Histogram> entry : commandLatencies.entrySet()) {
+      Histogram histogram = entry.getValue();
+      sb.append(String.format(Locale.ROOT, "%s rate=%.1f/s ", entry.getKey().keyword(),
+          histogram.getCount() / uptimeSeconds));
+      appendHistogram(sb, histogram, 1000.0, "us");
+    }
+    sb.append("lock-wait ");
+    appendHistogram(sb, lockWait, 1000.0, "us");
+    sb.append("flood-fill ");
+    appendHistogram(sb, floodFillSize, 1.0, " squares");
+    return sb.toString();
+  }
+
+  /**
+   * Appends one line describing a histogram.
+   *
+   * @param sb where the line is appended
+   * @param histogram the histogram to describe
+   * @param divisor recorded values are divided by divisor before printing
+   * @param unit printed after every value
+   */
+  private static void appendHistogram(StringBuilder sb, Histogram histogram, double divisor,
+      String unit) {
+    sb.append(String.format(Locale.ROOT,
+        "count=%d mean=%.1f%s p50=%.1f%s p99=%.1f%s p999=%.1f%s max=%.1f%s\r\n",
+        histogram.getCount(),
+        histogram.getMean() / divisor, unit,
+        histogram.get50thPercentile() / divisor, unit,
+        histogram.get99thPercentile() / divisor, unit,
+        histogram.get999thPercentile() / divisor, unit,
+        histogram.getMax() / divisor, unit));
+  }
+
+  /**
+   * Registers the statistics and all histograms with the platform MBean server.
+   * Registering more than once has no effect.
+   */
+  void registerMBeans() {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    try {
+      register(mBeanServer, this, "type=ServerStats");
+      for (Map.Entry<Command, Histogram> entry : commandLatencies.entrySet()) {
+        register(mBeanServer, entry.getValue(), "type=CommandLatency,name=" + entry.getKey().keyword());
+      }
+      register(mBeanServer, lockWait, "type=BoardLockWait");
+      register(mBeanServer, floodFillSize, "type=FloodFillSize");
+    } catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Registers a single MBean in the minesweeper.server domain, ignoring MBeans that are already
+   * registered.
+   *
+   * @param mBeanServer where the MBean is registered
+   * @param mBean the MBean
+   * @param properties key properties of the MBean's object name, e.g. "type=ServerStats"
+   * @throws JMException if the MBean cannot be registered
+   */
+  static void register(MBeanServer mBeanServer, Object mBean, String properties)
+      throws JMException {
+    try {
+      mBeanServer.registerMBean(mBean, new ObjectName(JMX_DOMAIN + ":" + properties));
+    } catch (InstanceAlreadyExistsException e) {
+      // registered by an earlier server in the same JVM
+    }
+  }
+}
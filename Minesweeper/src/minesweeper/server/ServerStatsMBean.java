@@ -0,0 +1,53 @@
+package minesweeper.server;
+
+/**
+ * JMX management interface of the server wide statistics.
+ */
+
+public interface ServerStatsMBean {
+
+  /**
+   * @return seconds since the statistics were created
+   */
+  long getUptimeSeconds();
+
+  /**
+   * @return number of valid commands handled
+   */
+  long getCommands();
+
+  /**
+   * @return number of invalid commands received
+   */
+  long getInvalidCommands();
+
+  /**
+   * @return number of commands rejected by the clients' rate limits
+   */
+  long getThrottledCommands();
+
+  /**
+   * @return number of bytes written to clients
+   */
+  long getBytesWritten();
+
+  /**
+   * @return number of connections closed because the client was idle for too long
+   */
+  long getIdleDisconnects();
+
+  /**
+   * @return number of connections closed because a reply could not be written in time
+   */
+  long getSlowClientDisconnects();
+
+  /**
+   * @return number of connected players
+   */
+  int getPlayers();
+
+  /**
+   * @return the statistics in the format of the STATS message
+   */
+  String report();
+}
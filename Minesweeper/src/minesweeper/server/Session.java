@@ -0,0 +1,215 @@
+package minesweeper.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * A threadsafe record of one connected player: when it connected and how many commands and
+ * bytes it exchanged with the server.
+ */
+
+class Session {
+
+  private final long id;
+  private final String remoteAddress;
+  private final long connectedAtMillis;
+  private final AtomicLongArray commandCounts = new AtomicLongArray(Command.values().length);
+  private final AtomicLong invalidCommands = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong throttledCommands = new AtomicLong();
+  private final TokenBucket[] buckets = new TokenBucket[Command.RateClass.values().length];
+  private volatile Consumer<String> notifier = message -> { };
+
+  // Representation invariant
+  //    id > 0, remoteAddress is not null, connectedAtMillis > 0
+
+  // Abstraction function
+  //    Represents the player connected from remoteAddress since connectedAtMillis, identified by id.
+
+  // Safety from representation exposure
+  //    All fields are private and final; only copies of the counters are returned and the
+  //    token buckets are never returned.
+
+  // Thread safety argument
+  //    The counters are only updated by the player's thread, but they are read by other threads
+  //    (stats, JMX), so they are atomic types. notifier is volatile, set by the player's thread
+  //    and called by other threads; the notifier itself must be threadsafe.
+  //    buckets and its TokenBuckets are only used by the player's thread through throttle().
+  //    The other fields are final and immutable.
+
+  private void checkRep() {
+    assert id > 0 : "id should be greater than 0";
+    assert remoteAddress != null : "remoteAddress should not be null";
+    assert connectedAtMillis > 0 : "connectedAtMillis should be greater than 0";
+  }
+
+  /**
+   * Constructor
+   *
+   * @param id unique id of the session, requires id > 0
+   * @param remoteAddress address of the player's connection
+   */
+  Session(long id, String remoteAddress) {
+    this.id = id;
+    this.remoteAddress = remoteAddress;
+    this.connectedAtMillis = System.currentTimeMillis();
+    long now = System.nanoTime();
+    buckets[Command.RateClass.CHEAP.ordinal()] = newBucket(ServerConfig.CHEAP_COMMANDS_PER_SECOND,
+        ServerConfig.CHEAP_COMMANDS_BURST, now);
+    buckets[Command.RateClass.EXPENSIVE.ordinal()] = newBucket(
+        ServerConfig.EXPENSIVE_COMMANDS_PER_SECOND, ServerConfig.EXPENSIVE_COMMANDS_BURST, now);
+    checkRep();
+  }
+
+  private static TokenBucket newBucket(int perSecond, int burst, long now) {
+    return perSecond > 0 ? new TokenBucket(perSecond, Math.max(1, burst), now) : null;
+  }
+
+  /**
+   * Takes a token for a command from the bucket of its rate class. Must only be called by the
+   * player's thread.
+   *
+   * @param command a valid command
+   * @return 0 if the command may be executed, otherwise the nanoseconds until it may
+   */
+  long throttle(Command command) {
+    TokenBucket bucket = buckets[command.rateClass().ordinal()];
+    if (bucket == null) {
+      return 0;
+    }
+    return bucket.tryAcquire(System.nanoTime());
+  }
+
+  /**
+   * Gives back the allowance a command took in throttle() when it is rejected after all.
+   *
+   * @param command a command for which throttle() returned 0
+   */
+  void refund(Command command) {
+    TokenBucket bucket = buckets[command.rateClass().ordinal()];
+    if (bucket != null) {
+      bucket.refund();
+    }
+  }
+
+  /**
+   * Records a command that was rejected because of the player's rate limit.
+   *
+   * @param bytes length of the message including its line terminator
+   */
+  void recordThrottledCommand(long bytes) {
+    throttledCommands.incrementAndGet();
+    bytesRead.addAndGet(bytes);
+  }
+
+  /**
+   * Records a command sent by the player.
+   *
+   * @param command the valid command
+   * @param bytes length of the message including its line terminator
+   */
+  void recordCommand(Command command, long bytes) {
+    commandCounts.incrementAndGet(command.ordinal());
+    bytesRead.addAndGet(bytes);
+  }
+
+  /**
+   * Records an invalid message sent by the player.
+   *
+   * @param bytes length of the message including its line terminator
+   */
+  void recordInvalidCommand(long bytes) {
+    invalidCommands.incrementAndGet();
+    bytesRead.addAndGet(bytes);
+  }
+
+  /**
+   * Records a message sent to the player.
+   *
+   * @param bytes length of the message including its line terminator
+   */
+  void recordBytesWritten(long bytes) {
+    bytesWritten.addAndGet(bytes);
+  }
+
+  /**
+   * Sets how messages that are not replies to the player's own commands reach the player.
+   *
+   * @param notifier threadsafe consumer that sends a message to the player
+   */
+  void setNotifier(Consumer<String> notifier) {
+    this.notifier = notifier;
+  }
+
+  /**
+   * Sends a message to the player that is not a reply to one of its commands.
+   *
+   * @param message message without line terminator
+   */
+  void notifyPlayer(String message) {
+    notifier.accept(message);
+  }
+
+  long getId() {
+    return id;
+  }
+
+  String getRemoteAddress() {
+    return remoteAddress;
+  }
+
+  long getConnectedAtMillis() {
+    return connectedAtMillis;
+  }
+
+  /**
+   * @param command a command
+   * @return number of times the player sent command
+   */
+  long getCommandCount(Command command) {
+    return commandCounts.get(command.ordinal());
+  }
+
+  /**
+   * @return number of valid commands the player sent
+   */
+  long getCommandCount() {
+    long commands = 0;
+    for (int i = 0; i < commandCounts.length(); i++) {
+      commands += commandCounts.get(i);
+    }
+    return commands;
+  }
+
+  long getInvalidCommands() {
+    return invalidCommands.get();
+  }
+
+  long getThrottledCommands() {
+    return throttledCommands.get();
+  }
+
+  long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * @return one line describing the session, e.g.
+   * "session 3 /127.0.0.1:5123 connected=12s commands=42 invalid=0 throttled=0 read=300
+   * written=4200"
+   */
+  @Override
+  public String toString() {
+    return "session " + id + " " + remoteAddress
+        + " connected=" + (System.currentTimeMillis() - connectedAtMillis) / 1000 + "s"
+        + " commands=" + getCommandCount() + " invalid=" + getInvalidCommands()
+        + " throttled=" + getThrottledCommands()
+        + " read=" + getBytesRead() + " written=" + getBytesWritten();
+  }
+}
@@ -0,0 +1,172 @@
+package minesweeper.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+
+/**
+ * A threadsafe registry of the players connected to the server.
+ *
+ * The number of players is kept in an atomic counter, so reading it is O(1) and does not
+ * contend with the server's thread pool or with other players.
+ *
+ * Notices are written by a fixed number of notification threads from a bounded queue, so a
+ * broadcast to many players, or to the many sessions of one multiplexed connection, does not
+ * start a thread per player. Notices that do not fit in the queue are dropped and counted.
+ */
+
+public class SessionRegistry implements SessionRegistryMBean {
+
+  private final AtomicLong lastId = new AtomicLong();
+  private final AtomicInteger players = new AtomicInteger();
+  private final ConcurrentMap<Long, Session> sessions = new ConcurrentHashMap<>();
+  private final ThreadPoolExecutor notifications;
+  private final LongAdder droppedNotifications = new LongAdder();
+
+  // Representation invariant
+  //    players >= 0, and players == sessions.size() whenever no open() or close() is in progress.
+  //    lastId >= number of sessions ever opened.
+
+  // Abstraction function
+  //    Represents the set of sessions of the currently connected players.
+
+  // Safety from representation exposure
+  //    All fields are private and final. getSessions() returns an unmodifiable view.
+  //    Session objects are shared with callers, but Session is threadsafe.
+
+  // Thread safety argument
+  //    notifications is a threadsafe executor with a bounded number of threads and a bounded
+  //    queue; a player that does not read holds up one notification thread for at most the write
+  //    timeout. droppedNotifications is a threadsafe counter.
+  //    lastId, players and sessions are threadsafe types. players is only changed after a
+  //    successful put or remove, so it differs from sessions.size() at most by the number of
+  //    open() and close() calls in progress.
+
+  private void checkRep() {
+    assert players.get() >= 0 : "players should not be negative";
+  }
+
+  /**
+   * Constructor, with ServerConfig.NOTIFICATION_THREADS threads writing notices from a queue of
+   * ServerConfig.NOTIFICATION_QUEUE_CAPACITY notices.
+   */
+  public SessionRegistry() {
+    this(ServerConfig.NOTIFICATION_THREADS, ServerConfig.NOTIFICATION_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param threads number of threads that write notices, requires threads > 0
+   * @param queueCapacity number of notices that may wait for a thread, requires queueCapacity > 0
+   */
+  SessionRegistry(int threads, int queueCapacity) {
+    notifications = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "notification");
+          thread.setDaemon(true);
+          return thread;
+        });
+    notifications.allowCoreThreadTimeOut(true);
+    checkRep();
+  }
+
+  /**
+   * Registers a newly connected player.
+   *
+   * @param remoteAddress address of the player's connection
+   * @return the player's session
+   */
+  Session open(String remoteAddress) {
+    Session session = new Session(lastId.incrementAndGet(), remoteAddress);
+    sessions.put(session.getId(), session);
+    players.incrementAndGet();
+    checkRep();
+    return session;
+  }
+
+  /**
+   * Removes a disconnected player. Closing a session more than once has no effect.
+   *
+   * @param session a session returned by open()
+   */
+  void close(Session session) {
+    if (sessions.remove(session.getId(), session)) {
+      players.decrementAndGet();
+    }
+    checkRep();
+  }
+
+  /**
+   * Sends a message to every connected player, without waiting for it to be written. The message
+   * is dropped for the players whose notice does not fit in the queue.
+   *
+   * @param message message without line terminator
+   */
+  void broadcast(String message) {
+    for (Session session : sessions.values()) {
+      try {
+        notifications.execute(() -> session.notifyPlayer(message));
+      } catch (RejectedExecutionException e) {
+        droppedNotifications.increment();
+      }
+    }
+  }
+
+  /**
+   * @return number of notices dropped because the notification queue was full
+   */
+  long getDroppedNotifications() {
+    return droppedNotifications.sum();
+  }
+
+  /**
+   * @return unmodifiable view of the sessions of the connected players
+   */
+  Collection<Session> getSessions() {
+    return Collections.unmodifiableCollection(sessions.values());
+  }
+
+  @Override
+  public int getPlayers() {
+    return players.get();
+  }
+
+  @Override
+  public long getSessionsOpened() {
+    return lastId.get();
+  }
+
+  @Override
+  public String[] listSessions() {
+    List<String> lines = new ArrayList<>();
+    for (Session session : sessions.values()) {
+      lines.add(session.toString());
+    }
+    return lines.toArray(new String[0]);
+  }
+
+  /**
+   * Registers the registry with the platform MBean server.
+   * Registering more than once has no effect.
+   */
+  void registerMBean() {
+    try {
+      ServerStats.register(ManagementFactory.getPlatformMBeanServer(), this, "type=Sessions");
+    } catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package minesweeper.server;
+
+/**
+ * JMX management interface of the registry of connected players.
+ */
+
+public interface SessionRegistryMBean {
+
+  /**
+   * @return number of connected players
+   */
+  int getPlayers();
+
+  /**
+   * @return number of sessions opened since the server started
+   */
+  long getSessionsOpened();
+
+  /**
+   * @return one line per connected player, see Session.toString()
+   */
+  String[] listSessions();
+}
@@ -0,0 +1,78 @@
+package minesweeper.server;
+
+/**
+ * A mutable token bucket rate limiter: tokens are added at a constant rate up to a capacity, and
+ * every permitted action takes one token.
+ *
+ * Not threadsafe; every bucket is used by a single thread.
+ */
+
+class TokenBucket {
+
+  private final double capacity;
+  private final double tokensPerNano;
+  private double tokens;
+  private long lastRefillNanos;
+
+  // Representation invariant
+  //    capacity >= 1, tokensPerNano > 0, 0 <= tokens <= capacity
+
+  // Abstraction function
+  //    Represents a bucket holding tokens at time lastRefillNanos, filling at tokensPerNano up
+  //    to capacity.
+
+  // Safety from representation exposure
+  //    All fields are private and of primitive types.
+
+  // Thread safety argument
+  //    Not threadsafe: confined to the thread of the client that owns it.
+
+  private void checkRep() {
+    assert capacity >= 1 : "capacity should be at least 1";
+    assert tokensPerNano > 0 : "tokensPerNano should be greater than 0";
+    assert tokens >= 0 && tokens <= capacity : "tokens should be between 0 and capacity";
+  }
+
+  /**
+   * Constructor; the bucket starts full.
+   *
+   * @param tokensPerSecond rate at which tokens are added, requires > 0
+   * @param capacity maximum number of tokens, i.e. the largest burst, requires >= 1
+   * @param nowNanos current System.nanoTime()
+   */
+  TokenBucket(double tokensPerSecond, double capacity, long nowNanos) {
+    this.capacity = capacity;
+    this.tokensPerNano = tokensPerSecond / 1e9;
+    this.tokens = capacity;
+    this.lastRefillNanos = nowNanos;
+    checkRep();
+  }
+
+  /**
+   * Takes a token if one is available.
+   *
+   * @param nowNanos current System.nanoTime()
+   * @return 0 if a token was taken, otherwise the nanoseconds until the next token is available
+   */
+  long tryAcquire(long nowNanos) {
+    long elapsed = nowNanos - lastRefillNanos;
+    if (elapsed > 0) {
+      tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+      lastRefillNanos = nowNanos;
+    }
+    if (tokens >= 1) {
+      tokens -= 1;
+      checkRep();
+      return 0;
+    }
+    return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+  }
+
+  /**
+   * Gives back a token taken by tryAcquire for an action that was not performed after all.
+   */
+  void refund() {
+    tokens = Math.min(capacity, tokens + 1);
+    checkRep();
+  }
+}
@@ -0,0 +1,120 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.Bitboard class
+ */
+
+public class BitboardTest {
+
+  /* TEST STRATEGY:
+
+      neighborCounts
+        single square in a row
+        random sets on boards narrower than, as wide as and wider than a word, compared with
+          counting neighbor by neighbor
+        full board, interior squares count 8
+
+      not, and, dilate
+        dilate of a single square covers its neighbors and stays on the board
+        not does not set squares beyond the board's width
+
+ */
+
+  private static final int[] WIDTHS = {1, 3, 63, 64, 65, 130};
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* neighborCounts ----------------------------------------------------------------------------- */
+
+  @Test
+  public void testNeighborCounts_row() {
+    Bitboard bitboard = new Bitboard(3, 1);
+    bitboard.set(1, 0);
+
+    byte[] counts = bitboard.neighborCounts();
+
+    assertTrue(counts[0] == 1 && counts[1] == 0 && counts[2] == 1);
+  }
+
+  @Test
+  public void testNeighborCounts_random() {
+    Random random = new Random(5);
+    for (int sizeX : WIDTHS) {
+      int sizeY = 7;
+      Bitboard bitboard = new Bitboard(sizeX, sizeY);
+      boolean[][] set = new boolean[sizeY][sizeX];
+      for (int y = 0; y < sizeY; y++) {
+        for (int x = 0; x < sizeX; x++) {
+          if (random.nextInt(3) == 0) {
+            bitboard.set(x, y);
+            set[y][x] = true;
+          }
+        }
+      }
+
+      byte[] counts = bitboard.neighborCounts();
+
+      for (int y = 0; y < sizeY; y++) {
+        for (int x = 0; x < sizeX; x++) {
+          int expected = 0;
+          for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+              int nx = x + dx;
+              int ny = y + dy;
+              if ((dx != 0 || dy != 0) && nx >= 0 && nx < sizeX && ny >= 0 && ny < sizeY
+                  && set[ny][nx]) {
+                expected++;
+              }
+            }
+          }
+          assertTrue(counts[y * sizeX + x] == expected);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testNeighborCounts_full() {
+    Bitboard bitboard = new Bitboard(70, 3).not();
+
+    byte[] counts = bitboard.neighborCounts();
+
+    assertTrue(counts[70 + 64] == 8);
+    assertTrue(counts[0] == 3);
+    assertTrue(counts[70 + 69] == 5);
+  }
+
+  /* not, and, dilate --------------------------------------------------------------------------- */
+
+  @Test
+  public void testDilate_singleSquare() {
+    Bitboard bitboard = new Bitboard(65, 3);
+    bitboard.set(64, 1);
+
+    Bitboard dilated = bitboard.dilate();
+
+    assertTrue(dilated.get(63, 0) && dilated.get(64, 0) && dilated.get(64, 2));
+    assertTrue(dilated.get(63, 1));
+    assertFalse(dilated.get(62, 1));
+    assertFalse(dilated.and(new Bitboard(65, 3).not()).get(0, 1));
+  }
+
+  @Test
+  public void testNot_width() {
+    Bitboard bitboard = new Bitboard(3, 1).not();
+
+    byte[] counts = bitboard.neighborCounts();
+
+    assertTrue(counts[2] == 1);
+  }
+
+}
@@ -0,0 +1,239 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.stream.Stream;
+import minesweeper.server.Square.SquareStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.BoardEvictor class, Board.evict and EvictedCells
+ */
+
+public class BoardEvictorTest {
+
+  /* TEST STRATEGY:
+
+      EvictedCells.write, read
+        random bombs and statuses round trip; file of another size is rejected
+
+      Board.evict
+        heap board: next command reloads them with the same squares and deletes
+          the file; evicting twice does nothing
+        mapped board is not evicted
+
+      evictIdle
+        idle board is evicted, recently used board is not
+        over budget: least recently used board is evicted until the rest fit
+        unwatched board is never evicted
+
+      unwatch
+        evicted board is read back and its file deleted
+        unwatch while evictIdle runs: no file is left behind
+
+ */
+
+  private Path directory;
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("evictor-test");
+  }
+
+  @After
+  public void deleteDirectory() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  /* EvictedCells.write, read ------------------------------------------------------------------- */
+
+  @Test
+  public void testEvictedCells_roundTrip() throws IOException {
+    HeapCellStore cells = new HeapCellStore(23, 11);
+    Random random = new Random(3);
+    for (int y = 0; y < 11; y++) {
+      for (int x = 0; x < 23; x++) {
+        cells.setBomb(x, y, random.nextBoolean());
+        cells.setStatus(x, y, SquareStatus.values()[random.nextInt(3)]);
+      }
+    }
+    Path file = directory.resolve("cells");
+
+    EvictedCells.write(cells, file);
+    HeapCellStore read = new HeapCellStore(23, 11);
+    EvictedCells.read(file, read);
+
+    for (int y = 0; y < 11; y++) {
+      for (int x = 0; x < 23; x++) {
+        assertTrue(read.hasBomb(x, y) == cells.hasBomb(x, y));
+        assertTrue(read.getStatus(x, y) == cells.getStatus(x, y));
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testEvictedCells_otherSize() throws IOException {
+    Path file = directory.resolve("cells");
+    EvictedCells.write(new HeapCellStore(4, 4), file);
+
+    EvictedCells.read(file, new HeapCellStore(4, 5));
+  }
+
+  /* Board.evict ---------------------------------------------------------------------------------- */
+
+  @Test
+  public void testEvict_heapBoard() throws IOException {
+    assertEvictReloads(newBoard());
+  }
+
+  @Test
+  public void testEvict_mappedBoard() throws IOException {
+    Board board = Board.createMappedBoard(directory.resolve("mapped"), newBoard());
+
+    assertFalse(board.evict(directory.resolve("evicted")));
+    assertFalse(board.isEvicted());
+    assertTrue(board.estimateResidentBytes() == 15 * Board.MAPPED_BYTES_PER_SQUARE);
+  }
+
+  /* evictIdle ------------------------------------------------------------------------------------ */
+
+  @Test
+  public void testEvictIdle_idle() {
+    BoardEvictor evictor = new BoardEvictor(directory, 1_000_000, 0);
+    Board idle = Board.createBoard(4, 4, new BitSet());
+    Board used = Board.createBoard(4, 4, new BitSet());
+    evictor.watch(idle);
+    evictor.watch(used);
+
+    long now = used.getLastAccessNanos() + 1_000_000;
+    used.look();
+    int evicted = evictor.evictIdle(now);
+    evictor.close();
+
+    assertTrue(evicted == 1 && evictor.getEvictions() == 1);
+    assertTrue(idle.isEvicted());
+    assertFalse(used.isEvicted());
+  }
+
+  @Test
+  public void testEvictIdle_overBudget() {
+    // three boards of 100 squares on the heap, room for one and a half
+    BoardEvictor evictor = new BoardEvictor(directory, 0, 150 * Board.HEAP_BYTES_PER_SQUARE);
+    Board oldest = Board.createBoard(10, 10, new BitSet());
+    Board older = Board.createBoard(10, 10, new BitSet());
+    Board newest = Board.createBoard(10, 10, new BitSet());
+    Board unwatched = Board.createBoard(10, 10, new BitSet());
+    evictor.watch(oldest);
+    evictor.watch(older);
+    evictor.watch(newest);
+    evictor.watch(unwatched);
+    evictor.unwatch(unwatched);
+
+    oldest.look();
+    older.look();
+    newest.look();
+    unwatched.look();
+    int evicted = evictor.evictIdle(System.nanoTime());
+    evictor.close();
+
+    assertTrue(evicted == 2);
+    assertTrue(oldest.isEvicted() && older.isEvicted());
+    assertFalse(newest.isEvicted() || unwatched.isEvicted());
+    assertTrue(oldest.look().equals(newest.look()));
+  }
+
+  /* unwatch -------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testUnwatch_evicted() throws IOException {
+    BoardEvictor evictor = new BoardEvictor(directory, 1, 0);
+    Board board = newBoard();
+    Board copy = newBoard();
+    evictor.watch(board);
+    evictor.evictIdle(board.getLastAccessNanos() + 1);
+
+    assertTrue(board.isEvicted());
+    evictor.unwatch(board);
+    evictor.close();
+
+    assertFalse(board.isEvicted());
+    assertTrue(listFiles() == 0);
+    assertTrue(board.look().equals(copy.look()));
+  }
+
+  @Test
+  public void testUnwatch_duringEviction() throws Exception {
+    BoardEvictor evictor = new BoardEvictor(directory, 1, 0);
+    for (int round = 0; round < 200; round++) {
+      Board board = Board.createBoard(8, 8, new BitSet());
+      evictor.watch(board);
+      long later = board.getLastAccessNanos() + 1;
+      Thread evicting = new Thread(() -> evictor.evictIdle(later));
+      evicting.start();
+      evictor.unwatch(board);
+      evicting.join();
+
+      assertFalse(board.isEvicted());
+      assertTrue(listFiles() == 0);
+    }
+    evictor.close();
+  }
+
+  private long listFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  /**
+   * @return a 5x3 board with a flag and a dug area
+   */
+  private static Board newBoard() throws IOException {
+    Board board = Board.createCustomBoard(new BufferedReader(new StringReader(
+        "5 3\r\n0 0 0 1 0\r\n0 0 0 1 0\r\n1 0 0 0 0\r\n")));
+    board.flag(4, 0);
+    board.dig(0, 0);
+    return board;
+  }
+
+  /**
+   * Evicts a board and checks that it looks and plays like a copy that was never evicted.
+   */
+  private void assertEvictReloads(Board board) throws IOException {
+    Board copy = newBoard();
+    Path file = directory.resolve("evicted");
+
+    assertTrue(board.evict(file));
+    assertFalse(board.evict(directory.resolve("again")));
+    assertTrue(board.isEvicted() && board.estimateResidentBytes() == 0);
+    assertTrue(Files.exists(file));
+
+    assertTrue(board.look().equals(copy.look()));
+    assertFalse(board.isEvicted());
+    assertFalse(Files.exists(file));
+    assertTrue(board.status().equals(copy.status()));
+    assertTrue(board.dig(4, 2).equals(copy.dig(4, 2)));
+    assertTrue(board.deflag(4, 0).equals(copy.deflag(4, 0)));
+    assertTrue(board.getBombLayout().equals(copy.getBombLayout()));
+  }
+}
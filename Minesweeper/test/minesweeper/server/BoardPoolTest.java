@@ -0,0 +1,89 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.BoardPool class
+ */
+
+public class BoardPoolTest {
+
+  /* TEST STRATEGY:
+
+      prepare, take
+        prepared shape is filled in the background, taking a board counts a hit and refills it
+        shape that was not prepared is built on the taking thread
+        budget too small for a single board: nothing is pooled, boards are still handed out
+        boards are new, of the requested size and density, and never handed out twice
+
+ */
+
+  private static final long BUDGET = 64L * 1024 * 1024;
+  private static final long BYTES_PER_SQUARE = 40;
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* prepare, take ------------------------------------------------------------------------------------ */
+
+  @Test
+  public void testTake_prepared() throws InterruptedException {
+    BoardPool pool = new BoardPool(Board::createRandomBoard, 2, BUDGET, BYTES_PER_SQUARE);
+    pool.prepare(20, 10, 0.5);
+    awaitReady(pool, 20, 10, 0.5, 2);
+
+    Board first = pool.take(20, 10, 0.5);
+    Board second = pool.take(20, 10, 0.5);
+    awaitReady(pool, 20, 10, 0.5, 2);
+    pool.close();
+
+    assertTrue(first != second);
+    assertTrue(pool.getHits() == 2 && pool.getMisses() == 0);
+    assertTrue(first.getSizeX() == 20 && first.getSizeY() == 10);
+    assertTrue(first.status().equals("safe=100 flags=0 bombs=100 cleared=false"));
+    assertTrue(pool.getPooledBytes() == 2 * 20 * 10 * BYTES_PER_SQUARE);
+  }
+
+  @Test
+  public void testTake_notPrepared() {
+    BoardPool pool = new BoardPool(Board::createRandomBoard, 1, BUDGET, BYTES_PER_SQUARE);
+
+    Board board = pool.take(7, 3, 0);
+    pool.close();
+
+    assertTrue(pool.getHits() == 0 && pool.getMisses() == 1);
+    assertTrue(board.look().equals("-------\r\n-------\r\n-------\r\n"));
+    assertTrue(board.getSafeSquaresLeft() == 21);
+  }
+
+  @Test
+  public void testTake_overBudget() throws InterruptedException {
+    BoardPool pool = new BoardPool(Board::createRandomBoard, 3, 100, BYTES_PER_SQUARE);
+    pool.prepare(10, 10, 0.25);
+    Thread.sleep(100);
+
+    Board board = pool.take(10, 10, 0.25);
+    pool.close();
+
+    assertFalse(board == null);
+    assertTrue(pool.getReady(10, 10, 0.25) == 0);
+    assertTrue(pool.getPooledBytes() == 0);
+    assertTrue(pool.getMisses() == 1);
+  }
+
+  /**
+   * Waits up to ten seconds until the pool has a number of boards of a shape ready.
+   */
+  private static void awaitReady(BoardPool pool, int sizeX, int sizeY, double density, int ready)
+      throws InterruptedException {
+    for (int i = 0; i < 1000 && pool.getReady(sizeX, sizeY, density) < ready; i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(pool.getReady(sizeX, sizeY, density) == ready);
+  }
+}
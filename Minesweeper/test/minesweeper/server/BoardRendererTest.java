@@ -0,0 +1,116 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static minesweeper.server.Square.SquareStatus.DUG;
+import static minesweeper.server.Square.SquareStatus.FLAGGED;
+
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.BoardRenderer class
+ */
+
+public class BoardRendererTest {
+
+  /* TEST STRATEGY:
+
+      render
+        widths that are a multiple of 8, and widths with squares past the last multiple of 8
+        untouched, flagged and dug squares with 0 to 8 neighboring bombs in one row of 8
+        random games compared with rendering square by square from getSquaresArray
+
+ */
+
+  private static final int[] WIDTHS = {1, 7, 8, 13, 64, 70};
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* render ------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testRender_allGlyphs() {
+    // 3 rows of 10: bombs all around (1, 1), none around (8, 1)
+    BitSet bombs = new BitSet();
+    for (int x = 0; x < 3; x++) {
+      bombs.set(x);
+      bombs.set(20 + x);
+    }
+    bombs.set(10);
+    bombs.set(12);
+    Board board = Board.createBoard(10, 3, bombs);
+    board.flag(1, 1);
+
+    String flagged = board.dig(8, 1);
+    String dug = board.dig(1, 1);
+
+    assertTrue(flagged.equals("---2      \r\n-F-3      \r\n---2      \r\n"));
+    assertTrue(dug.equals("---2      \r\n-8-3      \r\n---2      \r\n"));
+    assertTrue(dug.equals(expectedLook(board)));
+  }
+
+  @Test
+  public void testRender_randomGames() {
+    Random random = new Random(11);
+    for (int sizeX : WIDTHS) {
+      for (int game = 0; game < 5; game++) {
+        int sizeY = 1 + random.nextInt(6);
+        BitSet bombs = new BitSet();
+        for (int i = 0; i < sizeX * sizeY; i++) {
+          if (random.nextInt(5) == 0) {
+            bombs.set(i);
+          }
+        }
+        Board board = Board.createBoard(sizeX, sizeY, bombs);
+        for (int move = 0; move < sizeX * sizeY / 3; move++) {
+          int x = random.nextInt(sizeX);
+          int y = random.nextInt(sizeY);
+          if (random.nextBoolean()) {
+            board.flag(x, y);
+          } else if (!bombs.get(y * sizeX + x)) {
+            board.dig(x, y);
+          }
+        }
+
+        String look = board.look();
+
+        assertTrue(look.equals(expectedLook(board)));
+      }
+    }
+  }
+
+  /**
+   * Renders a board square by square from its squares.
+   */
+  private static String expectedLook(Board board) {
+    Square[][] squares = board.getSquaresArray();
+    StringBuilder sb = new StringBuilder();
+    for (int y = 0; y < board.getSizeY(); y++) {
+      for (int x = 0; x < board.getSizeX(); x++) {
+        if (squares[y][x].getSquareStatus() == DUG) {
+          int count = 0;
+          for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+              int nx = x + dx;
+              int ny = y + dy;
+              if (nx >= 0 && nx < board.getSizeX() && ny >= 0 && ny < board.getSizeY()
+                  && squares[ny][nx].hasBomb()) {
+                count++;
+              }
+            }
+          }
+          sb.append(count == 0 ? " " : "" + count);
+        } else {
+          sb.append(squares[y][x].getSquareStatus() == FLAGGED ? "F" : "-");
+        }
+      }
+      sb.append("\r\n");
+    }
+    return sb.toString();
+  }
+
+}
@@ -4,6 +4,7 @@
 package minesweeper.server;
 
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
 import static minesweeper.server.Square.SquareStatus.DUG;
 import static minesweeper.server.Square.SquareStatus.FLAGGED;
 import static minesweeper.server.Square.SquareStatus.UNTOUCHED;
@@ -12,6 +13,9 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
 import java.util.Optional;
 import minesweeper.server.Square.SquareStatus;
 import org.junit.Test;
@@ -58,6 +62,50 @@ public class BoardTest {
         create board with configuration file
         create board with configuration file and check bomb placement
 
+      status
+        new board
+        flag and deflag change the number of flags
+        flag on a dug square does not change the number of flags
+        dig of a safe square counts the whole flood fill
+        dig of a bomb removes the bomb
+        board is cleared after the last safe square is dug
+        squares changed through getSquaresArray are counted
+
+      claimClearedAnnouncement
+        board not cleared
+        only the first claim on a cleared board succeeds
+
+      frontier
+        new board has an empty frontier
+        dig adds the dug squares next to squares that are not dug
+        squares leave the frontier when their last neighbor is dug
+        squares changed through getSquaresArray are counted
+
+      hint
+        nothing dug
+        numbers prove squares safe and mined
+
+      probabilities
+        rectangle partly off the board
+        dug squares and frontier squares
+
+      lookBuffer
+        same content as look, read-only and direct
+        later call starts at position 0, old buffers keep their content after a change
+        flag of a dug square does not change the version
+
+      reply buffer
+        flag, deflag and dig render into a large enough buffer and return it, same content as
+        the String replies
+        buffer too small is replaced, dig of a bomb returns null
+
+      components
+        dig reveals the whole region, including its flagged squares, in one step
+        flags outside the revealed region stay
+        exploded bomb is dug and is not crossed by a later dig
+        dug squares are DUG in getSquaresArray
+        region larger than the old recursive flood fill could handle
+
  */
 
   @Test(expected = AssertionError.class)
@@ -377,31 +425,314 @@ public class BoardTest {
     assertTrue(squares[2][2].hasBomb());
   }
 
-}
+  /* status  -------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testStatus_newBoard() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+
+    assertTrue("safe=4 flags=0 bombs=2 cleared=false".equals(board.status()));
+  }
+
+  @Test
+  public void testStatus_flagAndDeflag() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+
+    board.flag(0, 0);
+    board.flag(1, 0);
+    board.deflag(1, 0);
+    board.flag(0, 0);
+
+    assertTrue(board.getFlagsPlaced() == 1);
+    assertTrue(board.getSafeSquaresLeft() == 4);
+  }
+
+  @Test
+  public void testStatus_flagDugSquare() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
+
+    board.dig(0, 0);
+    board.flag(0, 0);
+
+    assertTrue(board.getFlagsPlaced() == 0);
+    assertTrue(board.getSafeSquaresLeft() == 1);
+  }
+
+  @Test
+  public void testStatus_floodFill() throws IOException {
+    Board board = createTestBoard("4 4\r\n0 0 0 0\r\n0 0 0 0\r\n0 0 0 0\r\n0 0 0 1\r\n");
+
+    board.dig(0, 0);
+
+    assertTrue(board.getSafeSquaresLeft() == 0);
+    assertTrue(board.isCleared());
+  }
+
+  @Test
+  public void testStatus_digBomb() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+
+    String reply = board.dig(0, 0);
+
+    assertTrue("BOOM".equals(reply));
+    assertTrue("safe=4 flags=0 bombs=1 cleared=false".equals(board.status()));
+  }
+
+  @Test
+  public void testStatus_cleared() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
 
+    board.dig(0, 0);
+    assertFalse(board.isCleared());
+    board.dig(2, 0);
+
+    assertTrue("safe=0 flags=0 bombs=1 cleared=true".equals(board.status()));
+  }
 
+  @Test
+  public void testStatus_changedThroughSquaresArray() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
 
+    Square[][] squares = board.getSquaresArray();
+    squares[0][0].setSquareStatus(DUG);
+    squares[0][1].setSquareStatus(FLAGGED);
 
+    assertTrue("safe=1 flags=1 bombs=1 cleared=false".equals(board.status()));
+  }
 
+  /* claimClearedAnnouncement  -------------------------------------------------------------------------------------- */
 
+  @Test
+  public void testClaimClearedAnnouncement_notCleared() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
 
+    board.dig(0, 0);
 
+    assertFalse(board.claimClearedAnnouncement());
+  }
+
+  @Test
+  public void testClaimClearedAnnouncement_onlyOnce() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
+
+    board.dig(0, 0);
+    board.dig(2, 0);
+
+    assertTrue(board.claimClearedAnnouncement());
+    assertFalse(board.claimClearedAnnouncement());
+  }
 
+  private static Board createTestBoard(String boardConfig) throws IOException {
+    return Board.createCustomBoard(new BufferedReader(new StringReader(boardConfig)));
+  }
 
+  /* frontier  -------------------------------------------------------------------------------------- */
 
+  @Test
+  public void testFrontier_newBoard() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
 
+    assertTrue(board.getFrontierSize() == 0);
+  }
 
+  @Test
+  public void testFrontier_dig() throws IOException {
+    Board board = createTestBoard("3 3\r\n0 0 0\r\n0 0 0\r\n0 0 1\r\n");
 
+    board.dig(0, 0);
 
+    // every dug square except the three that only touch dug squares
+    assertTrue(board.getFrontierSize() == 3);
+  }
 
+  @Test
+  public void testFrontier_lastNeighborDug() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
 
+    board.dig(0, 0);
+    assertTrue(board.getFrontierSize() == 1);
+    board.dig(1, 0);
+    assertTrue(board.getFrontierSize() == 1);
+    board.dig(2, 0);
 
+    assertTrue(board.getFrontierSize() == 0);
+  }
 
+  @Test
+  public void testFrontier_changedThroughSquaresArray() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
 
+    board.getSquaresArray()[0][2].setSquareStatus(DUG);
 
+    assertTrue(board.getFrontierSize() == 1);
+  }
 
+  /* hint  -------------------------------------------------------------------------------------- */
 
+  @Test
+  public void testHint_nothingDug() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
 
+    assertTrue("safe= mines=".equals(board.hint()));
+  }
 
+  @Test
+  public void testHint_safeAndMined() throws IOException {
+    Board board = createTestBoard("4 1\r\n0 1 0 0\r\n");
 
+    board.dig(0, 0);
 
+    // the 1 at 0,0 has a single neighbor that is not dug
+    assertTrue("safe= mines=1,0".equals(board.hint()));
+    board.dig(3, 0);
+    // the 1 at 2,0 is explained by the bomb at 1,0
+    assertTrue("safe= mines=1,0".equals(board.hint()));
+  }
+
+  /* probabilities  -------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testProbabilities_clipped() throws IOException {
+    Board board = createTestBoard("2 2\r\n0 0\r\n0 1\r\n");
+
+    assertTrue("25\r\nexact=true\r\n".equals(board.probabilities(1, -1, 5, 2)));
+  }
+
+  @Test
+  public void testProbabilities_frontier() throws IOException {
+    Board board = createTestBoard("4 1\r\n0 1 0 0\r\n");
+
+    board.dig(3, 0);
+
+    // the 1 at 2,0 has a single neighbor that is not dug, which holds the only bomb
+    assertTrue("0 100 . .\r\nexact=true\r\n".equals(board.probabilities(0, 0, 4, 1)));
+  }
+
+  /* lookBuffer  -------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testLookBuffer_sameAsLook() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    board.flag(0, 0);
+
+    ByteBuffer buffer = board.lookBuffer();
+
+    assertTrue(buffer.isReadOnly());
+    assertTrue(buffer.isDirect());
+    assertTrue(StandardCharsets.US_ASCII.decode(buffer).toString().equals(board.look()));
+  }
+
+  @Test
+  public void testLookBuffer_versions() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+
+    ByteBuffer first = board.lookBuffer();
+    long version = board.getVersion();
+    first.get();
+    ByteBuffer second = board.lookBuffer();
+    board.flag(1, 1);
+    ByteBuffer third = board.lookBuffer();
+
+    assertTrue(second.position() == 0);
+    assertTrue(board.getVersion() != version);
+    assertTrue("---\r\n-F-\r\n".equals(StandardCharsets.US_ASCII.decode(third).toString()));
+    assertTrue("---\r\n---\r\n".equals(StandardCharsets.US_ASCII.decode(second).toString()));
+  }
+
+  @Test
+  public void testLookBuffer_unchangedVersion() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
+    board.dig(0, 0);
+    long version = board.getVersion();
+
+    board.flag(0, 0);
+    board.deflag(2, 0);
+
+    assertTrue(board.getVersion() == version);
+  }
+
+  /* reply buffer  -------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testReplyBuffer_reused() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    Board expected = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+
+    ByteBuffer flagged = board.flag(0, 0, buffer);
+    ByteBuffer dug = board.dig(1, 0, buffer);
+    ByteBuffer deflagged = board.deflag(0, 0, buffer);
+
+    expected.flag(0, 0);
+    expected.dig(1, 0);
+    assertTrue(flagged == buffer && dug == buffer && deflagged == buffer);
+    assertTrue(buffer.position() == 0);
+    assertTrue(StandardCharsets.US_ASCII.decode(buffer).toString()
+        .equals(expected.deflag(0, 0)));
+  }
+
+  @Test
+  public void testReplyBuffer_tooSmall() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+
+    ByteBuffer flagged = board.flag(1, 1, buffer);
+    ByteBuffer exploded = board.dig(0, 0, flagged);
+
+    assertTrue(flagged != buffer);
+    assertTrue("---\r\n-F-\r\n".equals(StandardCharsets.US_ASCII.decode(flagged).toString()));
+    assertTrue(exploded == null);
+  }
+
+  /* components  -------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testComponents_revealWithFlags() throws IOException {
+    Board board = createTestBoard("5 1\r\n0 0 0 1 0\r\n");
+    board.flag(1, 0);
+    board.flag(4, 0);
+
+    String reply = board.dig(0, 0);
+
+    assertTrue("  1--\r\n".equals(reply.replace("F", "-")));
+    assertTrue(reply.endsWith("F\r\n"));
+    assertTrue("safe=1 flags=1 bombs=1 cleared=false".equals(board.status()));
+  }
+
+  @Test
+  public void testComponents_explodedBomb() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
+
+    assertTrue("BOOM".equals(board.dig(1, 0)));
+    String reply = board.dig(0, 0);
+
+    assertTrue("  -\r\n".equals(reply));
+    assertTrue("safe=1 flags=0 bombs=0 cleared=false".equals(board.status()));
+    assertTrue(board.getFrontierSize() == 1);
+  }
+
+  @Test
+  public void testComponents_getSquaresArray() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 0 1\r\n");
+    board.flag(0, 0);
+    board.dig(1, 0);
+
+    Square[][] squares = board.getSquaresArray();
+
+    assertTrue(squares[0][0].getSquareStatus() == DUG);
+    assertTrue(squares[0][1].getSquareStatus() == DUG);
+    assertTrue(squares[0][2].getSquareStatus() == UNTOUCHED);
+    assertTrue("safe=0 flags=0 bombs=1 cleared=true".equals(board.status()));
+  }
+
+  @Test
+  public void testComponents_largeRegion() {
+    Board board = Board.createBoard(300, 300, new BitSet());
+
+    board.dig(150, 150);
+
+    assertTrue(board.isCleared());
+    assertTrue(board.getFrontierSize() == 0);
+  }
+
+}
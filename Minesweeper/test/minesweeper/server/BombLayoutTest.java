@@ -0,0 +1,134 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.BombLayout class and the games played on it
+ */
+
+public class BombLayoutTest {
+
+  /* TEST STRATEGY:
+
+      create, random
+        given bombs, bits beyond the board ignored; random layout has density * squares bombs
+
+      Board.createBoard(BombLayout)
+        game plays exactly like a board built from the same bombs
+        flags and digs of one game are not seen by another game on the same layout
+        exploding a bomb copies the bombs of that game only; other games still have the bomb
+          and its neighbor counts
+        game is not evicted
+
+ */
+
+  // 4x3, bombs at (1, 0) and (3, 2)
+  private static final int SIZE_X = 4;
+  private static final int SIZE_Y = 3;
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* create, random ----------------------------------------------------------------------------- */
+
+  @Test
+  public void testCreate_bombs() {
+    BitSet bombs = bombs();
+    bombs.set(SIZE_X * SIZE_Y + 5);
+
+    BombLayout layout = BombLayout.create(SIZE_X, SIZE_Y, bombs);
+
+    assertTrue(layout.getBombCount() == 2);
+    assertTrue(Board.createBoard(layout).getBombLayout().equals(bombs()));
+  }
+
+  @Test
+  public void testRandom_density() {
+    BombLayout layout = BombLayout.random(20, 10, 0.25);
+
+    assertTrue(layout.getBombCount() == 50);
+    assertTrue(Board.createBoard(layout).status().equals(
+        "safe=150 flags=0 bombs=50 cleared=false"));
+  }
+
+  /* Board.createBoard(BombLayout) --------------------------------------------------------------- */
+
+  @Test
+  public void testCreateBoard_playsLikeOwnBoard() {
+    Board shared = Board.createBoard(BombLayout.create(SIZE_X, SIZE_Y, bombs()));
+    Board own = Board.createBoard(SIZE_X, SIZE_Y, bombs());
+
+    assertTrue(shared.look().equals(own.look()));
+    assertTrue(shared.flag(3, 2).equals(own.flag(3, 2)));
+    assertTrue(shared.dig(0, 2).equals(own.dig(0, 2)));
+    assertTrue(shared.status().equals(own.status()));
+    assertTrue(shared.deflag(3, 2).equals(own.deflag(3, 2)));
+    assertTrue(shared.dig(1, 0).equals(own.dig(1, 0)));
+    assertTrue(shared.look().equals(own.look()));
+    assertTrue(shared.getBombLayout().equals(own.getBombLayout()));
+  }
+
+  @Test
+  public void testCreateBoard_gamesIndependent() {
+    BombLayout layout = BombLayout.create(SIZE_X, SIZE_Y, bombs());
+    Board first = Board.createBoard(layout);
+    Board second = Board.createBoard(layout);
+
+    first.flag(1, 0);
+    first.dig(0, 2);
+
+    assertTrue(second.look().equals("----\r\n----\r\n----\r\n"));
+    assertTrue(second.status().equals("safe=10 flags=0 bombs=2 cleared=false"));
+    assertTrue(first.status().equals("safe=0 flags=1 bombs=2 cleared=true"));
+  }
+
+  @Test
+  public void testCreateBoard_explosionCopies() {
+    BombLayout layout = BombLayout.create(SIZE_X, SIZE_Y, bombs());
+    Board first = Board.createBoard(layout);
+    Board second = Board.createBoard(layout);
+    OverlayCellStore cells = layout.newCells();
+
+    assertTrue(cells.isSharingBombs());
+    assertTrue("BOOM".equals(first.dig(1, 0)));
+    cells.setBomb(1, 0, false);
+
+    assertFalse(cells.isSharingBombs());
+    assertTrue(layout.newCells().hasBomb(1, 0));
+    assertTrue(first.getBombLayout().cardinality() == 1);
+    assertTrue(second.getBombLayout().equals(bombs()));
+    // the neighbors of (1, 0) lost a bomb on the first board only
+    first.dig(0, 2);
+    second.dig(0, 2);
+    assertTrue(first.look().equals("    \r\n  11\r\n  1-\r\n"));
+    assertTrue(second.look().equals("1-1 \r\n1121\r\n  1-\r\n"));
+    assertTrue("BOOM".equals(second.dig(1, 0)));
+  }
+
+  @Test
+  public void testCreateBoard_notEvicted() throws IOException {
+    Board board = Board.createBoard(BombLayout.create(SIZE_X, SIZE_Y, bombs()));
+    Path file = Files.createTempFile("layout-test", ".msev");
+
+    assertFalse(board.evict(file));
+    Files.delete(file);
+
+    assertFalse(board.isEvicted());
+  }
+
+  private static BitSet bombs() {
+    BitSet bombs = new BitSet();
+    bombs.set(1);
+    bombs.set(2 * SIZE_X + 3);
+    return bombs;
+  }
+}
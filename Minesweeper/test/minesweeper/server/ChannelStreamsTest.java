@@ -0,0 +1,111 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.ChannelStreams class, over a Unix domain socket
+ */
+
+public class ChannelStreamsTest {
+
+  /* TEST STRATEGY:
+
+      input, output
+        bytes written to one end are read at the other, single bytes and arrays; end of stream
+          once the other end closes
+        write while another thread is blocked reading the same channel does not wait for it
+
+ */
+
+  private Path directory;
+  private SocketChannel client;
+  private SocketChannel server;
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  @Before
+  public void connect() throws IOException {
+    directory = Files.createTempDirectory("channel-streams-test");
+    UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("socket"));
+    try (ServerSocketChannel listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      listener.bind(address);
+      client = SocketChannel.open(address);
+      server = listener.accept();
+    }
+  }
+
+  @After
+  public void close() throws IOException {
+    client.close();
+    server.close();
+    Files.deleteIfExists(directory.resolve("socket"));
+    Files.delete(directory);
+  }
+
+  /* input, output ------------------------------------------------------------------------------ */
+
+  @Test
+  public void testStreams_roundTrip() throws IOException {
+    OutputStream out = ChannelStreams.output(server);
+    InputStream in = ChannelStreams.input(client);
+
+    out.write('l');
+    out.write("ook\n".getBytes("US-ASCII"));
+    byte[] rest = new byte[4];
+
+    assertTrue(in.read() == 'l');
+    assertTrue(in.readNBytes(rest, 0, 4) == 4 && new String(rest, "US-ASCII").equals("ook\n"));
+    out.close();
+    assertTrue(in.read() == -1);
+  }
+
+  @Test
+  public void testStreams_writeWhileReading() throws Exception {
+    InputStream in = ChannelStreams.input(server);
+    OutputStream out = ChannelStreams.output(server);
+    Thread reader = new Thread(() -> {
+      try {
+        in.read();
+      } catch (IOException e) {
+        // closed by close()
+      }
+    });
+    reader.start();
+    Thread.sleep(100);
+
+    Thread writer = new Thread(() -> {
+      try {
+        out.write("Notice: hello\n".getBytes("US-ASCII"));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    writer.start();
+    writer.join(5000);
+
+    assertFalse(writer.isAlive());
+    assertTrue(reader.isAlive());
+    assertTrue(ChannelStreams.input(client).read() == 'N');
+    client.write(ByteBuffer.wrap(new byte[] {'x'}));
+    reader.join(5000);
+    assertFalse(reader.isAlive());
+  }
+}
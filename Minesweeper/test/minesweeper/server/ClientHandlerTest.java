@@ -0,0 +1,273 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.ClientHandler class in framed mode, with several
+ * sessions on one connection over a Unix domain socket
+ */
+
+public class ClientHandlerTest {
+
+  /* TEST STRATEGY:
+
+      runMultiplexed
+        frame without id, frame with id 0: "Invalid frame." from session 0, connection stays open
+        first frame of an id: welcome of its own, then the reply
+        operand too large for an int: "Invalid command.", connection stays open
+        look: reply written with a gathering write, header gives the byte length of the board
+        more than MULTIPLEX_MAX_SESSIONS ids: the extra id is refused until a session closes
+        id reused after bye, after BOOM with debug off: new session with a new welcome
+        notice: sent once to every session, in a frame with its id
+        commands of two sessions arriving together: executed in turn
+
+ */
+
+  private static final String BOARD = "4 3\r\n1 0 0 0\r\n0 0 0 0\r\n0 0 0 1\r\n";
+  private static final String FRESH_STATUS = "safe=10 flags=0 bombs=2 cleared=false";
+
+  private Path directory;
+  private SocketChannel client;
+  private Thread handler;
+  private InputStream in;
+  private OutputStream out;
+  private Board previousBoard;
+  private boolean previousDebug;
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  @Before
+  public void connect() throws IOException {
+    previousBoard = MinesweeperServer.board;
+    previousDebug = MinesweeperServer.debug;
+    MinesweeperServer.board = Board.createCustomBoard(new BufferedReader(new StringReader(BOARD)));
+    MinesweeperServer.debug = false;
+    directory = Files.createTempDirectory("client-handler-test");
+    UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("socket"));
+    try (ServerSocketChannel listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      listener.bind(address);
+      client = SocketChannel.open(address);
+      handler = new Thread(new ClientHandler(listener.accept(), "client-handler-test"));
+    }
+    handler.start();
+    in = new BufferedInputStream(ChannelStreams.input(client));
+    out = ChannelStreams.output(client);
+    assertTrue(readLine().startsWith("Welcome to Minesweeper."));
+    send(ClientHandler.MULTIPLEX_COMMAND);
+    assertTrue(readLine().equals("Multiplexing sessions."));
+  }
+
+  @After
+  public void close() throws Exception {
+    client.close();
+    handler.join(10000);
+    MinesweeperServer.board = previousBoard;
+    MinesweeperServer.debug = previousDebug;
+    Files.deleteIfExists(directory.resolve("socket"));
+    Files.delete(directory);
+  }
+
+  /* runMultiplexed ----------------------------------------------------------------------------- */
+
+  @Test(timeout = 10000)
+  public void testMultiplex_invalidFrame() throws IOException {
+    send("look", "0 look", "1 status");
+
+    assertFrame(readFrame(), 0, "Invalid frame.");
+    assertFrame(readFrame(), 0, "Invalid frame.");
+    assertWelcome(readFrame(), 1);
+    assertFrame(readFrame(), 1, FRESH_STATUS);
+  }
+
+  @Test(timeout = 10000)
+  public void testMultiplex_operandOverflow() throws IOException {
+    send("1 dig 99999999999 0", "1 probabilities 0 0 99999999999 1", "1 status");
+
+    assertWelcome(readFrame(), 1);
+    assertFrame(readFrame(), 1, "Invalid command.");
+    assertFrame(readFrame(), 1, "Invalid command.");
+    assertFrame(readFrame(), 1, FRESH_STATUS);
+  }
+
+  @Test(timeout = 10000)
+  public void testMultiplex_look() throws IOException {
+    String board = MinesweeperServer.board.look();
+    send("1 look", "2 flag 0 0", "2 look");
+
+    assertWelcome(readFrame(), 1);
+    assertFrame(readFrame(), 1, board);
+    assertWelcome(readFrame(), 2);
+    Frame flagged = readFrame();
+    assertFrame(readFrame(), 2, flagged.message);
+    assertTrue(flagged.id == 2 && flagged.message.startsWith("F---"));
+  }
+
+  @Test(timeout = 10000)
+  public void testMultiplex_maxSessions() throws IOException {
+    int max = ServerConfig.MULTIPLEX_MAX_SESSIONS;
+    String[] lines = new String[max + 1];
+    for (int id = 1; id <= max + 1; id++) {
+      lines[id - 1] = id + " help";
+    }
+    send(lines);
+
+    for (int id = 1; id <= max; id++) {
+      assertWelcome(readFrame(), id);
+      assertTrue(readFrame().id == id);
+    }
+    assertFrame(readFrame(), max + 1, "Too many sessions on this connection.");
+    send("1 bye", (max + 1) + " bye");
+    assertFrame(readFrame(), 1, "Bye now!");
+    assertWelcome(readFrame(), max + 1);
+    assertFrame(readFrame(), max + 1, "Bye now!");
+  }
+
+  @Test(timeout = 10000)
+  public void testMultiplex_reopenAfterBye() throws IOException {
+    send("1 bye", "1 status");
+
+    assertWelcome(readFrame(), 1);
+    assertFrame(readFrame(), 1, "Bye now!");
+    assertWelcome(readFrame(), 1);
+    assertFrame(readFrame(), 1, FRESH_STATUS);
+  }
+
+  @Test(timeout = 10000)
+  public void testMultiplex_reopenAfterBoom() throws IOException {
+    send("1 dig 0 0", "2 status", "1 status");
+
+    assertWelcome(readFrame(), 1);
+    assertFrame(readFrame(), 1, "BOOM!!");
+    assertWelcome(readFrame(), 2);
+    assertFrame(readFrame(), 2, MinesweeperServer.board.status());
+    assertWelcome(readFrame(), 1);
+    assertFrame(readFrame(), 1, MinesweeperServer.board.status());
+  }
+
+  @Test(timeout = 10000)
+  public void testMultiplex_notice() throws IOException {
+    send("1 status", "2 status");
+    for (int i = 0; i < 4; i++) {
+      readFrame();
+    }
+    String notice = ClientHandler.NOTICE_PREFIX + "client handler test";
+
+    MinesweeperServer.sessions.broadcast(notice);
+
+    Set<Long> ids = new HashSet<>();
+    for (int i = 0; i < 2; i++) {
+      Frame frame = readFrame();
+      assertTrue(frame.message.equals(notice));
+      ids.add(frame.id);
+    }
+    assertTrue(ids.contains(1L) && ids.contains(2L));
+    send("1 status");
+    assertFrame(readFrame(), 1, FRESH_STATUS);
+  }
+
+  @Test(timeout = 10000)
+  public void testMultiplex_turns() throws IOException {
+    send("1 status", "2 status");
+    for (int i = 0; i < 4; i++) {
+      readFrame();
+    }
+
+    send("1 status", "1 status", "1 status", "2 status", "2 status", "2 status");
+
+    long[] expected = {1, 2, 1, 2, 1, 2};
+    for (long id : expected) {
+      assertFrame(readFrame(), id, FRESH_STATUS);
+    }
+  }
+
+  /**
+   * A message of one session in framed mode.
+   */
+  private static final class Frame {
+
+    private final long id;
+    private final String message;
+
+    private Frame(long id, String message) {
+      this.id = id;
+      this.message = message;
+    }
+  }
+
+  private static void assertFrame(Frame frame, long id, String message) {
+    assertTrue("frame " + frame.id + " " + frame.message, frame.id == id);
+    assertTrue("frame " + frame.id + " " + frame.message, frame.message.equals(message));
+  }
+
+  private static void assertWelcome(Frame frame, long id) {
+    assertTrue("frame " + frame.id + " " + frame.message, frame.id == id);
+    assertTrue(frame.message.startsWith("Welcome to Minesweeper."));
+    assertTrue(frame.message.contains("Board: 4 columns by 3 rows."));
+  }
+
+  /**
+   * Sends lines to the server in a single write.
+   */
+  private void send(String... lines) throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (String line : lines) {
+      text.append(line).append('\n');
+    }
+    out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * @return the next line from the server, without its line terminator
+   */
+  private String readLine() throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    for (int b = in.read(); b != '\n'; b = in.read()) {
+      if (b < 0) {
+        throw new EOFException();
+      }
+      if (b != '\r') {
+        line.write(b);
+      }
+    }
+    return line.toString(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * @return the next frame from the server; checks that its header gives its length
+   */
+  private Frame readFrame() throws IOException {
+    String[] header = readLine().split(" ");
+    assertTrue(header.length == 2);
+    byte[] message = in.readNBytes(Integer.parseInt(header[1]));
+    byte[] separator = in.readNBytes(System.lineSeparator().length());
+    assertTrue(new String(separator, StandardCharsets.US_ASCII).equals(System.lineSeparator()));
+    assertFalse(message.length < Integer.parseInt(header[1]));
+    return new Frame(Long.parseLong(header[0]), new String(message, StandardCharsets.US_ASCII));
+  }
+
+}
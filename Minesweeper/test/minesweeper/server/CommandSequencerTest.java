@@ -0,0 +1,164 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.CommandSequencer class
+ */
+
+public class CommandSequencerTest {
+
+  /* TEST STRATEGY:
+
+      execute
+        flag, dig and deflag replies are the same as the replies of the board's own methods
+        reply buffer is reused
+        dig of a bomb returns null
+        command that is not sequenced
+        after close
+        board throws an Error: rethrown to the client, later commands are still applied
+        many threads with more commands than slots: every command applied exactly once, in
+        batches
+
+ */
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* execute ------------------------------------------------------------------------------------------ */
+
+  @Test
+  public void testExecute_sameAsBoard() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    Board expected = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    CommandSequencer sequencer = new CommandSequencer(board, 4);
+    CommandSequencer.Request request = new CommandSequencer.Request();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+
+    ByteBuffer flagged = sequencer.execute(request, 1, Command.FLAG, 0, 0, buffer);
+    String flagReply = StandardCharsets.US_ASCII.decode(flagged).toString();
+    ByteBuffer dug = sequencer.execute(request, 1, Command.DIG, 1, 0, flagged);
+    String digReply = StandardCharsets.US_ASCII.decode(dug).toString();
+    ByteBuffer deflagged = sequencer.execute(request, 1, Command.DEFLAG, 0, 0, dug);
+    sequencer.close();
+
+    assertTrue(flagged == buffer && dug == buffer && deflagged == buffer);
+    assertTrue(flagReply.equals(expected.flag(0, 0)));
+    assertTrue(digReply.equals(expected.dig(1, 0)));
+    assertTrue(StandardCharsets.US_ASCII.decode(deflagged).toString()
+        .equals(expected.deflag(0, 0)));
+    assertTrue(sequencer.getApplied() == 3);
+  }
+
+  @Test
+  public void testExecute_boom() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    CommandSequencer sequencer = new CommandSequencer(board, 1);
+
+    ByteBuffer reply = sequencer.execute(new CommandSequencer.Request(), 1, Command.DIG, 0, 0,
+        ByteBuffer.allocate(0));
+    sequencer.close();
+
+    assertTrue(reply == null);
+    assertTrue(board.look().equals(" --\r\n---\r\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExecute_notSequenced() throws IOException {
+    CommandSequencer sequencer = new CommandSequencer(createTestBoard("1 1\r\n0\r\n"), 2);
+    try {
+      sequencer.execute(new CommandSequencer.Request(), 1, Command.LOOK, 0, 0, null);
+    } finally {
+      sequencer.close();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testExecute_closed() throws IOException {
+    CommandSequencer sequencer = new CommandSequencer(createTestBoard("1 1\r\n0\r\n"), 2);
+    sequencer.close();
+
+    sequencer.execute(new CommandSequencer.Request(), 1, Command.FLAG, 0, 0, null);
+  }
+
+  @Test
+  public void testExecute_boardThrowsError() {
+    Board board = new Board(2, 1) {
+      @Override
+      ByteBuffer flag(int x, int y, ByteBuffer reply) {
+        if (x == 1) {
+          throw new StackOverflowError();
+        }
+        return super.flag(x, y, reply);
+      }
+    };
+    CommandSequencer sequencer = new CommandSequencer(board, 2);
+    CommandSequencer.Request request = new CommandSequencer.Request();
+
+    boolean rethrown = false;
+    try {
+      sequencer.execute(request, 1, Command.FLAG, 1, 0, null);
+    } catch (StackOverflowError e) {
+      rethrown = true;
+    }
+    ByteBuffer reply = sequencer.execute(request, 1, Command.FLAG, 0, 0, null);
+    sequencer.close();
+
+    assertTrue(rethrown);
+    assertTrue(reply.get(0) == 'F');
+    assertTrue(sequencer.getApplied() == 2);
+  }
+
+  @Test
+  public void testExecute_manyThreads() throws InterruptedException {
+    final int threads = 6;
+    final int rounds = 500;
+    Board board = Board.createBoard(threads, 1, new BitSet());
+    CommandSequencer sequencer = new CommandSequencer(board, 3);
+    AtomicBoolean failed = new AtomicBoolean();
+    Thread[] clients = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      final int x = i;
+      clients[i] = new Thread(() -> {
+        CommandSequencer.Request request = new CommandSequencer.Request();
+        ByteBuffer buffer = ByteBuffer.allocate(0);
+        for (int round = 0; round < rounds; round++) {
+          buffer = sequencer.execute(request, 1, Command.FLAG, x, 0, buffer);
+          if (buffer.get(x) != 'F') {
+            failed.set(true);
+          }
+          buffer = sequencer.execute(request, 1, Command.DEFLAG, x, 0, buffer);
+          if (buffer.get(x) != '-') {
+            failed.set(true);
+          }
+        }
+      });
+      clients[i].start();
+    }
+    for (Thread client : clients) {
+      client.join();
+    }
+    sequencer.close();
+
+    assertFalse(failed.get());
+    assertTrue(board.look().equals("------\r\n"));
+    assertTrue(sequencer.getApplied() == 2L * threads * rounds);
+    assertTrue(sequencer.getBatches() > 0 && sequencer.getBatches() <= sequencer.getApplied());
+  }
+
+  private static Board createTestBoard(String boardConfig) throws IOException {
+    return Board.createCustomBoard(new BufferedReader(new StringReader(boardConfig)));
+  }
+}
@@ -0,0 +1,111 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static minesweeper.server.Square.SquareStatus.DUG;
+import static minesweeper.server.Square.SquareStatus.FLAGGED;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.Components class
+ */
+
+public class ComponentsTest {
+
+  /* TEST STRATEGY:
+
+      build
+        bombs split a row into components, dug squares are revealed components of their own
+        flags are counted per component
+        parallel fill and union-find label the same components
+          sparse board with one large component, levels larger than a fill task
+          dense board with many small components
+
+ */
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* build ----------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testBuild_row() {
+    Square[][] squares = squares(5, 1, new Random(1), 0);
+    squares[0][2].placeBomb();
+    squares[0][4].setSquareStatus(DUG);
+
+    Components components = Components.build(new HeapCellStore(squares));
+
+    assertTrue(components.componentOf(0) == components.componentOf(1));
+    assertTrue(components.componentOf(2) == -1);
+    assertTrue(components.componentOf(3) != components.componentOf(4));
+    assertTrue(components.size(components.componentOf(0)) == 2);
+    assertFalse(components.isDug(3));
+    assertTrue(components.isDug(4));
+  }
+
+  @Test
+  public void testBuild_flags() {
+    Square[][] squares = squares(3, 1, new Random(1), 0);
+    squares[0][0].setSquareStatus(FLAGGED);
+
+    Components components = Components.build(new HeapCellStore(squares));
+    components.reveal(components.componentOf(1));
+
+    assertTrue(components.flags(components.componentOf(1)) == 0);
+    assertTrue(components.isDug(0));
+  }
+
+  @Test
+  public void testBuild_parallelSparse() {
+    Square[][] squares = squares(200, 150, new Random(42), 0.02);
+
+    assertSameComponents(squares, 200, 150);
+  }
+
+  @Test
+  public void testBuild_parallelDense() {
+    Square[][] squares = squares(120, 90, new Random(7), 0.3);
+    squares[10][10].setSquareStatus(DUG);
+
+    assertSameComponents(squares, 120, 90);
+  }
+
+  private static void assertSameComponents(Square[][] squares, int sizeX, int sizeY) {
+    Components sequential = Components.build(new HeapCellStore(squares));
+    Components parallel =
+        Components.build(new HeapCellStore(squares), ForkJoinPool.commonPool(), 0);
+    Map<Integer, Integer> sequentialToParallel = new HashMap<>();
+    Map<Integer, Integer> parallelToSequential = new HashMap<>();
+    for (int i = 0; i < sizeX * sizeY; i++) {
+      int s = sequential.componentOf(i);
+      int p = parallel.componentOf(i);
+      assertTrue((s < 0) == (p < 0));
+      assertTrue(sequentialToParallel.computeIfAbsent(s, k -> p) == p);
+      assertTrue(parallelToSequential.computeIfAbsent(p, k -> s) == s);
+      assertTrue(s < 0 || sequential.size(s) == parallel.size(p));
+      assertTrue(sequential.isDug(i) == parallel.isDug(i));
+    }
+  }
+
+  private static Square[][] squares(int sizeX, int sizeY, Random random, double density) {
+    Square[][] squares = new Square[sizeY][sizeX];
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        squares[y][x] = new Square();
+        if (random.nextDouble() < density) {
+          squares[y][x].placeBomb();
+        }
+      }
+    }
+    return squares;
+  }
+
+}
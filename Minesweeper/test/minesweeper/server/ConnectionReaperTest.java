@@ -0,0 +1,105 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.ConnectionReaper class
+ */
+
+public class ConnectionReaperTest {
+
+  /* TEST STRATEGY:
+
+      scan
+        active connection is not closed
+        idle connection is closed
+        idle timeout 0 never closes an idle connection
+        connection blocked in a write longer than the write timeout is closed
+        unwatched connection is not closed
+
+ */
+
+  private static final long LONG_TIMEOUT = TimeUnit.HOURS.toNanos(1);
+  private static final long SHORT_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* scan ------------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testScan_activeConnection() {
+    ConnectionReaper reaper = new ConnectionReaper(LONG_TIMEOUT, LONG_TIMEOUT);
+    AtomicBoolean closed = new AtomicBoolean();
+    ConnectionReaper.Watch watch = reaper.watch(() -> closed.set(true));
+
+    watch.activity();
+    reaper.scan();
+
+    assertFalse(closed.get());
+    assertFalse(watch.isReaped());
+  }
+
+  @Test
+  public void testScan_idleConnection() throws InterruptedException {
+    ConnectionReaper reaper = new ConnectionReaper(SHORT_TIMEOUT, LONG_TIMEOUT);
+    AtomicBoolean closed = new AtomicBoolean();
+    ConnectionReaper.Watch watch = reaper.watch(() -> closed.set(true));
+
+    Thread.sleep(5);
+    reaper.scan();
+
+    assertTrue(closed.get());
+    assertTrue(watch.isReaped());
+    assertTrue(reaper.getIdleDisconnects() == 1);
+  }
+
+  @Test
+  public void testScan_idleTimeoutDisabled() throws InterruptedException {
+    ConnectionReaper reaper = new ConnectionReaper(0, SHORT_TIMEOUT);
+    AtomicBoolean closed = new AtomicBoolean();
+    reaper.watch(() -> closed.set(true));
+
+    Thread.sleep(5);
+    reaper.scan();
+
+    assertFalse(closed.get());
+  }
+
+  @Test
+  public void testScan_blockedWrite() throws InterruptedException {
+    ConnectionReaper reaper = new ConnectionReaper(LONG_TIMEOUT, SHORT_TIMEOUT);
+    AtomicBoolean closed = new AtomicBoolean();
+    ConnectionReaper.Watch watch = reaper.watch(() -> closed.set(true));
+
+    watch.writeStarted();
+    Thread.sleep(5);
+    reaper.scan();
+
+    assertTrue(closed.get());
+    assertTrue(reaper.getSlowClientDisconnects() == 1);
+  }
+
+  @Test
+  public void testScan_unwatchedConnection() throws InterruptedException {
+    ConnectionReaper reaper = new ConnectionReaper(SHORT_TIMEOUT, SHORT_TIMEOUT);
+    AtomicBoolean closed = new AtomicBoolean();
+    Closeable connection = () -> closed.set(true);
+    ConnectionReaper.Watch watch = reaper.watch(connection);
+
+    reaper.unwatch(watch);
+    Thread.sleep(5);
+    reaper.scan();
+
+    assertFalse(closed.get());
+  }
+
+}
@@ -0,0 +1,488 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.EventLog and minesweeper.server.EventLogReplay classes
+ */
+
+public class EventLogTest {
+
+  /* TEST STRATEGY:
+
+      varint
+        0, one byte maximum, multi byte value, negative long (10 bytes)
+
+      Reader
+        header holds the board size and bomb layout
+        records hold session id, command and negative and positive operands
+        time increases monotonically
+        file that is not an event log
+
+      constructor
+        board with a flagged square, board with a dug square: refused, no file created
+
+      record
+        record after close is dropped
+        moves that do not fit in a full queue: replaced by a gap, other commands dropped without
+          one; EventLogReplay.read refuses the log
+
+      EventLogReplay.replay
+        replayed board matches the board the commands were logged from
+        concurrent conflicting moves of several clients, handled by ClientHandler and by the
+          CommandSequencer: replayed board matches the live board
+
+ */
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* varint ------------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testVarint_roundTrip() throws IOException {
+    long[] values = {0, 127, 128, 300, Integer.MAX_VALUE, -1L};
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (long value : values) {
+      EventLog.writeVarint(out, value);
+    }
+    byte[] bytes = out.toByteArray();
+    ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+
+    for (long value : values) {
+      assertTrue(EventLog.readVarint(in) == value);
+    }
+    assertTrue(bytes.length == 1 + 1 + 2 + 2 + 5 + 10);
+  }
+
+  /* Reader ------------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testReader_header() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    Path path = newLogPath();
+    new EventLog(path, board, 16).close();
+
+    try (EventLog.Reader reader = new EventLog.Reader(path)) {
+      assertTrue(reader.getSizeX() == 3);
+      assertTrue(reader.getSizeY() == 2);
+      assertTrue(reader.getBombs().equals(board.getBombLayout()));
+      assertFalse(reader.next());
+    }
+  }
+
+  @Test
+  public void testReader_records() throws IOException {
+    Board board = createTestBoard("3 2\r\n1 0 0\r\n0 0 1\r\n");
+    Path path = newLogPath();
+    EventLog log = new EventLog(path, board, 16);
+    log.record(7, Command.LOOK, new int[0]);
+    log.record(300, Command.DIG, new int[] {-5, 2});
+    log.record(8, Command.PROBABILITIES, new int[] {0, -1, 1000, Integer.MAX_VALUE});
+    log.close();
+
+    try (EventLog.Reader reader = new EventLog.Reader(path)) {
+      assertTrue(reader.next());
+      assertTrue(reader.getSessionId() == 7 && reader.getCommand() == Command.LOOK);
+      long time = reader.getTimeMicros();
+      assertTrue(reader.next());
+      assertTrue(reader.getSessionId() == 300 && reader.getCommand() == Command.DIG);
+      assertTrue(reader.getOperand(0) == -5 && reader.getOperand(1) == 2);
+      assertTrue(reader.getTimeMicros() >= time);
+      assertTrue(reader.next());
+      assertTrue(reader.getCommand() == Command.PROBABILITIES);
+      assertTrue(reader.getOperand(1) == -1 && reader.getOperand(3) == Integer.MAX_VALUE);
+      assertFalse(reader.next());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testReader_notAnEventLog() throws IOException {
+    Path path = Files.createTempFile("minesweeper", ".log");
+    path.toFile().deleteOnExit();
+    Files.write(path, "3 2\r\n".getBytes());
+
+    new EventLog.Reader(path).close();
+  }
+
+  /* record ------------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testRecord_afterClose() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
+    EventLog log = new EventLog(newLogPath(), board, 16);
+    log.close();
+
+    log.record(1, Command.LOOK, new int[0]);
+
+    assertTrue(log.getDroppedEvents() == 1);
+  }
+
+  @Test
+  public void testRecord_fullQueueMarksGap() throws Exception {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
+    Path path = newLogPath();
+    GatedOutputStream stream = new GatedOutputStream(Files.newOutputStream(path));
+    EventLog log = new EventLog(stream, board, 1);
+    stream.hold(true);
+
+    log.record(1, Command.FLAG, new int[] {0, 0});
+    stream.blocked.await();
+    log.record(1, Command.DEFLAG, new int[] {0, 0});
+    log.record(2, Command.LOOK, new int[0]);
+    log.record(1, Command.DIG, new int[] {0, 0});
+    log.record(1, Command.DIG, new int[] {2, 0});
+    stream.hold(false);
+    log.record(2, Command.FLAG, new int[] {1, 0});
+    log.close();
+
+    assertTrue(log.getDroppedEvents() == 3);
+    List<Command> commands = new ArrayList<>();
+    try (EventLog.Reader reader = new EventLog.Reader(path)) {
+      while (reader.next()) {
+        commands.add(reader.getCommand());
+      }
+    }
+    assertTrue(commands.equals(Arrays.asList(Command.FLAG, Command.DEFLAG, null, Command.FLAG)));
+    try (EventLog.Reader reader = new EventLog.Reader(path)) {
+      EventLogReplay.read(reader);
+      assertTrue("read should refuse a log with a gap", false);
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testConstructor_flaggedBoard() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
+    board.flag(1, 0);
+    assertNotFresh(board);
+  }
+
+  @Test
+  public void testConstructor_dugBoard() throws IOException {
+    Board board = createTestBoard("3 1\r\n0 1 0\r\n");
+    board.dig(1, 0);
+    board.flag(1, 0);
+    board.deflag(1, 0);
+    assertNotFresh(board);
+  }
+
+  /* EventLogReplay.replay --------------------------------------------------------------------------- */
+
+  @Test
+  public void testReplay_sameBoard() throws IOException {
+    Board live = createTestBoard("4 3\r\n0 1 0 0\r\n0 0 0 1\r\n1 0 0 0\r\n");
+    Path path = newLogPath();
+    EventLog log = new EventLog(path, live, 16);
+    int[][] moves = {{0, 0}, {3, 0}, {1, 0}, {2, 2}, {3, 1}};
+    for (int[] move : moves) {
+      live.flag(move[0], move[1]);
+      log.record(1, Command.FLAG, move);
+      live.dig(move[0], move[1]);
+      log.record(1, Command.DIG, move);
+    }
+    log.close();
+
+    Map<Command, Long> counts = new EnumMap<>(Command.class);
+    Board replayed;
+    try (EventLog.Reader reader = new EventLog.Reader(path)) {
+      replayed = EventLogReplay.replay(EventLogReplay.read(reader), counts);
+    }
+
+    assertTrue(replayed.look().equals(live.look()));
+    assertTrue(replayed.status().equals(live.status()));
+    assertTrue(counts.get(Command.DIG) == moves.length);
+  }
+
+  @Test
+  public void testReplay_concurrentClients() throws Exception {
+    Board live = createTestBoard(CONFLICT_BOARD);
+    Path path = newLogPath();
+    EventLog log = new EventLog(path, live, 4096);
+    Board previousBoard = MinesweeperServer.board;
+    boolean previousDebug = MinesweeperServer.debug;
+    MinesweeperServer.board = live;
+    MinesweeperServer.debug = true;
+    MinesweeperServer.eventLog = log;
+    CountDownLatch start = new CountDownLatch(1);
+    List<List<String>> received = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    try (ServerSocket server = new ServerSocket(0, 8, InetAddress.getLoopbackAddress())) {
+      for (int i = 0; i < PLAYERS; i++) {
+        Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        Thread handler = new Thread(new ClientHandler(server.accept()));
+        Random random = new Random(i);
+        List<String> lines = new ArrayList<>();
+        Thread player = new Thread(() -> play(client, random, start, lines));
+        handler.start();
+        player.start();
+        threads.add(handler);
+        threads.add(player);
+        received.add(lines);
+      }
+      start.countDown();
+      for (Thread thread : threads) {
+        thread.join(10000);
+      }
+    } finally {
+      MinesweeperServer.eventLog = null;
+      MinesweeperServer.debug = previousDebug;
+      MinesweeperServer.board = previousBoard;
+    }
+    log.close();
+
+    // the log does not tell which client had which session, so compare the sets of replies
+    List<String> expected = new ArrayList<>();
+    for (List<String> replies : replayReplies(path).values()) {
+      List<String> lines = new ArrayList<>();
+      for (String reply : replies) {
+        lines.addAll(reply.equals("BOOM") ? List.of("BOOM!!") : nonEmptyLines(reply));
+      }
+      lines.add("Bye now!");
+      expected.add(String.join("\n", lines));
+    }
+    List<String> actual = new ArrayList<>();
+    for (List<String> lines : received) {
+      actual.add(String.join("\n", lines));
+    }
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertTrue(actual.equals(expected));
+    assertReplayMatches(path, live);
+  }
+
+  @Test
+  public void testReplay_concurrentSequencedClients() throws Exception {
+    Board live = createTestBoard(CONFLICT_BOARD);
+    Path path = newLogPath();
+    EventLog log = new EventLog(path, live, 4096);
+    CommandSequencer sequencer = new CommandSequencer(live, 4, log);
+    CountDownLatch start = new CountDownLatch(1);
+    Map<Long, List<String>> received = new HashMap<>();
+    List<Thread> players = new ArrayList<>();
+    for (int i = 0; i < PLAYERS; i++) {
+      final long sessionId = i + 1;
+      Random random = new Random(i);
+      List<String> replies = new ArrayList<>();
+      Thread player = new Thread(() -> {
+        CommandSequencer.Request request = new CommandSequencer.Request();
+        ByteBuffer buffer = null;
+        awaitUninterruptibly(start);
+        for (int move = 0; move < MOVES; move++) {
+          ByteBuffer reply = sequencer.execute(request, sessionId, randomMove(random),
+              random.nextInt(2), random.nextInt(2), buffer);
+          if (reply == null) {
+            replies.add("BOOM");
+          } else {
+            byte[] bytes = new byte[reply.limit()];
+            reply.get(0, bytes);
+            replies.add(new String(bytes, StandardCharsets.US_ASCII));
+            buffer = reply;
+          }
+        }
+      });
+      player.start();
+      players.add(player);
+      received.put(sessionId, replies);
+    }
+    start.countDown();
+    for (Thread player : players) {
+      player.join(10000);
+    }
+    sequencer.close();
+    log.close();
+
+    assertTrue(replayReplies(path).equals(received));
+    assertReplayMatches(path, live);
+  }
+
+  /** Board whose top left squares are fought over by the concurrent tests. */
+  private static final String CONFLICT_BOARD = "4 3\r\n1 0 0 0\r\n0 1 0 1\r\n0 0 0 0\r\n";
+  private static final int PLAYERS = 4;
+  /** Moves per player, within the burst of the cheap commands' rate limit. */
+  private static final int MOVES = 300;
+
+  /**
+   * @return mostly flags and deflags, whose order decides the board, and a rare dig
+   */
+  private static Command randomMove(Random random) {
+    int choice = random.nextInt(100);
+    return choice == 0 ? Command.DIG : choice % 2 == 0 ? Command.FLAG : Command.DEFLAG;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Sends MOVES random moves on the top left squares and bye once start opens, then reads the
+   * replies until the server closes the connection.
+   *
+   * @param lines gets the non-empty lines received after the welcome message, except notices
+   */
+  private static void play(Socket client, Random random, CountDownLatch start,
+      List<String> lines) {
+    try (Socket socket = client) {
+      StringBuilder commands = new StringBuilder();
+      for (int move = 0; move < MOVES; move++) {
+        commands.append(randomMove(random).keyword()).append(' ')
+            .append(random.nextInt(2)).append(' ').append(random.nextInt(2)).append('\n');
+      }
+      commands.append("bye\n");
+      awaitUninterruptibly(start);
+      OutputStream out = socket.getOutputStream();
+      out.write(commands.toString().getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+          StandardCharsets.US_ASCII));
+      in.readLine();
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        if (!line.isEmpty() && !line.startsWith("Notice: ")) {
+          lines.add(line);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static List<String> nonEmptyLines(String text) {
+    List<String> lines = new ArrayList<>();
+    for (String line : text.split("\r?\n")) {
+      if (!line.isEmpty()) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Replays the moves of a log one at a time.
+   *
+   * @return for every session of the log, the replies of the replayed board to its moves in order
+   */
+  private static Map<Long, List<String>> replayReplies(Path path) throws IOException {
+    Map<Long, List<String>> replies = new HashMap<>();
+    try (EventLog.Reader reader = new EventLog.Reader(path)) {
+      Board board = Board.createBoard(reader.getSizeX(), reader.getSizeY(), reader.getBombs());
+      while (reader.next()) {
+        Command command = reader.getCommand();
+        int x = command.operands() == 2 ? reader.getOperand(0) : 0;
+        int y = command.operands() == 2 ? reader.getOperand(1) : 0;
+        String reply;
+        if (command == Command.DIG) {
+          reply = board.dig(x, y);
+        } else if (command == Command.FLAG) {
+          reply = board.flag(x, y);
+        } else if (command == Command.DEFLAG) {
+          reply = board.deflag(x, y);
+        } else {
+          continue;
+        }
+        replies.computeIfAbsent(reader.getSessionId(), id -> new ArrayList<>()).add(reply);
+      }
+    }
+    return replies;
+  }
+
+  private static void assertReplayMatches(Path path, Board live) throws IOException {
+    Map<Command, Long> counts = new EnumMap<>(Command.class);
+    Board replayed;
+    try (EventLog.Reader reader = new EventLog.Reader(path)) {
+      replayed = EventLogReplay.replay(EventLogReplay.read(reader), counts);
+    }
+
+    long moves = counts.getOrDefault(Command.DIG, 0L) + counts.getOrDefault(Command.FLAG, 0L)
+        + counts.getOrDefault(Command.DEFLAG, 0L);
+    assertTrue(moves == PLAYERS * MOVES);
+    assertTrue(replayed.look().equals(live.look()));
+    assertTrue(replayed.status().equals(live.status()));
+  }
+
+  private static void assertNotFresh(Board board) throws IOException {
+    Path path = newLogPath();
+    try {
+      new EventLog(path, board, 16).close();
+      assertTrue("log should not open on a board that is not fresh", false);
+    } catch (IllegalArgumentException e) {
+      assertFalse(Files.exists(path));
+    }
+  }
+
+  /**
+   * A stream whose writes wait while it is held, like a file on a stalled disk.
+   */
+  private static final class GatedOutputStream extends FilterOutputStream {
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private boolean held;
+
+    private GatedOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    private synchronized void hold(boolean held) {
+      this.held = held;
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      while (held) {
+        blocked.countDown();
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      out.write(b, off, len);
+    }
+  }
+
+  private static Board createTestBoard(String boardConfig) throws IOException {
+    return Board.createCustomBoard(new BufferedReader(new StringReader(boardConfig)));
+  }
+
+  private static Path newLogPath() throws IOException {
+    Path path = Files.createTempFile("minesweeper", ".log");
+    Files.delete(path);
+    path.toFile().deleteOnExit();
+    return path;
+  }
+
+}
@@ -0,0 +1,70 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.FairQueue class
+ */
+
+public class FairQueueTest {
+
+  /* TEST STRATEGY:
+
+      add, peekKey, poll, size
+        empty queue: no key, no item
+        single key: items in the order added
+        several keys: one item per key in turn, in the order the keys first had items; a key
+          that runs out of items loses its turn and gets the last turn when it has items again
+
+ */
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* add, peekKey, poll, size ------------------------------------------------------------------- */
+
+  @Test
+  public void testPoll_empty() {
+    FairQueue<Long, String> queue = new FairQueue<>();
+
+    assertTrue(queue.isEmpty() && queue.size() == 0);
+    assertTrue(queue.peekKey() == null);
+    assertTrue(queue.poll() == null);
+  }
+
+  @Test
+  public void testPoll_singleKey() {
+    FairQueue<Long, String> queue = new FairQueue<>();
+    queue.add(7L, "look");
+    queue.add(7L, "dig 1 1");
+
+    assertTrue(queue.size() == 2);
+    assertTrue(queue.peekKey() == 7L && queue.poll().equals("look"));
+    assertTrue(queue.peekKey() == 7L && queue.poll().equals("dig 1 1"));
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testPoll_takeTurns() {
+    FairQueue<Long, String> queue = new FairQueue<>();
+    for (int i = 0; i < 3; i++) {
+      queue.add(1L, "a" + i);
+    }
+    queue.add(2L, "b0");
+    queue.add(3L, "c0");
+
+    StringBuilder order = new StringBuilder();
+    order.append(queue.poll()).append(queue.poll());
+    queue.add(2L, "b1");
+    while (!queue.isEmpty()) {
+      order.append(queue.poll());
+    }
+
+    // 2 ran out of items after b0 and queued b1 behind 3 and 1
+    assertTrue(order.toString().equals("a0b0c0a1b1a2"));
+  }
+}
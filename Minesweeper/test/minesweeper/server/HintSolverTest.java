@@ -0,0 +1,125 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.HintSolver class
+ */
+
+public class HintSolverTest {
+
+  /* TEST STRATEGY:
+
+      solve
+        no constraints
+        constraint without mines makes its squares safe
+        constraint with as many mines as squares makes them mines
+        constraint that proves nothing
+        subset rule proves squares safe
+        subset rule proves squares mined
+        deductions propagate into other constraints
+
+      Hint.toString
+        empty hint
+        squares formatted as x,y
+
+ */
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* solve ------------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testSolve_noConstraints() {
+    HintSolver.Hint hint = HintSolver.solve(Collections.emptyList(), 3);
+
+    assertTrue(hint.getSafe().isEmpty());
+    assertTrue(hint.getMines().isEmpty());
+  }
+
+  @Test
+  public void testSolve_noMines() {
+    HintSolver.Hint hint = HintSolver.solve(
+        Collections.singletonList(new HintSolver.Constraint(0, new int[] {4, 1, 2})), 3);
+
+    assertTrue(hint.getSafe().equals(Arrays.asList(1, 2, 4)));
+    assertTrue(hint.getMines().isEmpty());
+  }
+
+  @Test
+  public void testSolve_allMines() {
+    HintSolver.Hint hint = HintSolver.solve(
+        Collections.singletonList(new HintSolver.Constraint(2, new int[] {5, 7})), 3);
+
+    assertTrue(hint.getSafe().isEmpty());
+    assertTrue(hint.getMines().equals(Arrays.asList(5, 7)));
+  }
+
+  @Test
+  public void testSolve_undecided() {
+    HintSolver.Hint hint = HintSolver.solve(
+        Collections.singletonList(new HintSolver.Constraint(1, new int[] {5, 7})), 3);
+
+    assertTrue(hint.getSafe().isEmpty());
+    assertTrue(hint.getMines().isEmpty());
+  }
+
+  @Test
+  public void testSolve_subsetSafe() {
+    // one mine in {0, 1} and one mine in {0, 1, 2}: 2 is safe
+    HintSolver.Hint hint = HintSolver.solve(Arrays.asList(
+        new HintSolver.Constraint(1, new int[] {0, 1}),
+        new HintSolver.Constraint(1, new int[] {0, 1, 2})), 3);
+
+    assertTrue(hint.getSafe().equals(Collections.singletonList(2)));
+    assertTrue(hint.getMines().isEmpty());
+  }
+
+  @Test
+  public void testSolve_subsetMines() {
+    // one mine in {0, 1} and three mines in {0, 1, 2, 3}: 2 and 3 are mines
+    HintSolver.Hint hint = HintSolver.solve(Arrays.asList(
+        new HintSolver.Constraint(1, new int[] {0, 1}),
+        new HintSolver.Constraint(3, new int[] {0, 1, 2, 3})), 3);
+
+    assertTrue(hint.getSafe().isEmpty());
+    assertTrue(hint.getMines().equals(Arrays.asList(2, 3)));
+  }
+
+  @Test
+  public void testSolve_propagation() {
+    // 0 is a mine, so the other square of {0, 1} is safe
+    HintSolver.Hint hint = HintSolver.solve(Arrays.asList(
+        new HintSolver.Constraint(1, new int[] {0}),
+        new HintSolver.Constraint(1, new int[] {0, 1})), 3);
+
+    assertTrue(hint.getSafe().equals(Collections.singletonList(1)));
+    assertTrue(hint.getMines().equals(Collections.singletonList(0)));
+  }
+
+  /* Hint.toString ------------------------------------------------------------------------------------ */
+
+  @Test
+  public void testToString_empty() {
+    HintSolver.Hint hint = HintSolver.solve(Collections.emptyList(), 3);
+
+    assertTrue("safe= mines=".equals(hint.toString()));
+  }
+
+  @Test
+  public void testToString_coordinates() {
+    HintSolver.Hint hint = HintSolver.solve(Arrays.asList(
+        new HintSolver.Constraint(0, new int[] {1, 5}),
+        new HintSolver.Constraint(1, new int[] {7})), 3);
+
+    assertTrue("safe=1,0;2,1 mines=1,2".equals(hint.toString()));
+  }
+
+}
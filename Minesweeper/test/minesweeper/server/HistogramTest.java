@@ -0,0 +1,143 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.Histogram class
+ */
+
+public class HistogramTest {
+
+  /* TEST STRATEGY:
+
+      record
+        empty histogram
+        single value
+        negative value
+        many values from multiple threads
+
+      getValueAtQuantile
+        value below 16 is exact
+        large value is within 1/16th
+        percentiles of a uniform distribution
+
+      bucketIndex / bucketUpperBound
+        upper bound of every bucket is mapped to that bucket
+
+ */
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* record ------------------------------------------------------------------------------------------ */
+
+  @Test
+  public void testRecord_emptyHistogram() {
+    Histogram histogram = new Histogram();
+
+    assertTrue(histogram.getCount() == 0);
+    assertTrue(histogram.getMax() == 0);
+    assertTrue(histogram.getMean() == 0);
+    assertTrue(histogram.get99thPercentile() == 0);
+  }
+
+  @Test
+  public void testRecord_singleValue() {
+    Histogram histogram = new Histogram();
+
+    histogram.record(1234);
+
+    assertTrue(histogram.getCount() == 1);
+    assertTrue(histogram.getSum() == 1234);
+    assertTrue(histogram.getMax() == 1234);
+    assertTrue(histogram.get50thPercentile() == 1234);
+  }
+
+  @Test
+  public void testRecord_negativeValue() {
+    Histogram histogram = new Histogram();
+
+    histogram.record(-5);
+
+    assertTrue(histogram.getCount() == 1);
+    assertTrue(histogram.getMax() == 0);
+  }
+
+  @Test
+  public void testRecord_multipleThreads() throws InterruptedException {
+    Histogram histogram = new Histogram();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int value = 0; value < 10000; value++) {
+          histogram.record(value);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(histogram.getCount() == 40000);
+    assertTrue(histogram.getMax() == 9999);
+  }
+
+  /* getValueAtQuantile ----------------------------------------------------------------------------- */
+
+  @Test
+  public void testGetValueAtQuantile_smallValueIsExact() {
+    Histogram histogram = new Histogram();
+
+    histogram.record(7);
+    histogram.record(9);
+
+    assertTrue(histogram.getValueAtQuantile(0.5) == 7);
+    assertTrue(histogram.getValueAtQuantile(1) == 9);
+  }
+
+  @Test
+  public void testGetValueAtQuantile_largeValueWithinPrecision() {
+    Histogram histogram = new Histogram();
+    long value = 123456789;
+
+    histogram.record(value);
+    histogram.record(2 * value);
+
+    long median = histogram.get50thPercentile();
+    assertTrue(median >= value);
+    assertTrue(median <= value + value / 16);
+  }
+
+  @Test
+  public void testGetValueAtQuantile_uniformDistribution() {
+    Histogram histogram = new Histogram();
+    for (int value = 1; value <= 1000; value++) {
+      histogram.record(value);
+    }
+
+    long p50 = histogram.get50thPercentile();
+    long p99 = histogram.get99thPercentile();
+    long p999 = histogram.get999thPercentile();
+
+    assertTrue(p50 >= 500 && p50 <= 500 + 500 / 16);
+    assertTrue(p99 >= 990 && p99 <= 1000);
+    assertTrue(p999 >= 999 && p999 <= 1000);
+  }
+
+  /* bucketIndex / bucketUpperBound ---------------------------------------------------------------- */
+
+  @Test
+  public void testBucketUpperBound_mapsToSameBucket() {
+    for (int index = 0; index < 900; index++) {
+      long upperBound = Histogram.bucketUpperBound(index);
+      assertTrue(Histogram.bucketIndex(upperBound) == index);
+      assertTrue(Histogram.bucketIndex(upperBound + 1) == index + 1);
+    }
+  }
+
+}
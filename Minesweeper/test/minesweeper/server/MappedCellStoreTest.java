@@ -0,0 +1,133 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static minesweeper.server.Square.SquareStatus.DUG;
+import static minesweeper.server.Square.SquareStatus.FLAGGED;
+import static minesweeper.server.Square.SquareStatus.UNTOUCHED;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.MappedCellStore class and boards stored in it
+ */
+
+public class MappedCellStoreTest {
+
+  /* TEST STRATEGY:
+
+      create, open
+        new store has untouched squares without bombs
+        bombs and statuses are kept independently and survive reopening
+        file that is not a board file
+        file that already exists
+
+      Board.createMappedBoard, Board.openMappedBoard, Board.checkpoint
+        copy of a heap board looks the same
+        reopened board after a checkpoint has the dug region, flags and counters
+        getSquaresArray is not supported
+
+ */
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* create, open ------------------------------------------------------------------------------- */
+
+  @Test
+  public void testCreate_empty() throws IOException {
+    MappedCellStore cells = MappedCellStore.create(newPath(), 3, 2);
+
+    assertTrue(cells.getSizeX() == 3 && cells.getSizeY() == 2);
+    assertFalse(cells.hasBomb(2, 1));
+    assertTrue(cells.getStatus(2, 1) == UNTOUCHED);
+  }
+
+  @Test
+  public void testOpen_reopen() throws IOException {
+    Path path = newPath();
+    MappedCellStore cells = MappedCellStore.create(path, 3, 2);
+    cells.setBomb(1, 0, true);
+    cells.setStatus(1, 0, FLAGGED);
+    cells.setStatus(2, 1, DUG);
+    cells.flush();
+
+    MappedCellStore reopened = MappedCellStore.open(path);
+
+    assertTrue(reopened.hasBomb(1, 0) && reopened.getStatus(1, 0) == FLAGGED);
+    assertTrue(!reopened.hasBomb(2, 1) && reopened.getStatus(2, 1) == DUG);
+    assertTrue(!reopened.hasBomb(0, 0) && reopened.getStatus(0, 0) == UNTOUCHED);
+  }
+
+  @Test(expected = IOException.class)
+  public void testOpen_notABoardFile() throws IOException {
+    Path path = Files.createTempFile("minesweeper", ".board");
+    path.toFile().deleteOnExit();
+    Files.write(path, "3 2\r\n".getBytes());
+
+    MappedCellStore.open(path);
+  }
+
+  @Test(expected = IOException.class)
+  public void testCreate_exists() throws IOException {
+    Path path = Files.createTempFile("minesweeper", ".board");
+    path.toFile().deleteOnExit();
+
+    MappedCellStore.create(path, 3, 2);
+  }
+
+  /* Board.createMappedBoard, Board.openMappedBoard, Board.checkpoint ----------------------------- */
+
+  @Test
+  public void testCreateMappedBoard_copy() throws IOException {
+    Board heap = createTestBoard("4 3\r\n0 1 0 0\r\n0 0 0 1\r\n1 0 0 0\r\n");
+    heap.flag(1, 0);
+    heap.dig(3, 2);
+
+    Board mapped = Board.createMappedBoard(newPath(), heap);
+
+    assertTrue(mapped.look().equals(heap.look()));
+    assertTrue(mapped.status().equals(heap.status()));
+  }
+
+  @Test
+  public void testOpenMappedBoard_afterCheckpoint() throws IOException {
+    Path path = newPath();
+    Board board = Board.createMappedBoard(path,
+        createTestBoard("5 2\r\n0 0 0 1 0\r\n0 0 0 1 0\r\n"));
+    board.flag(4, 0);
+    board.dig(0, 0);
+    board.checkpoint();
+
+    Board reopened = Board.openMappedBoard(path);
+
+    assertTrue(reopened.look().equals(board.look()));
+    assertTrue("safe=2 flags=1 bombs=2 cleared=false".equals(reopened.status()));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testGetSquaresArray_mapped() throws IOException {
+    Board board = Board.createMappedBoard(newPath(), 3, 3);
+
+    board.getSquaresArray();
+  }
+
+  private static Board createTestBoard(String boardConfig) throws IOException {
+    return Board.createCustomBoard(new BufferedReader(new StringReader(boardConfig)));
+  }
+
+  private static Path newPath() throws IOException {
+    Path path = Files.createTempFile("minesweeper", ".board");
+    Files.delete(path);
+    path.toFile().deleteOnExit();
+    return path;
+  }
+
+}
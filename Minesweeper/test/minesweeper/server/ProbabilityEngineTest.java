@@ -0,0 +1,143 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.ProbabilityEngine class
+ */
+
+public class ProbabilityEngineTest {
+
+  /* TEST STRATEGY:
+
+      compute
+        no constraints, squares get the bomb density
+        one constraint split evenly over its squares
+        overlapping constraints in one component
+        independent components
+        squares off the frontier get the density of the remaining bombs
+        unchanged component is taken from the cache
+        deadline already passed, result is inexact
+
+ */
+
+  private static final long ONE_MINUTE = TimeUnit.MINUTES.toNanos(1);
+  private static final double EPSILON = 1e-9;
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* compute ----------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testCompute_noConstraints() {
+    ProbabilityEngine engine = new ProbabilityEngine(ForkJoinPool.commonPool(), 16);
+
+    ProbabilityEngine.Probabilities probabilities =
+        engine.compute(Collections.emptyList(), 8, 2, deadline());
+
+    assertTrue(Math.abs(probabilities.get(3) - 0.25) < EPSILON);
+    assertTrue(probabilities.isExact());
+  }
+
+  @Test
+  public void testCompute_singleConstraint() {
+    ProbabilityEngine engine = new ProbabilityEngine(ForkJoinPool.commonPool(), 16);
+
+    ProbabilityEngine.Probabilities probabilities = engine.compute(
+        Collections.singletonList(new HintSolver.Constraint(1, new int[] {0, 1})), 2, 1,
+        deadline());
+
+    assertTrue(Math.abs(probabilities.get(0) - 0.5) < EPSILON);
+    assertTrue(Math.abs(probabilities.get(1) - 0.5) < EPSILON);
+  }
+
+  @Test
+  public void testCompute_overlappingConstraints() {
+    ProbabilityEngine engine = new ProbabilityEngine(ForkJoinPool.commonPool(), 16);
+    // one bomb in {0, 1, 2} and one in {2, 3}: solutions {2}, {0, 3} and {1, 3}
+    List<HintSolver.Constraint> constraints = Arrays.asList(
+        new HintSolver.Constraint(1, new int[] {0, 1, 2}),
+        new HintSolver.Constraint(1, new int[] {2, 3}));
+
+    ProbabilityEngine.Probabilities probabilities = engine.compute(constraints, 4, 2, deadline());
+
+    assertTrue(Math.abs(probabilities.get(0) - 1.0 / 3) < EPSILON);
+    assertTrue(Math.abs(probabilities.get(2) - 1.0 / 3) < EPSILON);
+    assertTrue(Math.abs(probabilities.get(3) - 2.0 / 3) < EPSILON);
+  }
+
+  @Test
+  public void testCompute_independentComponents() {
+    ProbabilityEngine engine = new ProbabilityEngine(ForkJoinPool.commonPool(), 16);
+    List<HintSolver.Constraint> constraints = Arrays.asList(
+        new HintSolver.Constraint(1, new int[] {0, 1}),
+        new HintSolver.Constraint(2, new int[] {10, 11}),
+        new HintSolver.Constraint(1, new int[] {20, 21, 22, 23}));
+
+    ProbabilityEngine.Probabilities probabilities = engine.compute(constraints, 8, 4, deadline());
+
+    assertTrue(Math.abs(probabilities.get(1) - 0.5) < EPSILON);
+    assertTrue(Math.abs(probabilities.get(10) - 1.0) < EPSILON);
+    assertTrue(Math.abs(probabilities.get(22) - 0.25) < EPSILON);
+    assertTrue(probabilities.isExact());
+  }
+
+  @Test
+  public void testCompute_squaresOffFrontier() {
+    ProbabilityEngine engine = new ProbabilityEngine(ForkJoinPool.commonPool(), 16);
+
+    // one of the two frontier bombs is expected on {0, 1}, two bombs are left for 4 other squares
+    ProbabilityEngine.Probabilities probabilities = engine.compute(
+        Collections.singletonList(new HintSolver.Constraint(1, new int[] {0, 1})), 6, 3,
+        deadline());
+
+    assertTrue(Math.abs(probabilities.get(5) - 0.5) < EPSILON);
+  }
+
+  @Test
+  public void testCompute_cache() {
+    ProbabilityEngine engine = new ProbabilityEngine(ForkJoinPool.commonPool(), 16);
+    List<HintSolver.Constraint> constraints = Arrays.asList(
+        new HintSolver.Constraint(1, new int[] {0, 1}),
+        new HintSolver.Constraint(1, new int[] {10, 11}));
+
+    engine.compute(constraints, 4, 2, deadline());
+    ProbabilityEngine.Probabilities probabilities = engine.compute(
+        Arrays.asList(constraints.get(1), constraints.get(0)), 4, 2, deadline());
+
+    assertTrue(engine.getCacheHits() == 2);
+    assertTrue(Math.abs(probabilities.get(11) - 0.5) < EPSILON);
+  }
+
+  @Test
+  public void testCompute_deadlinePassed() {
+    ProbabilityEngine engine = new ProbabilityEngine(ForkJoinPool.commonPool(), 16);
+    int[] cells = new int[24];
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = i;
+    }
+
+    ProbabilityEngine.Probabilities probabilities = engine.compute(
+        Collections.singletonList(new HintSolver.Constraint(12, cells)), 48, 12,
+        System.nanoTime() - ONE_MINUTE);
+
+    assertFalse(probabilities.isExact());
+    assertTrue(Math.abs(probabilities.get(0) - 0.25) < EPSILON);
+  }
+
+  private static long deadline() {
+    return System.nanoTime() + ONE_MINUTE;
+  }
+
+}
@@ -0,0 +1,163 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.SessionRegistry class
+ */
+
+public class SessionRegistryTest {
+
+  /* TEST STRATEGY:
+
+      open
+        first session
+        sessions get distinct ids
+
+      close
+        close open session
+        close session twice
+
+      broadcast
+        every player gets the notice; notices beyond the threads and the queue are dropped
+
+      Session.recordCommand
+        command counts and bytes read
+
+      Session.throttle
+        unlimited command is never throttled
+        expensive commands are throttled after the configured burst
+
+ */
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* open ------------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testOpen_firstSession() {
+    SessionRegistry registry = new SessionRegistry();
+
+    Session session = registry.open("/127.0.0.1:1234");
+
+    assertTrue(registry.getPlayers() == 1);
+    assertTrue(registry.getSessions().contains(session));
+    assertTrue(session.getRemoteAddress().equals("/127.0.0.1:1234"));
+  }
+
+  @Test
+  public void testOpen_distinctIds() {
+    SessionRegistry registry = new SessionRegistry();
+
+    Session first = registry.open("a");
+    Session second = registry.open("b");
+
+    assertTrue(first.getId() != second.getId());
+    assertTrue(registry.getPlayers() == 2);
+    assertTrue(registry.getSessionsOpened() == 2);
+  }
+
+  /* close ------------------------------------------------------------------------------------------ */
+
+  @Test
+  public void testClose_openSession() {
+    SessionRegistry registry = new SessionRegistry();
+    Session session = registry.open("a");
+
+    registry.close(session);
+
+    assertTrue(registry.getPlayers() == 0);
+    assertTrue(registry.getSessions().isEmpty());
+  }
+
+  @Test
+  public void testClose_twice() {
+    SessionRegistry registry = new SessionRegistry();
+    Session session = registry.open("a");
+    registry.open("b");
+
+    registry.close(session);
+    registry.close(session);
+
+    assertTrue(registry.getPlayers() == 1);
+    assertTrue(registry.listSessions().length == 1);
+  }
+
+  /* broadcast ------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testBroadcast_boundedQueue() throws InterruptedException {
+    SessionRegistry registry = new SessionRegistry(1, 2);
+    CountDownLatch stuck = new CountDownLatch(1);
+    CountDownLatch notified = new CountDownLatch(3);
+    for (int i = 0; i < 5; i++) {
+      registry.open("player" + i).setNotifier(message -> {
+        try {
+          stuck.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        notified.countDown();
+      });
+    }
+
+    // one notice is written by the only thread, two wait in the queue
+    registry.broadcast("Notice: hello");
+    stuck.countDown();
+
+    assertTrue(registry.getDroppedNotifications() == 2);
+    assertTrue(notified.await(5, TimeUnit.SECONDS));
+  }
+
+  /* Session.recordCommand ------------------------------------------------------------------------- */
+
+  @Test
+  public void testRecordCommand_countsAndBytes() {
+    SessionRegistry registry = new SessionRegistry();
+    Session session = registry.open("a");
+
+    session.recordCommand(Command.LOOK, 5);
+    session.recordCommand(Command.DIG, 8);
+    session.recordCommand(Command.LOOK, 5);
+    session.recordInvalidCommand(4);
+
+    assertTrue(session.getCommandCount(Command.LOOK) == 2);
+    assertTrue(session.getCommandCount() == 3);
+    assertTrue(session.getInvalidCommands() == 1);
+    assertTrue(session.getBytesRead() == 22);
+  }
+
+  /* Session.throttle ------------------------------------------------------------------------------- */
+
+  @Test
+  public void testThrottle_unlimited() {
+    Session session = new Session(1, "/127.0.0.1:1");
+
+    for (int i = 0; i < 10 * ServerConfig.EXPENSIVE_COMMANDS_BURST; i++) {
+      assertTrue(session.throttle(Command.BYE) == 0);
+    }
+  }
+
+  @Test
+  public void testThrottle_expensiveBurst() {
+    Session session = new Session(1, "/127.0.0.1:1");
+
+    long throttled = 0;
+    for (int i = 0; i < ServerConfig.EXPENSIVE_COMMANDS_BURST + 10; i++) {
+      if (session.throttle(Command.LOOK) > 0) {
+        throttled++;
+      }
+    }
+
+    // a few tokens may be added while the loop runs
+    assertTrue(throttled > 0 && throttled <= 10);
+  }
+
+}
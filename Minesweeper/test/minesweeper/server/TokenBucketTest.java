@@ -0,0 +1,99 @@
+package minesweeper.server;
+
+import static junit.framework.TestCase.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit tests for the minesweeper.server.TokenBucket class
+ */
+
+public class TokenBucketTest {
+
+  /* TEST STRATEGY:
+
+      tryAcquire
+        full bucket permits a burst of capacity tokens
+        empty bucket reports the time until the next token
+        tokens are added over time
+        tokens never exceed the capacity
+
+      refund
+        refunded token can be taken again; refund of a full bucket keeps the capacity
+
+ */
+
+  private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test(expected = AssertionError.class)
+  public void testAssertionsEnabled() {
+    assert false; // make sure assertions are enabled with VM argument: -ea
+  }
+
+  /* tryAcquire -------------------------------------------------------------------------------------- */
+
+  @Test
+  public void testTryAcquire_burst() {
+    TokenBucket bucket = new TokenBucket(10, 3, 0);
+
+    assertTrue(bucket.tryAcquire(0) == 0);
+    assertTrue(bucket.tryAcquire(0) == 0);
+    assertTrue(bucket.tryAcquire(0) == 0);
+    assertTrue(bucket.tryAcquire(0) > 0);
+  }
+
+  @Test
+  public void testTryAcquire_waitTime() {
+    TokenBucket bucket = new TokenBucket(10, 1, 0);
+    bucket.tryAcquire(0);
+
+    long wait = bucket.tryAcquire(ONE_SECOND / 20);
+
+    // half of the 100 ms refill period is left
+    assertTrue(Math.abs(wait - ONE_SECOND / 20) < 1000);
+  }
+
+  @Test
+  public void testTryAcquire_refill() {
+    TokenBucket bucket = new TokenBucket(10, 1, 0);
+    bucket.tryAcquire(0);
+
+    assertTrue(bucket.tryAcquire(ONE_SECOND / 10) == 0);
+  }
+
+  @Test
+  public void testTryAcquire_capacity() {
+    TokenBucket bucket = new TokenBucket(10, 2, 0);
+
+    long later = 60 * ONE_SECOND;
+    assertTrue(bucket.tryAcquire(later) == 0);
+    assertTrue(bucket.tryAcquire(later) == 0);
+    assertTrue(bucket.tryAcquire(later) > 0);
+  }
+
+  /* refund ------------------------------------------------------------------------------------------ */
+
+  @Test
+  public void testRefund_tokenReturned() {
+    TokenBucket bucket = new TokenBucket(10, 1, 0);
+    bucket.tryAcquire(0);
+
+    bucket.refund();
+
+    assertTrue(bucket.tryAcquire(0) == 0);
+    assertTrue(bucket.tryAcquire(0) > 0);
+  }
+
+  @Test
+  public void testRefund_fullBucket() {
+    TokenBucket bucket = new TokenBucket(10, 2, 0);
+
+    bucket.refund();
+
+    assertTrue(bucket.tryAcquire(0) == 0);
+    assertTrue(bucket.tryAcquire(0) == 0);
+    assertTrue(bucket.tryAcquire(0) > 0);
+  }
+
+}